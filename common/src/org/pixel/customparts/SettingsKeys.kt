@@ -110,6 +110,9 @@ object SettingsKeys {
     val LAUNCHER_RECENTS_CAROUSEL_BLUR_OVERFLOW: String
         get() = if (IS_XPOSED) "launcher_recents_carousel_blur_overflow_xposed" else "launcher_recents_carousel_blur_overflow_pine"
 
+    val LAUNCHER_RECENTS_CAROUSEL_BLUR_SNAPSHOT: String
+        get() = if (IS_XPOSED) "launcher_recents_carousel_blur_snapshot_xposed" else "launcher_recents_carousel_blur_snapshot_pine"
+
     val LAUNCHER_RECENTS_CAROUSEL_TINT_COLOR: String
         get() = if (IS_XPOSED) "launcher_recents_carousel_tint_color_xposed" else "launcher_recents_carousel_tint_color_pine"
 
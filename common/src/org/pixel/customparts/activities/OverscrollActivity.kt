@@ -32,6 +32,7 @@ import androidx.compose.ui.draw.rotate
 import androidx.compose.ui.graphics.Color
 import androidx.compose.ui.platform.LocalContext
 import androidx.compose.ui.res.stringResource
+import androidx.compose.ui.text.font.FontFamily
 import androidx.compose.ui.text.font.FontWeight
 import androidx.compose.ui.unit.dp
 import androidx.compose.ui.unit.sp
@@ -45,6 +46,8 @@ import org.pixel.customparts.dynamicLightColorScheme
 import org.pixel.customparts.ui.*
 import org.pixel.customparts.ui.ModuleStatus
 import org.pixel.customparts.utils.dynamicStringResource
+import org.pixel.customparts.utils.HookTelemetryClient
+import org.pixel.customparts.utils.TelemetryDump
 import org.pixel.customparts.utils.RemoteStringsManager
 
 class OverscrollActivity : ComponentActivity() {
@@ -93,7 +96,8 @@ private fun OverscrollScreen(onBack: () -> Unit) {
             "vis_zoom" to false,
             "vis_horz" to false,
             "advanced" to false,
-            "apps" to false
+            "apps" to false,
+            "telemetry" to false
         ) 
     }
 
@@ -579,6 +583,16 @@ private fun OverscrollScreen(onBack: () -> Unit) {
                 }
             }
             
+            item(key = "settings_telemetry", contentType = "settings_group") {
+                val expanded = expandedStates["telemetry"] ?: false
+                TelemetrySection(
+                    context = context,
+                    expanded = expanded,
+                    onExpandChange = { expandedStates["telemetry"] = it },
+                    onInfo = { t, s, v -> infoDialogTitle = t; infoDialogText = s; infoDialogVideo = v }
+                )
+            }
+
             item(key = "reset_button", contentType = "button") {
                 Button(
                     onClick = {
@@ -628,6 +642,73 @@ private fun OverscrollScreen(onBack: () -> Unit) {
 }
 
 
+@Composable
+private fun TelemetrySection(
+    context: Context,
+    expanded: Boolean,
+    onExpandChange: (Boolean) -> Unit,
+    onInfo: (String, String, String?) -> Unit
+) {
+    val scope = rememberCoroutineScope()
+    var enabled by remember { mutableStateOf(HookTelemetryClient.isEnabled(context)) }
+    var collecting by remember { mutableStateOf(false) }
+    var dumps by remember { mutableStateOf<List<TelemetryDump>?>(null) }
+
+    ExpandableSettingsGroupCard(
+        title = dynamicStringResource(R.string.os_group_telemetry),
+        expanded = expanded,
+        onExpandChange = onExpandChange
+    ) {
+        GenericSwitchRow(
+            title = dynamicStringResource(R.string.os_lbl_telemetry),
+            checked = enabled,
+            onCheckedChange = { checked ->
+                enabled = checked
+                scope.launch { HookTelemetryClient.setEnabled(context, checked) }
+            },
+            infoText = dynamicStringResource(R.string.os_desc_telemetry),
+            onInfoClick = onInfo
+        )
+
+        Button(
+            onClick = {
+                collecting = true
+                scope.launch {
+                    dumps = HookTelemetryClient.collectDumps(context)
+                    collecting = false
+                }
+            },
+            enabled = enabled && !collecting,
+            modifier = Modifier
+                .fillMaxWidth()
+                .padding(horizontal = 16.dp, vertical = 8.dp)
+        ) {
+            Text(dynamicStringResource(R.string.os_btn_telemetry_collect))
+        }
+
+        dumps?.let { list ->
+            if (list.isEmpty()) {
+                Text(
+                    text = dynamicStringResource(R.string.os_msg_telemetry_empty),
+                    style = MaterialTheme.typography.bodySmall,
+                    color = MaterialTheme.colorScheme.onSurfaceVariant,
+                    modifier = Modifier.padding(16.dp)
+                )
+            }
+            list.forEach { dump ->
+                Text(
+                    text = dump.text,
+                    style = MaterialTheme.typography.bodySmall,
+                    fontFamily = FontFamily.Monospace,
+                    modifier = Modifier
+                        .fillMaxWidth()
+                        .padding(horizontal = 16.dp, vertical = 8.dp)
+                )
+            }
+        }
+    }
+}
+
 @Composable
 private fun ExpandableSettingsGroupCard(
     title: String,
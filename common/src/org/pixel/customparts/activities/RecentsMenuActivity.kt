@@ -66,6 +66,7 @@ fun RecentsMenuScreen(onBack: () -> Unit) {
     val keyCarouselAlpha = SettingsCompat.key("launcher_recents_carousel_alpha")
     val keyCarouselBlur = SettingsCompat.key("launcher_recents_carousel_blur_radius")
     val keyCarouselBlurOverflow = SettingsCompat.key("launcher_recents_carousel_blur_overflow")
+    val keyCarouselBlurSnapshot = SettingsCompat.key("launcher_recents_carousel_blur_snapshot")
     val keyCarouselIconOffsetX = SettingsCompat.key("launcher_recents_carousel_icon_offset_x")
     val keyCarouselIconOffsetY = SettingsCompat.key("launcher_recents_carousel_icon_offset_y")
     val keyCarouselTintColor = SettingsCompat.key("launcher_recents_carousel_tint_color")
@@ -127,6 +128,9 @@ fun RecentsMenuScreen(onBack: () -> Unit) {
     var blurOverflow by remember {
         mutableStateOf(Settings.Global.getInt(context.contentResolver, keyCarouselBlurOverflow, 0) == 1)
     }
+    var blurSnapshot by remember {
+        mutableStateOf(Settings.Global.getInt(context.contentResolver, keyCarouselBlurSnapshot, 0) == 1)
+    }
 
     
     var tintIntensity by remember { 
@@ -352,6 +356,17 @@ fun RecentsMenuScreen(onBack: () -> Unit) {
                             needsRestart = true
                         }
                     )
+                    GenericSwitchRow(
+                        title = dynamicStringResource(R.string.recents_blur_snapshot),
+                        summary = dynamicStringResource(R.string.recents_blur_snapshot_desc),
+                        checked = blurSnapshot,
+                        enabled = modifyEnabled && blurAvailable,
+                        onCheckedChange = {
+                            blurSnapshot = it
+                            Settings.Global.putInt(context.contentResolver, keyCarouselBlurSnapshot, if (it) 1 else 0)
+                            needsRestart = true
+                        }
+                    )
                 }
             }
             
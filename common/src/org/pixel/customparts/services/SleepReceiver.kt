@@ -1,5 +1,6 @@
 package org.pixel.customparts.services
 
+import android.app.Activity
 import android.content.BroadcastReceiver
 import android.content.Context
 import android.content.Intent
@@ -15,6 +16,8 @@ class SleepReceiver : BroadcastReceiver() {
             try {
                 val pm = context.getSystemService(Context.POWER_SERVICE) as? PowerManager
                 pm?.goToSleep(SystemClock.uptimeMillis())
+                // Лаунчер шлёт упорядоченную рассылку и по коду результата видит, что сон сработал
+                if (pm != null && isOrderedBroadcast) resultCode = Activity.RESULT_OK
             } catch (e: Exception) {
                 Log.e("CustomParts", "Failed to sleep", e)
             }
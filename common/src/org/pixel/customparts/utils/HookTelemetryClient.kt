@@ -0,0 +1,55 @@
+package org.pixel.customparts.utils
+
+import android.content.BroadcastReceiver
+import android.content.Context
+import android.content.Intent
+import android.content.IntentFilter
+import android.os.Build
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.withContext
+
+data class TelemetryDump(val process: String, val text: String)
+
+// Клиент для HookTelemetry из xposed-pine/core: рассылает запрос и собирает ответы процессов
+object HookTelemetryClient {
+    const val KEY_ENABLED = "hook_telemetry_enabled"
+
+    private const val ACTION_REQUEST_DUMP = "org.pixel.customparts.action.TELEMETRY_REQUEST"
+    private const val ACTION_DUMP = "org.pixel.customparts.action.TELEMETRY_DUMP"
+    private const val EXTRA_REPLY_PACKAGE = "reply_package"
+    private const val EXTRA_PROCESS = "process"
+    private const val EXTRA_DUMP = "dump"
+    private const val COLLECT_TIMEOUT_MS = 1500L
+
+    fun isEnabled(context: Context) = SettingsCompat.isEnabled(context, KEY_ENABLED)
+
+    suspend fun setEnabled(context: Context, enabled: Boolean) = withContext(Dispatchers.IO) {
+        SettingsCompat.putInt(context, KEY_ENABLED, if (enabled) 1 else 0)
+    }
+
+    suspend fun collectDumps(context: Context): List<TelemetryDump> = withContext(Dispatchers.Main) {
+        val dumps = linkedMapOf<String, String>()
+        val receiver = object : BroadcastReceiver() {
+            override fun onReceive(ctx: Context, intent: Intent) {
+                val process = intent.getStringExtra(EXTRA_PROCESS) ?: return
+                dumps[process] = intent.getStringExtra(EXTRA_DUMP) ?: return
+            }
+        }
+        val filter = IntentFilter(ACTION_DUMP)
+        if (Build.VERSION.SDK_INT >= 33) {
+            context.registerReceiver(receiver, filter, Context.RECEIVER_EXPORTED)
+        } else {
+            context.registerReceiver(receiver, filter)
+        }
+        try {
+            context.sendBroadcast(
+                Intent(ACTION_REQUEST_DUMP).putExtra(EXTRA_REPLY_PACKAGE, context.packageName)
+            )
+            delay(COLLECT_TIMEOUT_MS)
+        } finally {
+            context.unregisterReceiver(receiver)
+        }
+        dumps.map { TelemetryDump(it.key, it.value) }
+    }
+}
@@ -28,6 +28,7 @@ object SettingsCompat {
         "launcher_recents_carousel_alpha",
         "launcher_recents_carousel_blur_radius",
         "launcher_recents_carousel_blur_overflow",
+        "launcher_recents_carousel_blur_snapshot",
         "launcher_recents_carousel_tint_color",
         "launcher_recents_carousel_tint_intensity",
         "launcher_recents_carousel_icon_offset_x",
@@ -72,7 +73,8 @@ object SettingsCompat {
         "launcher_padding_dots_x",
         "doze_double_tap_hook",
         "launcher_dt2s_enabled",
-        "overscroll_enabled"
+        "overscroll_enabled",
+        "hook_telemetry_enabled"
     )
     private fun isSuffixedKey(key: String): Boolean {
         val baseKey = key.removeSuffix(PINE_INJECT_SUFFIX).removeSuffix(XPOSED_SUFFIX)
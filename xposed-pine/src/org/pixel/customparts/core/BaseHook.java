@@ -78,4 +78,16 @@ public abstract class BaseHook {
         }
         return defaultValue;
     }
+
+    protected String resolveSettingKey(String key) {
+        if (env != null) {
+            return env.resolveKey(key);
+        }
+        return key;
+    }
+
+    protected void attachTelemetry(Context context) {
+        if (context == null) return;
+        HookTelemetry.attach(context, isSettingEnabled(context, HookTelemetry.KEY_ENABLED));
+    }
 }
\ No newline at end of file
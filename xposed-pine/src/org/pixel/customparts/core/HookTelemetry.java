@@ -0,0 +1,343 @@
+package org.pixel.customparts.core;
+
+import android.app.Application;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-process counters and timings for the hooks.
+ * Everything is a no-op until {@link #attach(Context, boolean)} enables it, so
+ * hot paths only pay for one volatile read while telemetry is off.
+ * A dump is written to the host's cache dir and sent back to the app on
+ * {@link #ACTION_REQUEST_DUMP}.
+ */
+public final class HookTelemetry {
+
+    private static final String TAG = "PixelPartsTelemetry";
+
+    public static final String KEY_ENABLED = "hook_telemetry_enabled";
+
+    public static final String ACTION_REQUEST_DUMP = "org.pixel.customparts.action.TELEMETRY_REQUEST";
+    public static final String ACTION_DUMP = "org.pixel.customparts.action.TELEMETRY_DUMP";
+    public static final String EXTRA_REPLY_PACKAGE = "reply_package";
+    public static final String EXTRA_PROCESS = "process";
+    public static final String EXTRA_DUMP = "dump";
+    public static final String DUMP_FILE_NAME = "pixelparts_telemetry.txt";
+    // signature-разрешение приложения: без него запрос дампа и ответ не доставляются
+    public static final String PERMISSION_TELEMETRY = "org.pixel.customparts.permission.TELEMETRY";
+
+    private static final String[] REPLY_PACKAGES = {
+            "org.pixel.customparts",
+            "org.pixel.customparts.xposed"
+    };
+
+    // Один замер из 16 вызовов, остальные только считаются
+    private static final int SAMPLE_MASK = 15;
+
+    private static volatile boolean sEnabled = false;
+    private static volatile long sEnabledAt = 0L;
+    private static boolean sAttached = false;
+
+    private static final Map<String, Section> sSections = new LinkedHashMap<>();
+    private static final Map<String, Counter> sCounters = new LinkedHashMap<>();
+    private static final Map<String, Histogram> sHistograms = new LinkedHashMap<>();
+    private static final Map<String, Provider> sProviders = new LinkedHashMap<>();
+
+    private HookTelemetry() {}
+
+    public interface Provider {
+        void dump(StringBuilder out);
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Enables telemetry for this process and registers the dump receiver once.
+     * Safe to call from every hook; only the first call with a context does work.
+     */
+    public static synchronized void attach(Context context, boolean enabled) {
+        if (sAttached || context == null) return;
+        sAttached = true;
+        if (!enabled) return;
+        sEnabledAt = SystemClock.elapsedRealtime();
+        sEnabled = true;
+
+        Context appContext = context.getApplicationContext();
+        final Context target = (appContext != null) ? appContext : context;
+        try {
+            BroadcastReceiver receiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context ctx, Intent intent) {
+                    handleDumpRequest(target, intent);
+                }
+            };
+            IntentFilter filter = new IntentFilter(ACTION_REQUEST_DUMP);
+            // Отправитель должен держать PERMISSION_TELEMETRY, чужие приложения дамп не запустят
+            if (Build.VERSION.SDK_INT >= 33) {
+                target.registerReceiver(receiver, filter, PERMISSION_TELEMETRY, null, Context.RECEIVER_EXPORTED);
+            } else {
+                target.registerReceiver(receiver, filter, PERMISSION_TELEMETRY, null);
+            }
+        } catch (Throwable t) {
+            Log.w(TAG, "Failed to register dump receiver", t);
+        }
+    }
+
+    public static Section section(String name) {
+        synchronized (sSections) {
+            Section section = sSections.get(name);
+            if (section == null) {
+                section = new Section(name);
+                sSections.put(name, section);
+            }
+            return section;
+        }
+    }
+
+    public static Counter counter(String name) {
+        synchronized (sCounters) {
+            Counter counter = sCounters.get(name);
+            if (counter == null) {
+                counter = new Counter(name);
+                sCounters.put(name, counter);
+            }
+            return counter;
+        }
+    }
+
+    /** @param bounds upper bounds of the buckets, ascending; the last bucket is open-ended */
+    public static Histogram histogram(String name, String unit, long... bounds) {
+        synchronized (sHistograms) {
+            Histogram histogram = sHistograms.get(name);
+            if (histogram == null) {
+                histogram = new Histogram(name, unit, bounds);
+                sHistograms.put(name, histogram);
+            }
+            return histogram;
+        }
+    }
+
+    public static void addProvider(String name, Provider provider) {
+        synchronized (sProviders) {
+            sProviders.put(name, provider);
+        }
+    }
+
+    public static String dump() {
+        StringBuilder out = new StringBuilder(1024);
+        out.append("process: ").append(getProcessName()).append('\n');
+        if (!sEnabled) {
+            out.append("telemetry disabled\n");
+            return out.toString();
+        }
+        long now = SystemClock.elapsedRealtime();
+        out.append("uptime: ").append((now - sEnabledAt) / 1000L).append(" s\n");
+
+        List<Provider> providers;
+        synchronized (sProviders) {
+            providers = new ArrayList<>(sProviders.values());
+        }
+        for (Provider provider : providers) {
+            try {
+                provider.dump(out);
+            } catch (Throwable t) {
+                out.append("provider failed: ").append(t).append('\n');
+            }
+        }
+
+        synchronized (sCounters) {
+            if (!sCounters.isEmpty()) out.append("\n[counters]\n");
+            for (Counter counter : sCounters.values()) counter.dump(out, now);
+        }
+        synchronized (sHistograms) {
+            for (Histogram histogram : sHistograms.values()) histogram.dump(out);
+        }
+        synchronized (sSections) {
+            if (!sSections.isEmpty()) out.append("\n[sections] calls / sampled / avg us / max us\n");
+            for (Section section : sSections.values()) section.dump(out);
+        }
+        return out.toString();
+    }
+
+    public static File writeDump(Context context, String dump) {
+        if (context == null) return null;
+        File file = new File(context.getCacheDir(), DUMP_FILE_NAME);
+        try (FileOutputStream stream = new FileOutputStream(file)) {
+            stream.write(dump.getBytes(StandardCharsets.UTF_8));
+            return file;
+        } catch (Throwable t) {
+            Log.w(TAG, "Failed to write " + file, t);
+            return null;
+        }
+    }
+
+    private static void handleDumpRequest(Context context, Intent request) {
+        String dump = dump();
+        writeDump(context, dump);
+
+        String replyPackage = request.getStringExtra(EXTRA_REPLY_PACKAGE);
+        if (!isReplyPackage(replyPackage)) return;
+        try {
+            Intent reply = new Intent(ACTION_DUMP);
+            reply.setPackage(replyPackage);
+            reply.putExtra(EXTRA_PROCESS, getProcessName());
+            reply.putExtra(EXTRA_DUMP, dump);
+            context.sendBroadcast(reply, PERMISSION_TELEMETRY);
+        } catch (Throwable t) {
+            Log.w(TAG, "Failed to send dump", t);
+        }
+    }
+
+    private static boolean isReplyPackage(String pkg) {
+        if (pkg == null) return false;
+        for (String allowed : REPLY_PACKAGES) {
+            if (allowed.equals(pkg)) return true;
+        }
+        return false;
+    }
+
+    private static String getProcessName() {
+        try {
+            if (Build.VERSION.SDK_INT >= 28) return Application.getProcessName();
+        } catch (Throwable ignored) {}
+        return String.valueOf(android.os.Process.myPid());
+    }
+
+    private static void appendMicros(StringBuilder out, long nanos) {
+        long tenths = nanos / 100L;
+        out.append(tenths / 10L).append('.').append(tenths % 10L);
+    }
+
+    /** Call counter plus sampled wall time of a hooked method. */
+    public static final class Section {
+        private final String name;
+        private final AtomicLong calls = new AtomicLong();
+        private long sampled;
+        private long totalNanos;
+        private long maxNanos;
+
+        private Section(String name) {
+            this.name = name;
+        }
+
+        /** @return start timestamp for {@link #end(long)}, or 0 when this call is not sampled */
+        public long begin() {
+            if (!sEnabled) return 0L;
+            if ((calls.incrementAndGet() & SAMPLE_MASK) != 0) return 0L;
+            return System.nanoTime();
+        }
+
+        public void end(long start) {
+            if (start == 0L) return;
+            long elapsed = System.nanoTime() - start;
+            synchronized (this) {
+                sampled++;
+                totalNanos += elapsed;
+                if (elapsed > maxNanos) maxNanos = elapsed;
+            }
+        }
+
+        private synchronized void dump(StringBuilder out) {
+            out.append(name).append(": ").append(calls.get()).append(" / ").append(sampled).append(" / ");
+            appendMicros(out, sampled > 0 ? totalNanos / sampled : 0L);
+            out.append(" / ");
+            appendMicros(out, maxNanos);
+            out.append('\n');
+        }
+    }
+
+    /** Event counter; the dump reports the total and the rate since the previous dump. */
+    public static final class Counter {
+        private final String name;
+        private final AtomicLong count = new AtomicLong();
+        private long lastDumpCount;
+        private long lastDumpAt;
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        public void inc() {
+            if (sEnabled) count.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            if (sEnabled) count.addAndGet(delta);
+        }
+
+        public long get() {
+            return count.get();
+        }
+
+        private synchronized void dump(StringBuilder out, long now) {
+            long total = count.get();
+            long since = (lastDumpAt != 0L) ? lastDumpAt : sEnabledAt;
+            long window = Math.max(1L, now - since);
+            float perSecond = (total - lastDumpCount) * 1000f / window;
+            out.append(name).append(": ").append(total)
+                    .append(" (").append(Math.round(perSecond * 10f) / 10f).append("/s)\n");
+            lastDumpCount = total;
+            lastDumpAt = now;
+        }
+    }
+
+    /** Fixed-bucket distribution, cheap enough to record from draw paths. */
+    public static final class Histogram {
+        private final String name;
+        private final String unit;
+        private final long[] bounds;
+        private final AtomicLongArray buckets;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+
+        private Histogram(String name, String unit, long[] bounds) {
+            this.name = name;
+            this.unit = unit;
+            this.bounds = bounds;
+            this.buckets = new AtomicLongArray(bounds.length + 1);
+        }
+
+        public void record(long value) {
+            if (!sEnabled) return;
+            int index = 0;
+            while (index < bounds.length && value > bounds[index]) index++;
+            buckets.incrementAndGet(index);
+            count.incrementAndGet();
+            sum.addAndGet(value);
+        }
+
+        private void dump(StringBuilder out) {
+            long total = count.get();
+            out.append("\n[").append(name).append("] n=").append(total);
+            if (total > 0) out.append(" avg=").append(sum.get() / total).append(' ').append(unit);
+            out.append('\n');
+            for (int i = 0; i < buckets.length(); i++) {
+                long value = buckets.get(i);
+                if (value == 0) continue;
+                if (i < bounds.length) {
+                    out.append("  <= ").append(bounds[i]);
+                } else {
+                    out.append("   > ").append(bounds[bounds.length - 1]);
+                }
+                out.append(' ').append(unit).append(": ").append(value).append('\n');
+            }
+        }
+    }
+}
@@ -9,6 +9,9 @@ public interface IHookEnvironment {
 
     float getFloat(Context context, String key, float defaultValue);
 
+    /** Settings.Global key actually used for {@code key} in this environment. */
+    String resolveKey(String key);
+
     void log(String tag, String message);
 
     void logError(String tag, String message, Throwable t);
@@ -0,0 +1,70 @@
+package org.pixel.customparts.core;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.Settings;
+import android.util.Log;
+
+/**
+ * Observes a fixed set of Settings.Global keys and calls back on the main thread
+ * when any of them changes. Keys must already be resolved for the environment
+ * (see {@link IHookEnvironment#resolveKey(String)}).
+ */
+public final class SettingsWatcher {
+
+    private static final String TAG = "PixelPartsSettings";
+
+    public interface Listener {
+        void onSettingsChanged(Uri uri);
+    }
+
+    private final ContentResolver resolver;
+    private final ContentObserver observer;
+    private boolean registered;
+
+    private SettingsWatcher(ContentResolver resolver, final Listener listener) {
+        this.resolver = resolver;
+        this.observer = new ContentObserver(new Handler(Looper.getMainLooper())) {
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                listener.onSettingsChanged(uri);
+            }
+        };
+    }
+
+    /** @return a registered watcher, or null when the context has no resolver or registration failed */
+    public static SettingsWatcher watch(Context context, String[] resolvedKeys, Listener listener) {
+        if (context == null || resolvedKeys == null || listener == null) return null;
+        Context appContext = context.getApplicationContext();
+        ContentResolver resolver = ((appContext != null) ? appContext : context).getContentResolver();
+        if (resolver == null) return null;
+
+        SettingsWatcher watcher = new SettingsWatcher(resolver, listener);
+        try {
+            for (String key : resolvedKeys) {
+                resolver.registerContentObserver(Settings.Global.getUriFor(key), false, watcher.observer);
+            }
+            watcher.registered = true;
+        } catch (Throwable t) {
+            Log.w(TAG, "Failed to register settings observer", t);
+            watcher.unregister();
+            return null;
+        }
+        return watcher;
+    }
+
+    public void unregister() {
+        try {
+            resolver.unregisterContentObserver(observer);
+        } catch (Throwable e) { /* ignore */ }
+        registered = false;
+    }
+
+    public boolean isRegistered() {
+        return registered;
+    }
+}
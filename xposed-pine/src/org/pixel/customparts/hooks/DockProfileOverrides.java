@@ -0,0 +1,102 @@
+package org.pixel.customparts.hooks;
+
+import java.lang.reflect.Field;
+
+import de.robv.android.xposed.XposedHelpers;
+
+/**
+ * Dock and search-bar settings expressed as DeviceProfile field adjustments, so
+ * the hotseat is measured and laid out in its final shape by the launcher itself.
+ * The hotseat bar is treated as, bottom to top: bottom space, QSB, QSB-to-icons
+ * space, icon row. Fields missing in a given launcher build are skipped.
+ * Adjustments are always computed from the values the builder produced, so
+ * applying them again to the same profile is idempotent.
+ */
+final class DockProfileOverrides {
+
+    private static final String EXTRA_BASE = "cpr_dock_base";
+
+    private static final int BAR_SIZE = 0;
+    private static final int CELL_HEIGHT = 1;
+    private static final int BOTTOM_SPACE = 2;
+    private static final int QSB_SPACE = 3;
+    private static final int QSB_HEIGHT = 4;
+    private static final int QSB_VISUAL_HEIGHT = 5;
+    private static final int QSB_SHADOW_HEIGHT = 6;
+
+    private static final String[] FIELD_NAMES = {
+            "hotseatBarSizePx",
+            "hotseatCellHeightPx",
+            "hotseatBarBottomSpacePx",
+            "hotseatQsbSpace",
+            "hotseatQsbHeight",
+            "hotseatQsbVisualHeight",
+            "hotseatQsbShadowHeight"
+    };
+
+    private final Class<?> profileClass;
+    private final Field[] fields = new Field[FIELD_NAMES.length];
+
+    DockProfileOverrides(Class<?> profileClass) {
+        this.profileClass = profileClass;
+        for (int i = 0; i < FIELD_NAMES.length; i++) {
+            try {
+                fields[i] = XposedHelpers.findField(profileClass, FIELD_NAMES[i]);
+            } catch (Throwable e) { /* ignore */ }
+        }
+    }
+
+    boolean handles(Object deviceProfile) {
+        return deviceProfile != null && deviceProfile.getClass() == profileClass && fields[BAR_SIZE] != null;
+    }
+
+    /**
+     * @param paddingDockPx   how far the icon row is raised
+     * @param paddingSearchPx how far the QSB is raised; the icon row stays put, so the
+     *                        shift is limited to the space between the QSB and the icons
+     * @return true when a field of the profile was changed
+     */
+    boolean apply(Object deviceProfile, boolean enabled, boolean hideSearch, boolean hideDock,
+               int paddingDockPx, int paddingSearchPx) throws IllegalAccessException {
+        int[] base = (int[]) XposedHelpers.getAdditionalInstanceField(deviceProfile, EXTRA_BASE);
+        if (base == null) {
+            base = new int[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                if (fields[i] != null) base[i] = fields[i].getInt(deviceProfile);
+            }
+            XposedHelpers.setAdditionalInstanceField(deviceProfile, EXTRA_BASE, base);
+        }
+
+        int[] values = base.clone();
+        if (enabled) {
+            boolean hasQsbSpace = fields[QSB_SPACE] != null;
+            if (hideSearch) {
+                values[BAR_SIZE] -= base[QSB_HEIGHT];
+                values[QSB_HEIGHT] = 0;
+                values[QSB_VISUAL_HEIGHT] = 0;
+                values[QSB_SHADOW_HEIGHT] = 0;
+            } else if (paddingSearchPx != 0 && hasQsbSpace) {
+                // Поднимаем QSB не выше иконок и опускаем не ниже края: оба отступа >= 0
+                int shift = Math.max(-base[BOTTOM_SPACE], Math.min(paddingSearchPx, base[QSB_SPACE]));
+                values[BOTTOM_SPACE] += shift;
+                values[QSB_SPACE] -= shift;
+            }
+            if (hideDock) {
+                values[BAR_SIZE] -= base[CELL_HEIGHT];
+            } else if (paddingDockPx != 0) {
+                values[BAR_SIZE] += paddingDockPx;
+                if (hasQsbSpace) values[QSB_SPACE] += paddingDockPx;
+            }
+            values[BAR_SIZE] = Math.max(0, values[BAR_SIZE]);
+        }
+
+        boolean changed = false;
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] != null && fields[i].getInt(deviceProfile) != values[i]) {
+                fields[i].setInt(deviceProfile, values[i]);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
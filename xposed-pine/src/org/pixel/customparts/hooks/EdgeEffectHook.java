@@ -21,6 +21,8 @@ import de.robv.android.xposed.XC_MethodReplacement;
 import de.robv.android.xposed.XposedBridge;
 import de.robv.android.xposed.XposedHelpers;
 
+import org.pixel.customparts.core.HookTelemetry;
+
 public class EdgeEffectHook {
     private static final String TAG = "PixelPartsOverscroll";
     private static String sKeySuffix = "_xposed";
@@ -53,6 +55,7 @@ public class EdgeEffectHook {
     private static final String FIELD_MATRIX = "mCustomMatrix";
     private static final String FIELD_POINTS = "mCustomPoints";
     private static final String FIELD_SETTINGS_CACHE = "mCustomSettingsCache";
+    private static final String FIELD_SETTLE_START = "mCustomSettleStart";
 
     private static final String KEY_ENABLED = "overscroll_enabled";
     private static final String KEY_PACKAGES_CONFIG = "overscroll_packages_config";
@@ -90,6 +93,7 @@ public class EdgeEffectHook {
     private static final String KEY_ZOOM_INTENSITY_HORIZ = "overscroll_zoom_intensity_horiz";
     private static final String KEY_H_SCALE_INTENSITY_HORIZ = "overscroll_h_scale_intensity_horiz";
     private static final String KEY_INVERT_ANCHOR = "overscroll_invert_anchor";
+    private static final String KEY_TELEMETRY = HookTelemetry.KEY_ENABLED;
     private static final float FILTER_THRESHOLD = 0.08f;
     private static final float MICRO_DELTA_EPS = 0.00035f;
     private static final float DIRECTION_FLIP_DAMPING = 0.2f;
@@ -99,6 +103,21 @@ public class EdgeEffectHook {
     private static Method sSetTranslationX, sSetTranslationY, sSetScaleX, sSetScaleY, sSetPivotX, sSetPivotY;
     private static boolean sReflectionInited = false;
 
+    private static final HookTelemetry.Section SEC_IS_FINISHED = HookTelemetry.section("EdgeEffect.isFinished");
+    private static final HookTelemetry.Section SEC_FINISH = HookTelemetry.section("EdgeEffect.finish");
+    private static final HookTelemetry.Section SEC_ON_PULL = HookTelemetry.section("EdgeEffect.onPull");
+    private static final HookTelemetry.Section SEC_ON_RELEASE = HookTelemetry.section("EdgeEffect.onRelease");
+    private static final HookTelemetry.Section SEC_ON_ABSORB = HookTelemetry.section("EdgeEffect.onAbsorb");
+    private static final HookTelemetry.Section SEC_DRAW = HookTelemetry.section("EdgeEffect.draw");
+    private static final HookTelemetry.Counter CNT_CREATED = HookTelemetry.counter("EdgeEffect.created");
+    private static final HookTelemetry.Counter CNT_PULLS = HookTelemetry.counter("EdgeEffect.pulls");
+    private static final HookTelemetry.Counter CNT_RELEASES = HookTelemetry.counter("EdgeEffect.releases");
+    private static final HookTelemetry.Counter CNT_ABSORBS = HookTelemetry.counter("EdgeEffect.absorbs");
+    private static final HookTelemetry.Histogram HIST_SETTLE = HookTelemetry.histogram(
+            "EdgeEffect.settle", "ms", 100, 200, 300, 400, 500, 750, 1000, 1500, 2000);
+    private static final WeakHashMap<Object, Boolean> sLiveInstances = new WeakHashMap<>();
+    private static boolean sTelemetryChecked = false;
+
     private static class SettingsCache {
         long updatedAt;
         float pullCoeff;
@@ -141,6 +160,37 @@ public class EdgeEffectHook {
     public static void initWithClassLoader(ClassLoader classLoader) {
         Class<?> edgeClass = XposedHelpers.findClass("android.widget.EdgeEffect", classLoader);
         hookEdgeEffect(edgeClass);
+        HookTelemetry.addProvider("EdgeEffect", new HookTelemetry.Provider() {
+            @Override
+            public void dump(StringBuilder out) {
+                int live;
+                synchronized (sLiveInstances) {
+                    live = sLiveInstances.size();
+                }
+                out.append("\n[EdgeEffect]\nlive instances: ").append(live).append('\n');
+            }
+        });
+    }
+
+    /** Replacement that feeds the per-method timing of {@link HookTelemetry}. */
+    private abstract static class TimedReplacement extends XC_MethodReplacement {
+        private final HookTelemetry.Section section;
+
+        TimedReplacement(HookTelemetry.Section section) {
+            this.section = section;
+        }
+
+        @Override
+        protected final Object replaceHookedMethod(MethodHookParam param) throws Throwable {
+            long start = section.begin();
+            try {
+                return replace(param);
+            } finally {
+                section.end(start);
+            }
+        }
+
+        protected abstract Object replace(MethodHookParam param) throws Throwable;
     }
 
     private static void hookEdgeEffect(Class<?> edgeClass) {
@@ -160,9 +210,9 @@ public class EdgeEffectHook {
         });
 
         
-        XposedHelpers.findAndHookMethod(edgeClass, "isFinished", new XC_MethodReplacement() {
+        XposedHelpers.findAndHookMethod(edgeClass, "isFinished", new TimedReplacement(SEC_IS_FINISHED) {
             @Override
-            protected Object replaceHookedMethod(MethodHookParam param) throws Throwable {
+            protected Object replace(MethodHookParam param) throws Throwable {
                 EdgeEffect thiz = (EdgeEffect) param.thisObject;
                 Context ctx = (Context) XposedHelpers.getAdditionalInstanceField(thiz, FIELD_CONTEXT);
 
@@ -210,9 +260,9 @@ public class EdgeEffectHook {
         });
 
         
-        XposedHelpers.findAndHookMethod(edgeClass, "finish", new XC_MethodReplacement() {
+        XposedHelpers.findAndHookMethod(edgeClass, "finish", new TimedReplacement(SEC_FINISH) {
             @Override
-            protected Object replaceHookedMethod(MethodHookParam param) throws Throwable {
+            protected Object replace(MethodHookParam param) throws Throwable {
                 EdgeEffect thiz = (EdgeEffect) param.thisObject;
                 Context ctx = (Context) XposedHelpers.getAdditionalInstanceField(thiz, FIELD_CONTEXT);
 
@@ -221,6 +271,9 @@ public class EdgeEffectHook {
                 }
 
                 SettingsCache cache = getSettingsCache(ctx, thiz, false);
+                if (HookTelemetry.isEnabled()) {
+                    XposedHelpers.removeAdditionalInstanceField(thiz, FIELD_SETTLE_START);
+                }
 
                 SpringDynamics mSpring = (SpringDynamics) XposedHelpers.getAdditionalInstanceField(thiz, FIELD_SPRING);
                 if (mSpring != null) {
@@ -235,9 +288,9 @@ public class EdgeEffectHook {
         });
 
         
-        XC_MethodReplacement onPullHook = new XC_MethodReplacement() {
+        XC_MethodReplacement onPullHook = new TimedReplacement(SEC_ON_PULL) {
             @Override
-            protected Object replaceHookedMethod(MethodHookParam param) throws Throwable {
+            protected Object replace(MethodHookParam param) throws Throwable {
                 EdgeEffect thiz = (EdgeEffect) param.thisObject;
                 Context ctx = (Context) XposedHelpers.getAdditionalInstanceField(thiz, FIELD_CONTEXT);
 
@@ -245,6 +298,7 @@ public class EdgeEffectHook {
                     return XposedBridge.invokeOriginalMethod(param.method, thiz, param.args);
                 }
 
+                CNT_PULLS.inc();
                 float deltaDistance = (float) param.args[0];
                 float displacement = (param.args.length > 1) ? (float) param.args[1] : 0.5f;
 
@@ -351,9 +405,9 @@ public class EdgeEffectHook {
         XposedHelpers.findAndHookMethod(edgeClass, "onPull", float.class, onPullHook);
 
         
-        XposedHelpers.findAndHookMethod(edgeClass, "onRelease", new XC_MethodReplacement() {
+        XposedHelpers.findAndHookMethod(edgeClass, "onRelease", new TimedReplacement(SEC_ON_RELEASE) {
             @Override
-            protected Object replaceHookedMethod(MethodHookParam param) throws Throwable {
+            protected Object replace(MethodHookParam param) throws Throwable {
                 EdgeEffect thiz = (EdgeEffect) param.thisObject;
                 Context ctx = (Context) XposedHelpers.getAdditionalInstanceField(thiz, FIELD_CONTEXT);
 
@@ -361,6 +415,7 @@ public class EdgeEffectHook {
                     return XposedBridge.invokeOriginalMethod(param.method, thiz, param.args);
                 }
 
+                CNT_RELEASES.inc();
                 SpringDynamics mSpring = (SpringDynamics) XposedHelpers.getAdditionalInstanceField(thiz, FIELD_SPRING);
                 SettingsCache cache = getSettingsCache(ctx, thiz, true);
                 if (mSpring != null && Math.abs(mSpring.mValue) > 0.5f) {
@@ -374,6 +429,7 @@ public class EdgeEffectHook {
                     mSpring.setTargetValue(0);
                     mSpring.setVelocity(0);
                     mSpring.start();
+                    markSettleStart(thiz);
                     XposedHelpers.setIntField(thiz, "mState", 3);
                 } else {
                     XposedHelpers.setIntField(thiz, "mState", 0);
@@ -388,9 +444,9 @@ public class EdgeEffectHook {
         });
 
         
-        XposedHelpers.findAndHookMethod(edgeClass, "onAbsorb", int.class, new XC_MethodReplacement() {
+        XposedHelpers.findAndHookMethod(edgeClass, "onAbsorb", int.class, new TimedReplacement(SEC_ON_ABSORB) {
             @Override
-            protected Object replaceHookedMethod(MethodHookParam param) throws Throwable {
+            protected Object replace(MethodHookParam param) throws Throwable {
                 EdgeEffect thiz = (EdgeEffect) param.thisObject;
                 Context ctx = (Context) XposedHelpers.getAdditionalInstanceField(thiz, FIELD_CONTEXT);
 
@@ -398,6 +454,7 @@ public class EdgeEffectHook {
                     return XposedBridge.invokeOriginalMethod(param.method, thiz, param.args);
                 }
 
+                CNT_ABSORBS.inc();
                 int velocity = (int) param.args[0];
                 XposedHelpers.setIntField(thiz, "mState", 3);
                 SpringDynamics mSpring = (SpringDynamics) XposedHelpers.getAdditionalInstanceField(thiz, FIELD_SPRING);
@@ -426,6 +483,7 @@ public class EdgeEffectHook {
                     mSpring.setTargetValue(0);
                     mSpring.setVelocity(velocityPx);
                     mSpring.start();
+                    markSettleStart(thiz);
                 }
                 XposedHelpers.setAdditionalInstanceField(thiz, FIELD_TARGET_FINGER_X, 0.5f);
                 XposedHelpers.setAdditionalInstanceField(thiz, FIELD_LAST_DELTA, 0f);
@@ -435,9 +493,9 @@ public class EdgeEffectHook {
         });
 
         
-        XposedHelpers.findAndHookMethod(edgeClass, "draw", Canvas.class, new XC_MethodReplacement() {
+        XposedHelpers.findAndHookMethod(edgeClass, "draw", Canvas.class, new TimedReplacement(SEC_DRAW) {
             @Override
-            protected Object replaceHookedMethod(MethodHookParam param) throws Throwable {
+            protected Object replace(MethodHookParam param) throws Throwable {
                 EdgeEffect thiz = (EdgeEffect) param.thisObject;
                 Canvas canvas = (Canvas) param.args[0];
                 Context ctx = (Context) XposedHelpers.getAdditionalInstanceField(thiz, FIELD_CONTEXT);
@@ -667,6 +725,7 @@ public class EdgeEffectHook {
     }
 
     private static void initInstance(Object thiz, Context context) {
+        trackInstance(thiz, context);
         XposedHelpers.setAdditionalInstanceField(thiz, FIELD_CONTEXT, context);
         XposedHelpers.setAdditionalInstanceField(thiz, FIELD_SPRING, new SpringDynamics());
         XposedHelpers.setAdditionalInstanceField(thiz, FIELD_SMOOTH_OFFSET_Y, 0f);
@@ -720,6 +779,31 @@ public class EdgeEffectHook {
     }
 
 
+    private static void trackInstance(Object thiz, Context context) {
+        if (!sTelemetryChecked && context != null) {
+            sTelemetryChecked = true;
+            HookTelemetry.attach(context, getIntSetting(context, KEY_TELEMETRY, 0) == 1);
+        }
+        if (!HookTelemetry.isEnabled()) return;
+        CNT_CREATED.inc();
+        synchronized (sLiveInstances) {
+            sLiveInstances.put(thiz, Boolean.TRUE);
+        }
+    }
+
+    private static void markSettleStart(Object thiz) {
+        if (!HookTelemetry.isEnabled()) return;
+        XposedHelpers.setAdditionalInstanceField(thiz, FIELD_SETTLE_START, SystemClock.uptimeMillis());
+    }
+
+    private static void recordSettle(Object thiz) {
+        if (!HookTelemetry.isEnabled()) return;
+        Object start = XposedHelpers.removeAdditionalInstanceField(thiz, FIELD_SETTLE_START);
+        if (start instanceof Long) {
+            HIST_SETTLE.record(SystemClock.uptimeMillis() - (Long) start);
+        }
+    }
+
     private static void ensureReset(Object thiz) { resetState(thiz); }
 
     private static SpringDynamics mSpringFrom(Object thiz) {
@@ -728,6 +812,7 @@ public class EdgeEffectHook {
     }
 
     private static void forceFinish(Object thiz, SpringDynamics spring) {
+        recordSettle(thiz);
         if (spring != null) {
             spring.cancel();
             spring.mValue = 0f;
@@ -0,0 +1,78 @@
+package org.pixel.customparts.hooks;
+
+/**
+ * Occupancy of a launcher grid as one long per row (bit x = column x).
+ * Used by the migration placement instead of {@code GridOccupancy}: the vacancy
+ * search works on whole rows instead of cell by cell. Grids wider than
+ * {@link #MAX_COLUMNS} are not supported; callers fall back to the launcher's own code.
+ */
+final class GridBitset {
+
+    static final int MAX_COLUMNS = 64;
+
+    final int countX;
+    final int countY;
+    private final long[] rows;
+
+    GridBitset(int countX, int countY) {
+        this.countX = countX;
+        this.countY = countY;
+        this.rows = new long[countY];
+    }
+
+    static boolean fits(int countX, int countY) {
+        return countX > 0 && countY > 0 && countX <= MAX_COLUMNS;
+    }
+
+    /** Same clipping as {@code GridOccupancy.markCells}: cells outside the grid are ignored. */
+    void mark(int x, int y, int spanX, int spanY, boolean value) {
+        int startX = Math.max(0, x);
+        int endX = Math.min(countX, x + spanX);
+        int startY = Math.max(0, y);
+        int endY = Math.min(countY, y + spanY);
+        if (startX >= endX || startY >= endY) return;
+        long mask = spanMask(endX - startX) << startX;
+        for (int r = startY; r < endY; r++) {
+            rows[r] = value ? (rows[r] | mask) : (rows[r] & ~mask);
+        }
+    }
+
+    /** True when the region lies inside the grid and none of its cells is marked. */
+    boolean isVacant(int x, int y, int spanX, int spanY) {
+        if (spanX < 1 || spanY < 1 || x < 0 || y < 0 || x + spanX > countX || y + spanY > countY) return false;
+        long mask = spanMask(spanX) << x;
+        for (int r = y; r < y + spanY; r++) {
+            if ((rows[r] & mask) != 0L) return false;
+        }
+        return true;
+    }
+
+    /**
+     * First vacant {@code spanX x spanY} region in reading order, starting at
+     * ({@code fromX}, {@code fromY}).
+     *
+     * @return {@code y * countX + x}, or -1 when nothing fits
+     */
+    int findVacant(int fromX, int fromY, int spanX, int spanY) {
+        if (spanX < 1 || spanY < 1 || spanX > countX || spanY > countY) return -1;
+        // Допустимые левые края, где регион ещё помещается по ширине
+        long starts = spanMask(countX - spanX + 1);
+        for (int y = Math.max(0, fromY); y + spanY <= countY; y++) {
+            long occupied = 0L;
+            for (int r = y; r < y + spanY; r++) occupied |= rows[r];
+
+            // Бит x занят, если занята любая клетка x..x+spanX-1
+            long blocked = occupied;
+            for (int k = 1; k < spanX; k++) blocked |= occupied >>> k;
+
+            long free = ~blocked & starts;
+            if (y == fromY && fromX > 0) free &= (fromX >= MAX_COLUMNS) ? 0L : (-1L << fromX);
+            if (free != 0L) return y * countX + Long.numberOfTrailingZeros(free);
+        }
+        return -1;
+    }
+
+    private static long spanMask(int span) {
+        return (span >= MAX_COLUMNS) ? -1L : (1L << span) - 1L;
+    }
+}
@@ -1,11 +1,12 @@
 package org.pixel.customparts.hooks;
 
 import android.content.Context;
-import android.graphics.drawable.Drawable;
+import android.net.Uri;
 import android.text.TextUtils;
 import android.view.View;
 import android.widget.TextView;
 
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.Collections;
 import java.util.List;
@@ -14,6 +15,8 @@ import de.robv.android.xposed.XC_MethodHook;
 import de.robv.android.xposed.XposedBridge;
 import de.robv.android.xposed.XposedHelpers;
 import org.pixel.customparts.core.BaseHook;
+import org.pixel.customparts.core.HookTelemetry;
+import org.pixel.customparts.core.SettingsWatcher;
 
 public class GridSizeAppMenuHook extends BaseHook {
 
@@ -42,7 +45,52 @@ public class GridSizeAppMenuHook extends BaseHook {
     private static final int DISPLAY_PREDICTION = 8;
     private static final int DISPLAY_SEARCH_RESULT_APP_ROW = 9;
 
-    private static final String EXTRA_BASE_ICON_SIZE = "cpr_base_icon_size";
+    private static final int TAG_MENU_STATE = 0x7f010007;
+
+    // Строки таблицы стилей: у каждой свой размер иконки и режим подписи
+    private static final int SLOT_ALL_APPS = 0;
+    private static final int SLOT_PREDICTION = 1;
+    private static final int SLOT_SEARCH = 2;
+    private static final int SLOT_COUNT = 3;
+
+    private static final int TEXT_MODE_DEFAULT = 0;
+    private static final int TEXT_MODE_TWO_LINES = 1;
+    private static final int TEXT_MODE_MARQUEE = 2;
+    private static final int TEXT_MODE_HIDDEN = 3;
+
+    private static final String[] STYLE_KEYS = {
+            KEY_MENU_ENABLE, KEY_SUGGESTION_DISABLE,
+            KEY_MENU_ICON_SIZE, KEY_SUGGESTION_ICON_SIZE, KEY_SEARCH_ICON_SIZE,
+            KEY_MENU_TEXT_MODE, KEY_SUGGESTION_TEXT_MODE, KEY_SEARCH_TEXT_MODE
+    };
+
+    /** Icon size and label mode per container, rebuilt only when one of {@link #STYLE_KEYS} changes. */
+    private static final class MenuStyle {
+        final boolean enabled;
+        final boolean suggestionsDisabled;
+        final int[] iconPercent = new int[SLOT_COUNT];
+        final int[] textMode = new int[SLOT_COUNT];
+
+        MenuStyle(boolean enabled, boolean suggestionsDisabled) {
+            this.enabled = enabled;
+            this.suggestionsDisabled = suggestionsDisabled;
+        }
+    }
+
+    /** What was last applied to one BubbleTextView; kept in a view tag. */
+    private static final class ViewState {
+        int baseIconSize;
+        int appliedIconSize;
+    }
+
+    private static final HookTelemetry.Counter CNT_BIND = HookTelemetry.counter("AppMenu.bind");
+    private static final HookTelemetry.Counter CNT_ICON_RESIZE = HookTelemetry.counter("AppMenu.iconResize");
+    private static final HookTelemetry.Counter CNT_TEXT_MODE = HookTelemetry.counter("AppMenu.textModeApply");
+
+    private volatile MenuStyle menuStyle;
+    private SettingsWatcher styleWatcher;
+    private Field iconSizeField;
+    private Field displayField;
 
     @Override
     public String getHookId() {
@@ -160,20 +208,35 @@ public class GridSizeAppMenuHook extends BaseHook {
     private void hookBubbleTextView(ClassLoader classLoader) {
         try {
             Class<?> bubbleTextViewClass = XposedHelpers.findClass(CLASS_BUBBLE_TEXT_VIEW, classLoader);
+            iconSizeField = XposedHelpers.findField(bubbleTextViewClass, "mIconSize");
+            displayField = XposedHelpers.findField(bubbleTextViewClass, "mDisplay");
+
+            XC_MethodHook bindHook = new XC_MethodHook() {
+                @Override
+                protected void beforeHookedMethod(MethodHookParam param) {
+                    if (!(param.thisObject instanceof TextView)) return;
+                    TextView view = (TextView) param.thisObject;
+                    Context context = view.getContext();
+                    if (context != null) {
+                        // mIconSize до оригинала: bounds иконки выставит сам лаунчер, без второго прохода
+                        applyIconSize(view, getMenuStyle(context));
+                    }
+                }
+
+                @Override
+                protected void afterHookedMethod(MethodHookParam param) {
+                    if (!(param.thisObject instanceof TextView)) return;
+                    TextView view = (TextView) param.thisObject;
+                    Context context = view.getContext();
+                    if (context != null) {
+                        applyTextMode(view, getMenuStyle(context));
+                    }
+                }
+            };
 
             for (Method method : bubbleTextViewClass.getDeclaredMethods()) {
                 if (method.getName().equals("applyIconAndLabel")) {
-                    XposedBridge.hookMethod(method, new XC_MethodHook() {
-                        @Override
-                        protected void afterHookedMethod(MethodHookParam param) {
-                            if (!(param.thisObject instanceof TextView)) return;
-                            TextView view = (TextView) param.thisObject;
-                            Context context = view.getContext();
-                            if (context != null) {
-                                handleAllAppsView(view, context);
-                            }
-                        }
-                    });
+                    XposedBridge.hookMethod(method, bindHook);
                 }
             }
         } catch (Throwable e) {
@@ -196,8 +259,8 @@ public class GridSizeAppMenuHook extends BaseHook {
                         Context context = view.getContext();
                         if (context == null) return;
                         
-                        if (!isSettingEnabled(context, KEY_MENU_ENABLE)) return;
-                        if (getIntSetting(context, KEY_SUGGESTION_DISABLE, 0) == 1) {
+                        MenuStyle style = getMenuStyle(context);
+                        if (style.enabled && style.suggestionsDisabled) {
                             param.args[0] = Collections.emptyList();
                         }
                     }
@@ -242,109 +305,160 @@ public class GridSizeAppMenuHook extends BaseHook {
         }
     }
 
-    private void handleAllAppsView(TextView view, Context context) {
-        try {
-            if (!isSettingEnabled(context, KEY_MENU_ENABLE)) return;
-            
-            int mDisplay = XposedHelpers.getIntField(view, "mDisplay");
-            
-            String keyIconSize = null;
-            String keyTextMode = null;
-            
-            switch (mDisplay) {
-                case DISPLAY_ALL_APPS:
-                    keyIconSize = KEY_MENU_ICON_SIZE;
-                    keyTextMode = KEY_MENU_TEXT_MODE;
-                    break;
-                case DISPLAY_PREDICTION:
-                    keyIconSize = KEY_SUGGESTION_ICON_SIZE;
-                    keyTextMode = KEY_SUGGESTION_TEXT_MODE;
-                    break;
-                case DISPLAY_SEARCH_RESULT:
-                case DISPLAY_SEARCH_RESULT_SMALL:
-                case DISPLAY_SEARCH_RESULT_APP_ROW:
-                    keyIconSize = KEY_SEARCH_ICON_SIZE;
-                    keyTextMode = KEY_SEARCH_TEXT_MODE;
-                    break;
-                default:
-                    return;
+    private MenuStyle getMenuStyle(Context context) {
+        MenuStyle style = menuStyle;
+        if (style != null) return style;
+        synchronized (this) {
+            if (menuStyle == null) {
+                menuStyle = loadMenuStyle(context);
+                watchMenuStyle(context);
             }
+            return menuStyle;
+        }
+    }
 
-            if (keyIconSize != null) {
-                applyIconSize(view, context, keyIconSize);
-            }
+    private MenuStyle loadMenuStyle(Context context) {
+        MenuStyle style = new MenuStyle(
+                isSettingEnabled(context, KEY_MENU_ENABLE),
+                getIntSetting(context, KEY_SUGGESTION_DISABLE, 0) == 1);
+        style.iconPercent[SLOT_ALL_APPS] = getIntSetting(context, KEY_MENU_ICON_SIZE, 100);
+        style.iconPercent[SLOT_PREDICTION] = getIntSetting(context, KEY_SUGGESTION_ICON_SIZE, 100);
+        style.iconPercent[SLOT_SEARCH] = getIntSetting(context, KEY_SEARCH_ICON_SIZE, 100);
+        style.textMode[SLOT_ALL_APPS] = getIntSetting(context, KEY_MENU_TEXT_MODE, TEXT_MODE_DEFAULT);
+        style.textMode[SLOT_PREDICTION] = getIntSetting(context, KEY_SUGGESTION_TEXT_MODE, TEXT_MODE_DEFAULT);
+        style.textMode[SLOT_SEARCH] = getIntSetting(context, KEY_SEARCH_TEXT_MODE, TEXT_MODE_DEFAULT);
+        return style;
+    }
 
-            if (keyTextMode != null) {
-                applyTextMode(view, context, keyTextMode);
+    private void watchMenuStyle(Context context) {
+        Context appContext = context.getApplicationContext();
+        final Context settingsContext = (appContext != null) ? appContext : context;
+        String[] keys = new String[STYLE_KEYS.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = resolveSettingKey(STYLE_KEYS[i]);
+        }
+        styleWatcher = SettingsWatcher.watch(settingsContext, keys, new SettingsWatcher.Listener() {
+            @Override
+            public void onSettingsChanged(Uri uri) {
+                synchronized (GridSizeAppMenuHook.this) {
+                    menuStyle = loadMenuStyle(settingsContext);
+                }
             }
-        } catch (Exception e) {
-            // ignore
+        });
+    }
+
+    private int slotOf(TextView view) throws IllegalAccessException {
+        switch (displayField.getInt(view)) {
+            case DISPLAY_ALL_APPS:
+                return SLOT_ALL_APPS;
+            case DISPLAY_PREDICTION:
+                return SLOT_PREDICTION;
+            case DISPLAY_SEARCH_RESULT:
+            case DISPLAY_SEARCH_RESULT_SMALL:
+            case DISPLAY_SEARCH_RESULT_APP_ROW:
+                return SLOT_SEARCH;
+            default:
+                return -1;
         }
     }
 
-    private void applyIconSize(TextView view, Context context, String keySize) {
+    private void applyIconSize(TextView view, MenuStyle style) {
         try {
-            int sizePercent = getIntSetting(context, keySize, 100);
-            int currentSize = XposedHelpers.getIntField(view, "mIconSize");
-            
-            Object storedBaseSizeObj = XposedHelpers.getAdditionalInstanceField(view, EXTRA_BASE_ICON_SIZE);
-            Integer storedBaseSize = (storedBaseSizeObj instanceof Integer) ? (Integer) storedBaseSizeObj : null;
-            
-            int baseSize = (storedBaseSize != null) ? storedBaseSize : currentSize;
-            
-            if (storedBaseSize == null) {
-                XposedHelpers.setAdditionalInstanceField(view, EXTRA_BASE_ICON_SIZE, baseSize);
+            ViewState state = (ViewState) view.getTag(TAG_MENU_STATE);
+            int slot = slotOf(view);
+            if (slot < 0 || !style.enabled) {
+                // Настройку выключили: вернуть исходный размер, если меняли
+                if (state != null && state.appliedIconSize != state.baseIconSize
+                        && iconSizeField.getInt(view) == state.appliedIconSize) {
+                    iconSizeField.setInt(view, state.baseIconSize);
+                    state.appliedIconSize = state.baseIconSize;
+                }
+                return;
             }
-
-            int newSize;
-            if (sizePercent == 100 || sizePercent <= 0) {
-                newSize = baseSize;
-            } else {
-                newSize = Math.max(1, (int) (baseSize * sizePercent / 100f));
+            if (state == null) {
+                state = new ViewState();
+                view.setTag(TAG_MENU_STATE, state);
             }
 
-            XposedHelpers.setIntField(view, "mIconSize", newSize);
+            // Лаунчер сам сбросил mIconSize (новый DeviceProfile) - это новая база
+            int current = iconSizeField.getInt(view);
+            if (state.appliedIconSize == 0 || current != state.appliedIconSize) {
+                state.baseIconSize = current;
+            }
 
-            Drawable[] drawables = view.getCompoundDrawables();
-            Drawable topDrawable = drawables[1];
-            if (topDrawable != null) {
-                topDrawable.setBounds(0, 0, newSize, newSize);
-                view.setCompoundDrawables(drawables[0], topDrawable, drawables[2], drawables[3]);
+            int sizePercent = style.iconPercent[slot];
+            int target = (sizePercent == 100 || sizePercent <= 0)
+                    ? state.baseIconSize
+                    : Math.max(1, (int) (state.baseIconSize * sizePercent / 100f));
+            CNT_BIND.inc();
+            if (current != target) {
+                iconSizeField.setInt(view, target);
+                CNT_ICON_RESIZE.inc();
             }
+            state.appliedIconSize = target;
         } catch (Throwable e) {
             // ignore
         }
     }
 
-    private void applyTextMode(final TextView view, Context context, String keyMode) {
-        int mode = getIntSetting(context, keyMode, 0);
-        
-        if ((view.getText() == null || view.getText().length() == 0) && mode != 3) return;
+    private void applyTextMode(TextView view, MenuStyle style) {
+        if (!style.enabled) return;
+        ViewState state = (ViewState) view.getTag(TAG_MENU_STATE);
+        if (state == null) return;
+        int slot;
+        try {
+            slot = slotOf(view);
+        } catch (Throwable e) {
+            return;
+        }
+        if (slot < 0) return;
+
+        int mode = style.textMode[slot];
+        CharSequence text = view.getText();
+        boolean hasText = text != null && text.length() > 0;
+        if (mode == TEXT_MODE_HIDDEN) {
+            // Подпись приходит заново при каждом bind
+            if (hasText) view.setText("");
+            return;
+        }
+        if (!hasText) return;
 
+        // Сверяем с самим view: лаунчер сбрасывает maxLines/ellipsize/selected мимо нас
+        boolean changed = false;
         switch (mode) {
-            case 0: // Default
-                break;
-            case 1: // 2 lines
-                view.setMaxLines(2);
-                view.setEllipsize(TextUtils.TruncateAt.END);
+            case TEXT_MODE_TWO_LINES:
+                if (view.getMaxLines() != 2) {
+                    view.setMaxLines(2);
+                    changed = true;
+                }
+                if (view.getEllipsize() != TextUtils.TruncateAt.END) {
+                    view.setEllipsize(TextUtils.TruncateAt.END);
+                    changed = true;
+                }
                 break;
-            case 2: // Marquee
-                view.setSingleLine(true);
-                view.setEllipsize(TextUtils.TruncateAt.MARQUEE);
-                view.setMarqueeRepeatLimit(-1);
-                view.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            view.setSelected(true);
-                        } catch (Throwable t) {}
-                    }
-                });
+            case TEXT_MODE_MARQUEE:
+                if (!view.isSingleLine()) {
+                    view.setSingleLine(true);
+                    changed = true;
+                }
+                if (view.getEllipsize() != TextUtils.TruncateAt.MARQUEE) {
+                    view.setEllipsize(TextUtils.TruncateAt.MARQUEE);
+                    changed = true;
+                }
+                if (view.getMarqueeRepeatLimit() != -1) {
+                    view.setMarqueeRepeatLimit(-1);
+                    changed = true;
+                }
+                // Бегущая строка стартует сама, когда TextView построит layout
+                if (!view.isSelected()) {
+                    view.setSelected(true);
+                    changed = true;
+                }
                 break;
-            case 3: // Hidden
-                view.setText("");
+            default:
                 break;
         }
+        if (changed) CNT_TEXT_MODE.inc();
     }
 
     private Context getContextFromIDP(Object idp) {
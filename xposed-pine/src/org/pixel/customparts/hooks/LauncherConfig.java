@@ -0,0 +1,66 @@
+package org.pixel.customparts.hooks;
+
+/**
+ * Immutable snapshot of the launcher settings read by the hot hooks.
+ * {@link #diff(LauncherConfig)} tells which groups have to be reapplied on resume.
+ */
+final class LauncherConfig {
+
+    static final int GROUP_PADDING = 1;
+    static final int GROUP_DOCK = 1 << 1;
+    static final int GROUP_DOTS = 1 << 2;
+    static final int GROUP_DT2S = 1 << 3;
+    static final int GROUP_FEED = 1 << 4;
+    static final int GROUP_ALL = GROUP_PADDING | GROUP_DOCK | GROUP_DOTS | GROUP_DT2S | GROUP_FEED;
+
+    final boolean dockEnabled;
+    final int paddingHomepage;
+    final boolean hideSearch;
+    final boolean hideDock;
+    final int paddingDock;
+    final int paddingSearch;
+    final int paddingDots;
+    final int paddingDotsX;
+    final boolean dt2sEnabled;
+    final int dt2sTimeout;
+    final boolean disableFeed;
+    // Только для хуков загрузки/миграции, на onResume не переприменяется
+    final boolean topRowWidgets;
+
+    LauncherConfig(boolean dockEnabled, int paddingHomepage,
+                   boolean hideSearch, boolean hideDock, int paddingDock, int paddingSearch,
+                   int paddingDots, int paddingDotsX,
+                   boolean dt2sEnabled, int dt2sTimeout, boolean disableFeed,
+                   boolean topRowWidgets) {
+        this.dockEnabled = dockEnabled;
+        this.paddingHomepage = paddingHomepage;
+        this.hideSearch = hideSearch;
+        this.hideDock = hideDock;
+        this.paddingDock = paddingDock;
+        this.paddingSearch = paddingSearch;
+        this.paddingDots = paddingDots;
+        this.paddingDotsX = paddingDotsX;
+        this.dt2sEnabled = dt2sEnabled;
+        this.dt2sTimeout = dt2sTimeout;
+        this.disableFeed = disableFeed;
+        this.topRowWidgets = topRowWidgets;
+    }
+
+    /** @return mask of GROUP_* whose values differ from {@code old}; everything when {@code old} is null */
+    int diff(LauncherConfig old) {
+        if (old == null) return GROUP_ALL;
+        int groups = 0;
+        // Выключатель дока влияет на отступы, док и точки сразу
+        if (dockEnabled != old.dockEnabled) groups |= GROUP_PADDING | GROUP_DOCK | GROUP_DOTS;
+        if (paddingHomepage != old.paddingHomepage) groups |= GROUP_PADDING;
+        if (hideSearch != old.hideSearch || hideDock != old.hideDock
+                || paddingDock != old.paddingDock || paddingSearch != old.paddingSearch) {
+            // Док меняет DeviceProfile и пересчитывает workspacePadding, отступ надо вернуть
+            groups |= GROUP_DOCK | GROUP_PADDING;
+        }
+        if (paddingDots != old.paddingDots || paddingDotsX != old.paddingDotsX) groups |= GROUP_DOTS;
+        if (dt2sEnabled != old.dt2sEnabled || dt2sTimeout != old.dt2sTimeout) groups |= GROUP_DT2S;
+        if (disableFeed != old.disableFeed) groups |= GROUP_FEED;
+        return groups;
+    }
+}
@@ -0,0 +1,214 @@
+package org.pixel.customparts.hooks;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.util.SparseArray;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+
+import de.robv.android.xposed.XposedHelpers;
+
+/**
+ * State of one {@code LoaderTask.run}: the settings snapshot taken at load start,
+ * positions saved by {@link WorkspacePositionStore} and scratch space for the
+ * {@code LoaderCursor.checkAndAddItem} hook, so each item costs a few field reads
+ * and int comparisons.
+ * Used only from the loader thread.
+ */
+final class LauncherLoadSession {
+
+    private static final int CONTAINER_DESKTOP = -100;
+
+    /** Field handles shared by all sessions, resolved once when the hook is installed. */
+    static final class Accessors {
+        final Field id;
+        final Field container;
+        final Field screenId;
+        final Field cellX;
+        final Field cellY;
+        final Field spanX;
+        final Field spanY;
+        final Field cursorContext;
+        final Field cursorOccupied;
+        final Field cells;
+        final Field countX;
+        final Field countY;
+
+        Accessors(Class<?> itemInfoClass, Class<?> loaderCursorClass, Class<?> occupancyClass) {
+            id = XposedHelpers.findField(itemInfoClass, "id");
+            container = XposedHelpers.findField(itemInfoClass, "container");
+            screenId = XposedHelpers.findField(itemInfoClass, "screenId");
+            cellX = XposedHelpers.findField(itemInfoClass, "cellX");
+            cellY = XposedHelpers.findField(itemInfoClass, "cellY");
+            spanX = XposedHelpers.findField(itemInfoClass, "spanX");
+            spanY = XposedHelpers.findField(itemInfoClass, "spanY");
+            cursorContext = XposedHelpers.findField(loaderCursorClass, "mContext");
+            cursorOccupied = XposedHelpers.findField(loaderCursorClass, "mOccupied");
+            cells = XposedHelpers.findField(occupancyClass, "cells");
+            countX = XposedHelpers.findField(occupancyClass, "mCountX");
+            countY = XposedHelpers.findField(occupancyClass, "mCountY");
+        }
+    }
+
+    final boolean topRowWidgets;
+    private final Accessors accessors;
+    private volatile Map<Integer, WorkspacePositionStore.Position> savedPositions;
+    private final int gridColumns;
+    private final int gridRows;
+    // Все клетки экрана 0 по строкам базы, а не только уже загруженные
+    private GridBitset topScreen;
+    private boolean topScreenScanned;
+
+    // Клетки, освобождённые в before и возвращаемые в after
+    private boolean[][] pendingCells;
+    private int pendingCountX;
+    private int pendingCountY;
+    private int pendingX;
+    private int pendingSpanX;
+    private int pendingSpanY;
+
+    LauncherLoadSession(Accessors accessors, boolean topRowWidgets) {
+        this(accessors, topRowWidgets, null, 0, 0);
+    }
+
+    LauncherLoadSession(Accessors accessors, boolean topRowWidgets,
+                        Map<Integer, WorkspacePositionStore.Position> savedPositions,
+                        int gridColumns, int gridRows) {
+        this.accessors = accessors;
+        this.topRowWidgets = topRowWidgets;
+        this.savedPositions = savedPositions;
+        this.gridColumns = gridColumns;
+        this.gridRows = gridRows;
+    }
+
+    /**
+     * Frees the cells of a top-row item on screen 0 so the stock overlap check
+     * lets it through; {@link #afterAdd()} marks them again.
+     */
+    void beforeAdd(Object cursor, Object item) throws IllegalAccessException {
+        pendingCells = null;
+        if (!topRowWidgets) return;
+
+        Accessors a = accessors;
+        if (a.container.getInt(item) != CONTAINER_DESKTOP) return;
+        Map<Integer, WorkspacePositionStore.Position> saved = savedPositions;
+        if (saved != null && !saved.isEmpty()) restorePosition(cursor, item, saved);
+        if (a.screenId.getInt(item) != 0) return;
+        if (a.cellY.getInt(item) != 0) return;
+
+        Object occupancy = occupancyOf(cursor, 0);
+        if (occupancy == null) return;
+
+        pendingCells = (boolean[][]) a.cells.get(occupancy);
+        pendingCountX = a.countX.getInt(occupancy);
+        pendingCountY = a.countY.getInt(occupancy);
+        pendingX = a.cellX.getInt(item);
+        pendingSpanX = a.spanX.getInt(item);
+        pendingSpanY = a.spanY.getInt(item);
+        markPending(false);
+    }
+
+    /**
+     * Moves an item back into the top row of screen 0 when its database row was
+     * pushed down from the saved position (same screen, column and span) by a
+     * path that bypasses ModelWriter. The target must be vacant among all
+     * desktop rows of the screen, not just the items loaded so far, so the stock
+     * overlap check can never drop a later item because of it.
+     */
+    private void restorePosition(Object cursor, Object item,
+                                 Map<Integer, WorkspacePositionStore.Position> savedPositions) throws IllegalAccessException {
+        Accessors a = accessors;
+        WorkspacePositionStore.Position saved = savedPositions.get(a.id.getInt(item));
+        if (saved == null || saved.screenId != 0 || saved.cellY != 0) return;
+
+        int cellY = a.cellY.getInt(item);
+        if (cellY <= 0) return;
+        int cellX = a.cellX.getInt(item);
+        int spanX = a.spanX.getInt(item);
+        int spanY = a.spanY.getInt(item);
+        if (a.screenId.getInt(item) != 0 || cellX != saved.cellX || spanX != saved.spanX || spanY != saved.spanY) {
+            return;
+        }
+
+        GridBitset grid = topScreenOccupancy(cursor);
+        if (grid == null) return;
+        grid.mark(cellX, cellY, spanX, spanY, false);
+        if (grid.isVacant(cellX, 0, spanX, spanY)) {
+            grid.mark(cellX, 0, spanX, spanY, true);
+            a.cellY.setInt(item, 0);
+        } else {
+            grid.mark(cellX, cellY, spanX, spanY, true);
+        }
+    }
+
+    /**
+     * Occupancy of screen 0 from every desktop row the loader is going to read.
+     * Scans the wrapped cursor, so LoaderCursor's own per-row state is left alone.
+     *
+     * @return null when the rows can't be read; nothing is restored then
+     */
+    private GridBitset topScreenOccupancy(Object cursor) {
+        if (topScreenScanned) return topScreen;
+        topScreenScanned = true;
+        if (!GridBitset.fits(gridColumns, gridRows) || !(cursor instanceof CursorWrapper)) return null;
+
+        Cursor rows = ((CursorWrapper) cursor).getWrappedCursor();
+        int position = rows.getPosition();
+        try {
+            int containerIndex = rows.getColumnIndexOrThrow("container");
+            int screenIndex = rows.getColumnIndexOrThrow("screen");
+            int cellXIndex = rows.getColumnIndexOrThrow("cellX");
+            int cellYIndex = rows.getColumnIndexOrThrow("cellY");
+            int spanXIndex = rows.getColumnIndexOrThrow("spanX");
+            int spanYIndex = rows.getColumnIndexOrThrow("spanY");
+
+            GridBitset grid = new GridBitset(gridColumns, gridRows);
+            if (rows.moveToFirst()) {
+                do {
+                    if (rows.getInt(containerIndex) != CONTAINER_DESKTOP || rows.getInt(screenIndex) != 0) continue;
+                    grid.mark(rows.getInt(cellXIndex), rows.getInt(cellYIndex),
+                            rows.getInt(spanXIndex), rows.getInt(spanYIndex), true);
+                } while (rows.moveToNext());
+            }
+            topScreen = grid;
+        } catch (Throwable t) {
+            topScreen = null;
+        } finally {
+            rows.moveToPosition(position);
+        }
+        return topScreen;
+    }
+
+    /** The database was replaced under this load (backup restore): saved positions no longer apply. */
+    void dropSavedPositions() {
+        savedPositions = null;
+    }
+
+    private Object occupancyOf(Object cursor, int screenId) throws IllegalAccessException {
+        Object occupied = accessors.cursorOccupied.get(cursor);
+        if (occupied instanceof SparseArray) {
+            return ((SparseArray<?>) occupied).get(screenId);
+        } else if (occupied != null) {
+            return XposedHelpers.callMethod(occupied, "get", screenId);
+        }
+        return null;
+    }
+
+    void afterAdd() {
+        if (pendingCells == null) return;
+        markPending(true);
+        pendingCells = null;
+    }
+
+    // То же, что GridOccupancy.markCells для строки 0, без рефлексии
+    private void markPending(boolean value) {
+        if (pendingX < 0) return;
+        boolean[][] cells = pendingCells;
+        for (int x = pendingX; x < pendingX + pendingSpanX && x < pendingCountX; x++) {
+            for (int y = 0; y < pendingSpanY && y < pendingCountY; y++) {
+                cells[x][y] = value;
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.pixel.customparts.hooks;
+
+import android.view.View;
+import android.view.ViewParent;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.pixel.customparts.core.HookTelemetry;
+
+/**
+ * Remembers which launcher container an icon lives in.
+ * The result is kept in a view tag while the view is attached and dropped on
+ * detach; ancestor class names are matched once per class, not once per walk.
+ */
+public class LauncherViewClassifier {
+
+    public static final int KIND_OTHER = 0;
+    public static final int KIND_HOTSEAT = 1;
+
+    private static final int KIND_MASK = 0x0F;
+    // BubbleTextView, чей mDisplay не рабочий стол и не папка
+    private static final int FLAG_FOREIGN_DISPLAY = 0x10;
+    // Слушатель attach/detach уже повешен, но значение сброшено
+    private static final Integer STATE_DETACHED = -1;
+    private static final int ANCESTOR_UNDECIDED = -1;
+
+    private static final int TAG_CONTAINER_KIND = 0x7f010006;
+    private static final int DISPLAY_WORKSPACE = 0;
+    private static final int DISPLAY_FOLDER = 2;
+
+    private static final HookTelemetry.Counter CNT_MISS = HookTelemetry.counter("Launcher.classifyMiss");
+
+    private final Class<?> bubbleTextViewClass;
+    private final Class<?> hotseatClass;
+    private final ConcurrentHashMap<Class<?>, Integer> ancestorKinds = new ConcurrentHashMap<>();
+    private Field displayField;
+
+    private final View.OnAttachStateChangeListener invalidator = new View.OnAttachStateChangeListener() {
+        @Override
+        public void onViewAttachedToWindow(View v) {
+            v.setTag(TAG_CONTAINER_KIND, compute(v));
+        }
+
+        @Override
+        public void onViewDetachedFromWindow(View v) {
+            v.setTag(TAG_CONTAINER_KIND, STATE_DETACHED);
+        }
+    };
+
+    public LauncherViewClassifier(Class<?> bubbleTextViewClass, Class<?> hotseatClass) {
+        this.bubbleTextViewClass = bubbleTextViewClass;
+        this.hotseatClass = hotseatClass;
+        if (bubbleTextViewClass != null) {
+            try {
+                displayField = bubbleTextViewClass.getDeclaredField("mDisplay");
+                displayField.setAccessible(true);
+            } catch (Throwable e) { /* ignore */ }
+        }
+    }
+
+    /** {@link #KIND_HOTSEAT} for icons inside the dock, {@link #KIND_OTHER} for everything else. */
+    public int kindOf(View view) {
+        return classify(view) & KIND_MASK;
+    }
+
+    /** True for BubbleTextViews bound for all-apps, predictions, search and similar displays. */
+    public boolean hasForeignDisplay(View view) {
+        return (classify(view) & FLAG_FOREIGN_DISPLAY) != 0;
+    }
+
+    private int classify(View view) {
+        Object tag = view.getTag(TAG_CONTAINER_KIND);
+        if (tag instanceof Integer && (Integer) tag >= 0) {
+            return (Integer) tag;
+        }
+        CNT_MISS.inc();
+        int value = compute(view);
+        if (tag == null) {
+            view.addOnAttachStateChangeListener(invalidator);
+        }
+        view.setTag(TAG_CONTAINER_KIND, view.isAttachedToWindow() ? value : STATE_DETACHED);
+        return value;
+    }
+
+    private int compute(View view) {
+        int flags = 0;
+        if (displayField != null && bubbleTextViewClass.isInstance(view)) {
+            try {
+                int display = displayField.getInt(view);
+                if (display != DISPLAY_WORKSPACE && display != DISPLAY_FOLDER) flags = FLAG_FOREIGN_DISPLAY;
+            } catch (Throwable e) { /* ignore */ }
+        }
+
+        ViewParent parent = view.getParent();
+        while (parent instanceof View) {
+            int kind = ancestorKind(parent.getClass());
+            if (kind != ANCESTOR_UNDECIDED) return kind | flags;
+            parent = parent.getParent();
+        }
+        return KIND_OTHER | flags;
+    }
+
+    private int ancestorKind(Class<?> clazz) {
+        Integer cached = ancestorKinds.get(clazz);
+        if (cached != null) return cached;
+
+        int kind = ANCESTOR_UNDECIDED;
+        String name = clazz.getName();
+        if ((hotseatClass != null && hotseatClass.isAssignableFrom(clazz)) || name.contains("Hotseat")) {
+            kind = KIND_HOTSEAT;
+        } else if (name.contains("Workspace") || name.contains("Folder") || name.contains("AllApps")
+                || name.contains("RecyclerView") || name.contains("SearchResult") || name.contains("SearchContainer")) {
+            // Эти контейнеры не бывают внутри дока, дальше вверх не идём
+            kind = KIND_OTHER;
+        }
+        ancestorKinds.put(clazz, kind);
+        return kind;
+    }
+}
@@ -0,0 +1,166 @@
+package org.pixel.customparts.hooks;
+
+import android.app.Activity;
+import android.content.BroadcastReceiver;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.lang.reflect.Method;
+
+import org.pixel.customparts.core.HookTelemetry;
+
+/**
+ * Double-tap-to-sleep call path, resolved once when the gesture listener is
+ * installed so that a tap costs a single {@code goToSleep} invocation.
+ * Order: IPowerManager binder, hidden PowerManager.goToSleep, ordered broadcast
+ * to the app's SleepReceiver. A path that fails with a SecurityException, or
+ * fails a second time, is dropped, so later taps go straight to the one that works.
+ */
+final class SleepInvoker {
+
+    private static final String TAG = "SleepLauncher";
+
+    static final String ACTION_SLEEP = "org.pixel.customparts.ACTION_SLEEP";
+    private static final ComponentName SLEEP_RECEIVER =
+            new ComponentName("org.pixel.customparts", "org.pixel.customparts.services.SleepReceiver");
+    private static final int FLAG_INCLUDE_STOPPED_PACKAGES = 32;
+
+    private static final HookTelemetry.Histogram HIST_LATENCY =
+            HookTelemetry.histogram("Launcher.dt2sLatency", "ms", 4, 8, 16, 32, 64, 128, 256);
+    private static final HookTelemetry.Histogram HIST_FALLBACK_LATENCY =
+            HookTelemetry.histogram("Launcher.dt2sFallbackLatency", "ms", 50, 100, 200, 400, 800, 1600, 3200);
+    private static final HookTelemetry.Counter CNT_BINDER = HookTelemetry.counter("Launcher.dt2sBinder");
+    private static final HookTelemetry.Counter CNT_POWER_MANAGER = HookTelemetry.counter("Launcher.dt2sPowerManager");
+    private static final HookTelemetry.Counter CNT_BROADCAST = HookTelemetry.counter("Launcher.dt2sBroadcast");
+    private static final HookTelemetry.Counter CNT_BROADCAST_FAILED = HookTelemetry.counter("Launcher.dt2sBroadcastFailed");
+
+    private final Context context;
+    private Object powerService;
+    private Method binderGoToSleep;
+    private PowerManager powerManager;
+    private Method managerGoToSleep;
+    private int managerFailures;
+    private final Intent fallbackIntent;
+
+    private SleepInvoker(Context context) {
+        this.context = context;
+        fallbackIntent = new Intent(ACTION_SLEEP);
+        fallbackIntent.setComponent(SLEEP_RECEIVER);
+        fallbackIntent.addFlags(Intent.FLAG_RECEIVER_FOREGROUND | FLAG_INCLUDE_STOPPED_PACKAGES);
+    }
+
+    static SleepInvoker prepare(Context context) {
+        Context appContext = context.getApplicationContext();
+        SleepInvoker invoker = new SleepInvoker((appContext != null) ? appContext : context);
+        invoker.resolveBinder();
+        try {
+            invoker.powerManager = (PowerManager) invoker.context.getSystemService(Context.POWER_SERVICE);
+            invoker.managerGoToSleep = PowerManager.class.getMethod("goToSleep", long.class);
+        } catch (Throwable t) {
+            Log.w(TAG, "PowerManager.goToSleep unavailable", t);
+        }
+        return invoker;
+    }
+
+    private void resolveBinder() {
+        powerService = null;
+        binderGoToSleep = null;
+        try {
+            Class<?> smClass = Class.forName("android.os.ServiceManager");
+            Object binder = smClass.getMethod("getService", String.class).invoke(null, Context.POWER_SERVICE);
+            if (binder == null) return;
+            Class<?> binderClass = Class.forName("android.os.IBinder");
+            Class<?> stubClass = Class.forName("android.os.IPowerManager$Stub");
+            Object service = stubClass.getMethod("asInterface", binderClass).invoke(null, binder);
+            Method method = service.getClass().getMethod("goToSleep", long.class, int.class, int.class);
+            powerService = service;
+            binderGoToSleep = method;
+        } catch (Throwable t) {
+            Log.w(TAG, "IPowerManager unavailable", t);
+        }
+    }
+
+    /** @param tapTime uptime of the tap that triggered the sleep, for the latency trace */
+    void sleep(long tapTime) {
+        if (binderGoToSleep != null) {
+            Throwable error = invokeBinder(tapTime);
+            if (error == null) return;
+            if (isSecurityException(error)) {
+                // Без DEVICE_POWER повтор бесполезен
+                binderGoToSleep = null;
+                powerService = null;
+            } else {
+                // Сервис мог перезапуститься, берём binder заново один раз
+                resolveBinder();
+                if (binderGoToSleep != null) {
+                    if (invokeBinder(tapTime) == null) return;
+                    binderGoToSleep = null;
+                    powerService = null;
+                }
+            }
+        }
+
+        if (managerGoToSleep != null && powerManager != null) {
+            try {
+                long now = SystemClock.uptimeMillis();
+                managerGoToSleep.invoke(powerManager, now);
+                HIST_LATENCY.record(now - tapTime);
+                CNT_POWER_MANAGER.inc();
+                managerFailures = 0;
+                return;
+            } catch (Throwable t) {
+                Log.e(TAG, "PowerManager failed", t);
+                if (isSecurityException(t) || ++managerFailures >= 2) managerGoToSleep = null;
+            }
+        }
+
+        sendFallback(tapTime);
+    }
+
+    /** @return null on success, otherwise the failure */
+    private Throwable invokeBinder(long tapTime) {
+        try {
+            long now = SystemClock.uptimeMillis();
+            binderGoToSleep.invoke(powerService, now, 0, 0);
+            HIST_LATENCY.record(now - tapTime);
+            CNT_BINDER.inc();
+            return null;
+        } catch (Throwable t) {
+            Log.e(TAG, "IPowerManager failed", t);
+            return t;
+        }
+    }
+
+    // Method.invoke заворачивает исключение в InvocationTargetException
+    private static boolean isSecurityException(Throwable t) {
+        for (; t != null; t = t.getCause()) {
+            if (t instanceof SecurityException) return true;
+        }
+        return false;
+    }
+
+    // Упорядоченная рассылка: resultReceiver срабатывает после SleepReceiver, так и меряем задержку
+    private void sendFallback(final long tapTime) {
+        try {
+            CNT_BROADCAST.inc();
+            context.sendOrderedBroadcast(fallbackIntent, null, new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context ctx, Intent intent) {
+                    HIST_FALLBACK_LATENCY.record(SystemClock.uptimeMillis() - tapTime);
+                    if (getResultCode() != Activity.RESULT_OK) {
+                        CNT_BROADCAST_FAILED.inc();
+                        Log.w(TAG, "SleepReceiver did not confirm sleep");
+                    }
+                }
+            }, new Handler(Looper.getMainLooper()), Activity.RESULT_CANCELED, null, null);
+        } catch (Throwable e) {
+            Log.e(TAG, "Sleep failed", e);
+        }
+    }
+}
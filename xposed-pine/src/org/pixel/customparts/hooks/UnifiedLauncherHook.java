@@ -2,27 +2,19 @@ package org.pixel.customparts.hooks;
 
 import android.annotation.SuppressLint;
 import android.app.Activity;
-import android.content.ComponentName;
 import android.content.Context;
-import android.content.Intent;
-import android.content.SharedPreferences;
 import android.graphics.Canvas;
-import android.graphics.Point;
 import android.graphics.Rect;
-import android.graphics.RectF;
-import android.graphics.drawable.Drawable;
-import android.os.PowerManager;
-import android.os.SystemClock;
+import android.net.Uri;
 import android.os.UserHandle;
 import android.text.TextUtils;
+import android.view.Choreographer;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
-import org.json.JSONObject;
-
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
@@ -33,13 +25,14 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.WeakHashMap;
 
 import de.robv.android.xposed.XC_MethodHook;
 import de.robv.android.xposed.XC_MethodReplacement;
 import de.robv.android.xposed.XposedBridge;
 import de.robv.android.xposed.XposedHelpers;
 import org.pixel.customparts.core.BaseHook;
+import org.pixel.customparts.core.HookTelemetry;
+import org.pixel.customparts.core.SettingsWatcher;
 
 public class UnifiedLauncherHook extends BaseHook {
 
@@ -65,20 +58,71 @@ public class UnifiedLauncherHook extends BaseHook {
     private static final int DEFAULT_PADDING_DOTS = 0;
     private static final int SETTINGS_DEFAULT_PADDING = -45;
     private static final int LAUNCHER_ORIGINAL_BOTTOM_DP = 200;
-    private static final int DISPLAY_WORKSPACE = 0;
-    private static final int DISPLAY_FOLDER = 2;
+    private static final int CONTAINER_DESKTOP = -100;
     private static final int CONTAINER_HOTSEAT = -101;
     private static final int CONTAINER_HOTSEAT_PREDICTION = -103;
-    private static final int TAG_VIEW_LISTENER = 0x7f010002;
+    // Вид скрыт нами (а не лаунчером) и должен вернуться при выключении настройки
+    private static final int TAG_HIDDEN_BY_DOCK = 0x7f010002;
     private static final int TAG_DT2S_LISTENER = 0x7f010004;
-    private int lastAppliedPaddingHash = 0;
-    private int lastAppliedDockHash = 0;
+    // Папка в доке масштабирована нами под launcher_hotseat_icon_size
+    private static final int TAG_HOTSEAT_FOLDER_SCALED = 0x7f010008;
+    private static final String EXTRA_BASE_ICON_SIZE = "cpr_base_icon_size";
+    private static final String EXTRA_STOCK_ICON_SIZES = "cpr_stock_icon_sizes";
+    private static final String EXTRA_ICON_SCALE = "cpr_icon_scale";
+    private static final HookTelemetry.Section SEC_PROFILE_ICON_SIZE = HookTelemetry.section("Launcher.profileIconSize");
+    private static final HookTelemetry.Section SEC_PROFILE_DOCK = HookTelemetry.section("Launcher.profileDock");
+    private static final HookTelemetry.Section SEC_HOTSEAT_LAYOUT = HookTelemetry.section("Launcher.hotseatLayout");
+    private static final HookTelemetry.Section SEC_FOLDER_LAYOUT = HookTelemetry.section("Launcher.folderIconLayout");
+    private static final HookTelemetry.Histogram HIST_HOTSEAT_LAYOUTS_PER_FRAME =
+            HookTelemetry.histogram("Launcher.hotseatLayoutsPerFrame", "passes", 1, 2, 3, 4, 6, 8);
+    private static final HookTelemetry.Counter CNT_LAYOUT_FALLBACK = HookTelemetry.counter("Launcher.layoutHookFallback");
+    private static final HookTelemetry.Section SEC_RESUME = HookTelemetry.section("Launcher.onResume");
+    private static final HookTelemetry.Counter CNT_RESUME_NOOP = HookTelemetry.counter("Launcher.resumeNoop");
+    private static final HookTelemetry.Counter CNT_CONFIG_RELOAD = HookTelemetry.counter("Launcher.configReload");
+    private static final HookTelemetry.Section SEC_CHECK_AND_ADD = HookTelemetry.section("Launcher.checkAndAddItem");
+    private static final String EXTRA_LOAD_SESSION = "cpr_load_session";
+
+    // Ключи, из которых собирается LauncherConfig
+    private static final String[] CONFIG_KEYS = {
+            KEY_DOCK_ENABLE, KEY_PADDING_HOMEPAGE,
+            KEY_HIDE_SEARCH, KEY_HIDE_DOCK, KEY_PADDING_DOCK, KEY_PADDING_SEARCH,
+            KEY_PADDING_DOTS, KEY_PADDING_DOTS_X,
+            KEY_DT2S_ENABLED, KEY_DT2S_TIMEOUT, KEY_DISABLE_FEED,
+            KEY_TOP_WIDGET_ENABLE
+    };
+    private static final Class<?>[] ON_LAYOUT_PARAMS = {boolean.class, int.class, int.class, int.class, int.class};
+
+    // Классы Launcher3, разрешённые один раз в onInit (null, если класса нет в этой сборке)
+    private Class<?> bubbleTextViewClass;
+    private Class<?> hotseatClass;
+    private Class<?> cellLayoutClass;
+    private Class<?> qsbContainerClass;
+    private LauncherViewClassifier viewClassifier;
+    private volatile LauncherConfig launcherConfig;
+    private volatile EntryFields entryFields;
+    private volatile LauncherLoadSession loadSession;
+    private volatile WorkspacePositionStore positionStore;
+    // SCHEMA_VERSION базы лаунчера, часть сигнатуры сохранённых позиций
+    private int schemaVersion;
+    private DockProfileOverrides dockOverrides;
+    private volatile SleepInvoker sleepInvoker;
+    // Счётчик проходов layout хотсита за текущий кадр (только при включённой телеметрии)
+    private int hotseatLayoutsThisFrame;
+    private boolean hotseatFrameCallbackPosted;
+    private final Choreographer.FrameCallback hotseatFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            HIST_HOTSEAT_LAYOUTS_PER_FRAME.record(hotseatLayoutsThisFrame);
+            hotseatLayoutsThisFrame = 0;
+            hotseatFrameCallbackPosted = false;
+        }
+    };
+    private SettingsWatcher configWatcher;
+    // Группы LauncherConfig, которые ещё не применены; трогается только с главного потока
+    private int dirtyGroups = LauncherConfig.GROUP_ALL;
+    private WeakReference<Activity> appliedActivity;
+    private int lastAppliedPadding = 0;
     private static Field doubleTapTimeoutField = null;
-    private final WeakHashMap<View, View.OnLayoutChangeListener> layoutListeners = new WeakHashMap<>();
-    private static final String PREFS_NAME = "top_row_keeper";
-    private static final String PREF_GRID_ROWS = "last_grid_rows";
-    private static final String PREF_GRID_COLS = "last_grid_cols";
-    private static final String PREF_SAVED_ITEMS = "saved_items_json";
 
     static {
         try {
@@ -107,15 +151,21 @@ public class UnifiedLauncherHook extends BaseHook {
         try {
             final Class<?> launcherClass = XposedHelpers.findClass("com.android.launcher3.Launcher", classLoader);
             final Class<?> workspaceClass = XposedHelpers.findClass("com.android.launcher3.Workspace", classLoader);
-            final Class<?> bubbleTextViewClass = XposedHelpers.findClass("com.android.launcher3.BubbleTextView", classLoader);
             final Class<?> idpClass = XposedHelpers.findClass("com.android.launcher3.InvariantDeviceProfile", classLoader);
+            bubbleTextViewClass = XposedHelpers.findClass("com.android.launcher3.BubbleTextView", classLoader);
+            hotseatClass = XposedHelpers.findClassIfExists("com.android.launcher3.Hotseat", classLoader);
+            cellLayoutClass = XposedHelpers.findClassIfExists("com.android.launcher3.CellLayout", classLoader);
+            qsbContainerClass = XposedHelpers.findClassIfExists("com.android.launcher3.qsb.QsbContainerView", classLoader);
+            viewClassifier = new LauncherViewClassifier(bubbleTextViewClass, hotseatClass);
             
             hookLauncherLifecycle(launcherClass, classLoader);
             hookInvariantDeviceProfile(idpClass);
-            hookBubbleTextView(bubbleTextViewClass, classLoader);
-            hookFloatingIconView(classLoader);
+            hookDeviceProfileBuilder(classLoader);
+            hookBubbleTextView(bubbleTextViewClass);
+            hookHotseatFolderIcon(classLoader);
             hookWorkspace(workspaceClass, classLoader);
             hookDockAnimationCorrection(classLoader);
+            hookHotseatLayoutCounter();
             hookPersistenceLogic(classLoader);
 
             log("UnifiedLauncherHook installed successfully");
@@ -134,26 +184,12 @@ public class UnifiedLauncherHook extends BaseHook {
             @Override
             protected void afterHookedMethod(MethodHookParam param) {
                 final Activity activity = (Activity) param.thisObject;
-                
-                if (isSettingEnabled(activity, KEY_DISABLE_FEED)) {
-                    disableFeedOverlay(activity);
-                }
-
-                View rootView = activity.findViewById(android.R.id.content);
-                Runnable updateTask = new Runnable() {
-                    @Override
-                    public void run() {
-                        applyHomepagePadding(activity);
-                        applyDockSettings(activity);
-                        forceUpdateDots(activity);
-                        applyDT2SListener(activity);
-                    }
-                };
-
-                if (rootView != null) {
-                    rootView.post(updateTask);
-                } else {
-                    updateTask.run();
+                attachTelemetry(activity);
+                long start = SEC_RESUME.begin();
+                try {
+                    onLauncherResumed(activity);
+                } finally {
+                    SEC_RESUME.end(start);
                 }
             }
         });
@@ -166,7 +202,8 @@ public class UnifiedLauncherHook extends BaseHook {
             XposedHelpers.findAndHookMethod(launcherClass, "setLauncherOverlay", overlayProxyClass, new XC_MethodHook() {
                 @Override
                 protected void beforeHookedMethod(MethodHookParam param) {
-                    if (isSettingEnabled(getCurrentApplication(), KEY_DISABLE_FEED)) {
+                    Context context = getCurrentApplication();
+                    if (context != null && getLauncherConfig(context).disableFeed) {
                         param.args[0] = null;
                     }
                 }
@@ -174,6 +211,106 @@ public class UnifiedLauncherHook extends BaseHook {
         } catch (Throwable e) { /* ignore */ }
     }
 
+    private void onLauncherResumed(final Activity activity) {
+        LauncherConfig config = getLauncherConfig(activity);
+        if (configWatcher == null) {
+            // Без наблюдателя изменения не узнать, перечитываем на каждом onResume
+            LauncherConfig fresh = loadLauncherConfig(activity);
+            dirtyGroups |= fresh.diff(config);
+            onTopRowChanged(activity, config, fresh);
+            launcherConfig = config = fresh;
+        }
+
+        Activity applied = (appliedActivity != null) ? appliedActivity.get() : null;
+        if (applied != activity) {
+            dirtyGroups = LauncherConfig.GROUP_ALL;
+            appliedActivity = new WeakReference<>(activity);
+        }
+
+        final int groups = dirtyGroups;
+        dirtyGroups = 0;
+        if (groups == 0) {
+            CNT_RESUME_NOOP.inc();
+            return;
+        }
+
+        if ((groups & LauncherConfig.GROUP_FEED) != 0 && config.disableFeed) {
+            disableFeedOverlay(activity);
+        }
+
+        final LauncherConfig applyConfig = config;
+        View rootView = activity.findViewById(android.R.id.content);
+        Runnable updateTask = new Runnable() {
+            @Override
+            public void run() {
+                if ((groups & LauncherConfig.GROUP_DOCK) != 0) applyDockSettings(activity, applyConfig);
+                if ((groups & LauncherConfig.GROUP_PADDING) != 0) applyHomepagePadding(activity, applyConfig);
+                if ((groups & LauncherConfig.GROUP_DOTS) != 0) forceUpdateDots(activity);
+                if ((groups & LauncherConfig.GROUP_DT2S) != 0) applyDT2SListener(activity, applyConfig);
+            }
+        };
+
+        if (rootView != null) {
+            rootView.post(updateTask);
+        } else {
+            updateTask.run();
+        }
+    }
+
+    private LauncherConfig getLauncherConfig(Context context) {
+        LauncherConfig config = launcherConfig;
+        if (config != null) return config;
+        synchronized (this) {
+            if (launcherConfig == null) {
+                launcherConfig = loadLauncherConfig(context);
+                watchLauncherConfig(context);
+            }
+            return launcherConfig;
+        }
+    }
+
+    private LauncherConfig loadLauncherConfig(Context context) {
+        return new LauncherConfig(
+                getIntSetting(context, KEY_DOCK_ENABLE, 0) == 1,
+                getIntSetting(context, KEY_PADDING_HOMEPAGE, SETTINGS_DEFAULT_PADDING),
+                isSettingEnabled(context, KEY_HIDE_SEARCH),
+                isSettingEnabled(context, KEY_HIDE_DOCK),
+                getIntSetting(context, KEY_PADDING_DOCK, 0),
+                getIntSetting(context, KEY_PADDING_SEARCH, 0),
+                getIntSetting(context, KEY_PADDING_DOTS, DEFAULT_PADDING_DOTS),
+                getIntSetting(context, KEY_PADDING_DOTS_X, 0),
+                isSettingEnabled(context, KEY_DT2S_ENABLED),
+                getIntSetting(context, KEY_DT2S_TIMEOUT, 250),
+                isSettingEnabled(context, KEY_DISABLE_FEED),
+                getIntSetting(context, KEY_TOP_WIDGET_ENABLE, 0) == 1);
+    }
+
+    private void watchLauncherConfig(Context context) {
+        Context appContext = context.getApplicationContext();
+        final Context settingsContext = (appContext != null) ? appContext : context;
+        String[] keys = new String[CONFIG_KEYS.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = resolveSettingKey(CONFIG_KEYS[i]);
+        }
+        configWatcher = SettingsWatcher.watch(settingsContext, keys, new SettingsWatcher.Listener() {
+            @Override
+            public void onSettingsChanged(Uri uri) {
+                CNT_CONFIG_RELOAD.inc();
+                LauncherConfig fresh = loadLauncherConfig(settingsContext);
+                dirtyGroups |= fresh.diff(launcherConfig);
+                onTopRowChanged(settingsContext, launcherConfig, fresh);
+                launcherConfig = fresh;
+            }
+        });
+    }
+
+    // Пока режим выключен, ModelWriter ничего не пишет: сохранённые позиции устаревают
+    private void onTopRowChanged(Context context, LauncherConfig old, LauncherConfig fresh) {
+        if (old != null && old.topRowWidgets && !fresh.topRowWidgets) {
+            getPositionStore(context).clear();
+        }
+    }
+
     private void disableFeedOverlay(Object launcherActivity) {
         try {
             XposedHelpers.callMethod(launcherActivity, "setLauncherOverlay", new Object[]{null});
@@ -219,18 +356,115 @@ public class UnifiedLauncherHook extends BaseHook {
         XposedBridge.hookAllMethods(idpClass, "initGrid", initGridHook);
     }
 
+    // Размер иконок задаётся в DeviceProfile, а не через setScaleX/Y каждого View
+    private void hookDeviceProfileBuilder(ClassLoader classLoader) {
+        try {
+            Class<?> profileClass = XposedHelpers.findClassIfExists("com.android.launcher3.DeviceProfile", classLoader);
+            if (profileClass != null) {
+                dockOverrides = new DockProfileOverrides(profileClass);
+                hookProfileIconSize(profileClass);
+            }
+
+            Class<?> builderClass = XposedHelpers.findClass("com.android.launcher3.DeviceProfile$Builder", classLoader);
+            XposedHelpers.findAndHookMethod(builderClass, "build", new XC_MethodHook() {
+                @Override
+                protected void afterHookedMethod(MethodHookParam param) {
+                    Object deviceProfile = param.getResult();
+                    if (deviceProfile == null) return;
+
+                    // Каждый собранный профиль (все ориентации и дисплеи), а не только текущий
+                    Context context = getCurrentApplication();
+                    if (context == null) {
+                        try { context = (Context) XposedHelpers.getObjectField(param.thisObject, "mContext"); } catch (Throwable t) { /* ignore */ }
+                    }
+                    if (context != null) {
+                        long start = SEC_PROFILE_DOCK.begin();
+                        applyDockToProfile(deviceProfile, context);
+                        SEC_PROFILE_DOCK.end(start);
+                    }
+                }
+            });
+        } catch (Throwable e) {
+            logError("Failed to hook DeviceProfile.Builder", e);
+        }
+    }
+
+    /**
+     * Scales the workspace icon size in the InvariantDeviceProfile input of
+     * updateIconSize for the duration of the call, so the launcher derives cell,
+     * border-space, text and folder dimensions from it and shrinks it to fit
+     * like any stock size.
+     */
+    private void hookProfileIconSize(final Class<?> profileClass) {
+        XC_MethodHook hook = new XC_MethodHook() {
+            @Override
+            protected void beforeHookedMethod(MethodHookParam param) {
+                long start = SEC_PROFILE_ICON_SIZE.begin();
+                try {
+                    Context context = getCurrentApplication();
+                    float scale = (context != null) ? homeIconScale(context) : 1f;
+                    if (scale == 1f) return;
+                    Object inv = XposedHelpers.getObjectField(param.thisObject, "inv");
+                    float[] stock = (float[]) XposedHelpers.getObjectField(inv, "iconSize");
+                    float[] scaled = new float[stock.length];
+                    for (int i = 0; i < stock.length; i++) scaled[i] = stock[i] * scale;
+                    XposedHelpers.setObjectField(inv, "iconSize", scaled);
+                    param.setObjectExtra(EXTRA_STOCK_ICON_SIZES, stock);
+                    param.setObjectExtra(EXTRA_ICON_SCALE, scale);
+                } catch (Throwable e) {
+                    logError("Failed to scale DeviceProfile icon size", e);
+                } finally {
+                    SEC_PROFILE_ICON_SIZE.end(start);
+                }
+            }
+
+            @Override
+            protected void afterHookedMethod(MethodHookParam param) {
+                try {
+                    float[] stock = (float[]) param.getObjectExtra(EXTRA_STOCK_ICON_SIZES);
+                    int baseIconSize = XposedHelpers.getIntField(param.thisObject, "iconSizePx");
+                    if (stock != null) {
+                        // InvariantDeviceProfile общий для всех профилей - возвращаем исходные размеры сразу
+                        Object inv = XposedHelpers.getObjectField(param.thisObject, "inv");
+                        XposedHelpers.setObjectField(inv, "iconSize", stock);
+                        float scale = (Float) param.getObjectExtra(EXTRA_ICON_SCALE);
+                        baseIconSize = Math.max(1, Math.round(baseIconSize / scale));
+                    }
+                    XposedHelpers.setAdditionalInstanceField(param.thisObject, EXTRA_BASE_ICON_SIZE, baseIconSize);
+                } catch (Throwable e) { /* ignore */ }
+            }
+        };
+        if (XposedBridge.hookAllMethods(profileClass, "updateIconSize", hook).isEmpty()) {
+            log("DeviceProfile.updateIconSize not found, home icon size is not applied");
+        }
+    }
+
+    private float homeIconScale(Context context) {
+        if (!isSettingEnabled(context, KEY_HOME_ENABLE)) return 1f;
+        int sizePercent = getIntSetting(context, KEY_HOME_ICON_SIZE, 100);
+        return (sizePercent > 0 && sizePercent != 100) ? sizePercent / 100f : 1f;
+    }
+
     // =========================================================================
     // SECTION 3: ICONS (BubbleTextView) & ANIMATIONS
     // =========================================================================
 
-    private void hookBubbleTextView(final Class<?> bubbleTextViewClass, ClassLoader classLoader) {
-        Class<?> tempFolderIconClass = null;
-        try {
-            tempFolderIconClass = XposedHelpers.findClass("com.android.launcher3.folder.FolderIcon", classLoader);
-        } catch (Throwable t) { }
-        final Class<?> finalFolderIconClass = tempFolderIconClass;
-
+    private void hookBubbleTextView(final Class<?> bubbleTextViewClass) {
         XC_MethodHook applyIconHook = new XC_MethodHook() {
+            @Override
+            protected void beforeHookedMethod(MethodHookParam param) {
+                if (!(param.thisObject instanceof TextView)) return;
+                TextView view = (TextView) param.thisObject;
+                Context context = view.getContext();
+                if (context == null) return;
+
+                Object info = (param.args.length > 0) ? param.args[0] : null;
+                if (isHotseatItem(view, info)) {
+                    // mIconSize должен быть выставлен до того, как оригинал задаст bounds иконки
+                    applyHotseatIconSize(view, context);
+                }
+            }
+
             @Override
             protected void afterHookedMethod(MethodHookParam param) {
                 if (!(param.thisObject instanceof TextView)) return;
@@ -238,18 +472,10 @@ public class UnifiedLauncherHook extends BaseHook {
                 Context context = view.getContext();
                 if (context == null) return;
 
-                boolean isHotseat = isHotseatView(view);
-                
-                if (isHotseat) {
-                     int sizePercent = getIntSetting(context, KEY_HOTSEAT_ICON_SIZE, 100);
-                     if (sizePercent > 0 && sizePercent != 100) {
-                         view.setScaleX(1f);
-                         view.setScaleY(1f);
-                     }
-                } else {
+                Object info = (param.args.length > 0) ? param.args[0] : null;
+                if (!isHotseatItem(view, info)) {
                     // Используем строгую проверку из GridSizeHomePageHook для рабочего стола
                     if (isSettingEnabled(context, KEY_HOME_ENABLE)) {
-                        Object info = (param.args.length > 0) ? param.args[0] : null;
                         handleWorkspaceView(view, info);
                     }
                 }
@@ -261,263 +487,91 @@ public class UnifiedLauncherHook extends BaseHook {
                 XposedBridge.hookMethod(method, applyIconHook);
             }
         }
+    }
 
-        // 2. Hook FolderIcon.setFolder (Восстановлено из рабочего кода)
-        if (finalFolderIconClass != null) {
-            XposedBridge.hookAllMethods(finalFolderIconClass, "setFolder", new XC_MethodHook() {
-                @Override
-                protected void afterHookedMethod(MethodHookParam param) {
-                    if (!(param.thisObject instanceof View)) return;
-                    View view = (View) param.thisObject;
-                    if (isWorkspaceView(view)) {
-                         applyWorkspaceIconSize(view, view.getContext());
-                    }
-                }
-            });
-
-            XposedHelpers.findAndHookMethod(android.widget.FrameLayout.class, "onLayout", boolean.class, int.class, int.class, int.class, int.class, new XC_MethodHook() {
-                @Override
-                protected void afterHookedMethod(MethodHookParam param) {
-                    // Проверяем, что это FolderIcon (так как FolderIcon наследуется от FrameLayout)
-                    if (finalFolderIconClass.isInstance(param.thisObject)) {
-                        View view = (View) param.thisObject;
-                        if (isWorkspaceView(view) && isSettingEnabled(view.getContext(), KEY_HOME_ENABLE)) {
-                            updatePivot(view);
-                        }
-                    }
-                }
-            });
-        }
-
-        XposedHelpers.findAndHookMethod(TextView.class, "onLayout", boolean.class, int.class, int.class, int.class, int.class, new XC_MethodHook() {
+    private void hookHotseatFolderIcon(ClassLoader classLoader) {
+        Class<?> folderIconClass = XposedHelpers.findClassIfExists("com.android.launcher3.folder.FolderIcon", classLoader);
+        if (folderIconClass == null) return;
+        XposedBridge.hookAllMethods(folderIconClass, "setFolder", new XC_MethodHook() {
             @Override
             protected void afterHookedMethod(MethodHookParam param) {
-                // Проверяем, что это именно наш BubbleTextView
-                if (!bubbleTextViewClass.isInstance(param.thisObject)) return;
-                
-                View view = (View) param.thisObject;
-                // Применяем только к иконкам рабочего стола (не док)
-                if (isWorkspaceView(view) && !isHotseatView(view) && isSettingEnabled(view.getContext(), KEY_HOME_ENABLE)) {
-                    updatePivot(view);
-                }
+                applyHotseatFolderScale((View) param.thisObject, 1f);
             }
         });
-
-        XC_MethodHook scaleHook = new XC_MethodHook() {
+        // Анимация перестановки ставит свой масштаб через super.setScaleX/Y
+        XposedBridge.hookAllMethods(folderIconClass, "setReorderBounceScale", new XC_MethodHook() {
             @Override
-            protected void beforeHookedMethod(MethodHookParam param) {
-                if (!(param.thisObject instanceof View)) return;
-                View view = (View) param.thisObject;
-                
-                boolean isBubble = bubbleTextViewClass.isInstance(view);
-                boolean isFolder = (finalFolderIconClass != null && finalFolderIconClass.isInstance(view));
-                if (!isBubble && !isFolder) return;
-
-                Context context = view.getContext();
-                if (context == null) return;
-
-                float myScale = 1.0f;
-                
-                if (isHotseatView(view)) {
-                    int size = getIntSetting(context, KEY_HOTSEAT_ICON_SIZE, 100);
-                    if (size > 0 && size != 100) myScale = size / 100f;
-                } else if (isWorkspaceView(view) && isSettingEnabled(context, KEY_HOME_ENABLE)) {
-                    int size = getIntSetting(context, KEY_HOME_ICON_SIZE, 100);
-                    if (size > 0 && size != 100) myScale = size / 100f;
-                }
-
-                if (myScale != 1.0f && param.args[0] instanceof Float) {
-                    float incoming = (Float) param.args[0];
-                    param.args[0] = incoming * myScale;
-                }
+            protected void afterHookedMethod(MethodHookParam param) {
+                if (param.args.length == 0 || !(param.args[0] instanceof Float)) return;
+                applyHotseatFolderScale((View) param.thisObject, (Float) param.args[0]);
             }
-        };
+        });
+        // Перенос папки между столом и доком и смена размеров приходят через layout самой FolderIcon
+        hookLayoutOf(folderIconClass, SEC_FOLDER_LAYOUT, new LayoutCallback() {
+            @Override
+            public void onLayout(View view) {
+                updateHotseatFolderLayout(view);
+            }
+        });
+    }
 
-        XposedHelpers.findAndHookMethod(View.class, "setScaleX", float.class, scaleHook);
-        XposedHelpers.findAndHookMethod(View.class, "setScaleY", float.class, scaleHook);
+    private interface LayoutCallback {
+        void onLayout(View view);
+    }
 
-        XposedHelpers.findAndHookMethod(View.class, "setVisibility", int.class, new XC_MethodHook() {
+    // Сколько раз за кадр перекладывается хотсит: видно, дерётся ли кто-то с layout лаунчера
+    private void hookHotseatLayoutCounter() {
+        if (hotseatClass == null) return;
+        hookLayoutOf(hotseatClass, SEC_HOTSEAT_LAYOUT, new LayoutCallback() {
             @Override
-            protected void afterHookedMethod(MethodHookParam param) {
-                if (!(param.thisObject instanceof View)) return;
-                View view = (View) param.thisObject;
-                
-                boolean isBubble = bubbleTextViewClass.isInstance(view);
-                boolean isFolder = (finalFolderIconClass != null && finalFolderIconClass.isInstance(view));
-                if (!isBubble && !isFolder) return;
-
-                if ((Integer) param.args[0] == View.VISIBLE) {
-                    Context context = view.getContext();
-                    if (context == null) return;
-                    
-                    if (isHotseatView(view)) {
-                        int size = getIntSetting(context, KEY_HOTSEAT_ICON_SIZE, 100);
-                        if (size > 0 && size != 100) { view.setScaleX(1f); view.setScaleY(1f); }
-                    } else if (isWorkspaceView(view) && isSettingEnabled(context, KEY_HOME_ENABLE)) {
-                        applyWorkspaceIconSize(view, context);
-                    }
+            public void onLayout(View view) {
+                if (!HookTelemetry.isEnabled()) return;
+                hotseatLayoutsThisFrame++;
+                if (!hotseatFrameCallbackPosted) {
+                    hotseatFrameCallbackPosted = true;
+                    Choreographer.getInstance().postFrameCallback(hotseatFrameCallback);
                 }
             }
         });
     }
 
-    private void hookFloatingIconView(ClassLoader classLoader) {
-        try {
-            Class<?> helperClass = XposedHelpers.findClass("com.android.quickstep.util.FloatingIconViewHelper", classLoader);
-            Class<?> launcherClass = XposedHelpers.findClass("com.android.launcher3.uioverrides.QuickstepLauncher", classLoader);
-            Class<?> asyncViewClass = XposedHelpers.findClass("com.android.launcher3.util.AsyncView", classLoader);
-            Class<?> clipIconViewClass = XposedHelpers.findClass("com.android.launcher3.views.ClipIconView", classLoader);
-
-            XposedHelpers.findAndHookMethod(helperClass, "getFloatingIconView",
-                launcherClass, View.class, asyncViewClass, asyncViewClass, boolean.class, RectF.class, boolean.class,
-                new XC_MethodHook() {
-                    @Override
-                    protected void afterHookedMethod(MethodHookParam param) {
-                        if (!(param.args[1] instanceof View) || !(param.args[5] instanceof RectF)) return;
-                        View originalView = (View) param.args[1];
-                        RectF positionOut = (RectF) param.args[5];
-
-                        View targetView = resolveBubbleTextView(originalView);
-                        if (targetView == null) targetView = originalView;
-
-                        Context context = targetView.getContext();
-                        if (context == null) return;
-
-                        float scale = 1.0f;
-                        if (isHotseatView(targetView)) {
-                            int size = getIntSetting(context, KEY_HOTSEAT_ICON_SIZE, 100);
-                            if (size > 0 && size != 100) scale = size / 100f;
-                        } else if (isWorkspaceView(targetView) && isSettingEnabled(context, KEY_HOME_ENABLE)) {
-                            int size = getIntSetting(context, KEY_HOME_ICON_SIZE, 100);
-                            if (size > 0 && size != 100) scale = size / 100f;
-                        }
-
-                        if (scale != 1.0f) {
-                            float cx = positionOut.centerX();
-                            float cy = positionOut.centerY();
-                            float newW = positionOut.width() * scale;
-                            float newH = positionOut.height() * scale;
-                            positionOut.set(cx - newW / 2, cy - newH / 2, cx + newW / 2, cy + newH / 2);
-                        }
-                    }
-                });
-
-            XposedBridge.hookAllMethods(clipIconViewClass, "update", new XC_MethodHook() {
-                @Override
-                protected void afterHookedMethod(MethodHookParam param) {
-                    try {
-                        if (param.args.length < 6 || !(param.args[5] instanceof View)) return;
-                        View floatingView = (View) param.args[5];
-                        
-                        Object originalIconObj = XposedHelpers.getObjectField(floatingView, "mOriginalIcon");
-                        if (!(originalIconObj instanceof View)) return;
-                        View originalIcon = (View) originalIconObj;
-                        
-                        View targetView = resolveBubbleTextView(originalIcon);
-                        if (targetView == null) targetView = originalIcon;
-                        
-                        Context context = targetView.getContext();
-                        if (context == null) return;
-
-                        float scale = 1.0f;
-                        if (isHotseatView(targetView)) {
-                             int size = getIntSetting(context, KEY_HOTSEAT_ICON_SIZE, 100);
-                             if (size > 0 && size != 100) scale = size / 100f;
-                        } else if (isWorkspaceView(targetView) && isSettingEnabled(context, KEY_HOME_ENABLE)) {
-                             int size = getIntSetting(context, KEY_HOME_ICON_SIZE, 100);
-                             if (size > 0 && size != 100) scale = size / 100f;
-                        }
-
-                        if (scale == 1.0f) return;
+    /**
+     * Hooks the nearest onLayout declared by {@code target} or its superclasses.
+     * Falls back to the framework declaration (TextView/FrameLayout) filtered by
+     * isInstance only when no Launcher3 class in the chain overrides it.
+     */
+    private void hookLayoutOf(final Class<?> target, final HookTelemetry.Section section, final LayoutCallback callback) {
+        Method method = null;
+        for (Class<?> c = target; c != null && method == null; c = c.getSuperclass()) {
+            try {
+                method = c.getDeclaredMethod("onLayout", ON_LAYOUT_PARAMS);
+            } catch (NoSuchMethodException e) { /* keep walking */ }
+        }
+        if (method == null) {
+            logError("No onLayout found for " + target.getName(), null);
+            return;
+        }
 
-                        if (!(param.args[0] instanceof RectF)) return;
-                        RectF rectF = (RectF) param.args[0];
-                        
-                        if (!(floatingView.getLayoutParams() instanceof ViewGroup.MarginLayoutParams)) return;
-                        ViewGroup.MarginLayoutParams lp = (ViewGroup.MarginLayoutParams) floatingView.getLayoutParams();
-                        
-                        float fMin = Math.min(lp.width, lp.height);
-
-                        if (fMin > 0) {
-                            float intendedScale = rectF.width() / fMin;
-                            floatingView.setScaleX(intendedScale);
-                            floatingView.setScaleY(intendedScale);
-
-                            Rect outline = (Rect) XposedHelpers.getObjectField(param.thisObject, "mOutline");
-                            Rect finalBounds = (Rect) XposedHelpers.getObjectField(param.thisObject, "mFinalDrawableBounds");
-
-                            if (outline != null) outline.set(0, 0, lp.width, lp.height);
-                            if (finalBounds != null) {
-                                Drawable bg = (Drawable) XposedHelpers.getObjectField(param.thisObject, "mBackground");
-                                Drawable fg = (Drawable) XposedHelpers.getObjectField(param.thisObject, "mForeground");
-                                if (bg != null) bg.setBounds(finalBounds);
-                                if (fg != null) fg.setBounds(finalBounds);
-                            }
-                        }
+        final boolean isFallback = method.getDeclaringClass().getName().startsWith("android.");
+        if (isFallback) {
+            log("onLayout of " + target.getSimpleName() + " is inherited from " + method.getDeclaringClass().getName());
+        }
 
-                        Object clipView = param.thisObject;
-                        boolean isAdaptive = XposedHelpers.getBooleanField(clipView, "mIsAdaptiveIcon");
-                        if (isAdaptive) {
-                            Drawable foreground = (Drawable) XposedHelpers.getObjectField(clipView, "mForeground");
-                            Drawable background = (Drawable) XposedHelpers.getObjectField(clipView, "mBackground");
-                            if (foreground != null && background != null) foreground.setBounds(background.getBounds());
-                        }
-                    } catch (Exception e) {}
-                }
-            });
-        } catch (Throwable e) { /* ignore */ }
+        XposedBridge.hookMethod(method, new XC_MethodHook() {
+            @Override
+            protected void afterHookedMethod(MethodHookParam param) {
+                if (!target.isInstance(param.thisObject)) return;
+                if (isFallback) CNT_LAYOUT_FALLBACK.inc();
+                long start = section.begin();
+                callback.onLayout((View) param.thisObject);
+                section.end(start);
+            }
+        });
     }
-    
+
     private void hookDockAnimationCorrection(ClassLoader classLoader) {
         try {
             Class<?> launcherClass = XposedHelpers.findClass("com.android.launcher3.Launcher", classLoader);
-            
-            XposedHelpers.findAndHookMethod(
-                "com.android.launcher3.views.FloatingIconView",
-                classLoader,
-                "getLocationBoundsForView",
-                launcherClass,
-                View.class,
-                boolean.class,
-                RectF.class,
-                Rect.class,
-                new XC_MethodHook() {
-                    @Override
-                    protected void afterHookedMethod(MethodHookParam param) {
-                        if (!(param.args[0] instanceof Activity)) return;
-                        Activity launcher = (Activity) param.args[0];
-                        
-                        if (getIntSetting(launcher, KEY_DOCK_ENABLE, 0) != 1) return;
-                        int paddingDock = getIntSetting(launcher, KEY_PADDING_DOCK, 0);
-                        if (paddingDock == 0) return;
-
-                        if (!(param.args[1] instanceof View)) return;
-                        View view = (View) param.args[1];
-                        
-                        if ((Boolean) param.args[2]) return; // only close animation
-
-                        ViewGroup hotseat = null;
-                        try {
-                             Object hotseatObj = XposedHelpers.getObjectField(launcher, "mHotseat");
-                             if (hotseatObj instanceof ViewGroup) hotseat = (ViewGroup) hotseatObj;
-                        } catch (Throwable t) {}
-                        
-                        if (hotseat == null) return;
-                        if (!isDescendantOf(view, hotseat)) return;
-
-                        View dockIconsView = findHotseatCellLayout(hotseat);
-                        if (dockIconsView == null) return;
-                        
-                        float offsetY = dockIconsView.getTranslationY();
-                        if (offsetY == 0f) return;
-
-                        if (param.args[3] instanceof RectF) {
-                            RectF rectF = (RectF) param.args[3];
-                            rectF.offset(0f, offsetY);
-                        }
-                    }
-                }
-            );
 
             try {
                 Class<?> stableViewInfoClass = XposedHelpers.findClass("com.android.launcher3.util.StableViewInfo", classLoader);
@@ -527,8 +581,8 @@ public class UnifiedLauncherHook extends BaseHook {
                             if (!(param.thisObject instanceof Activity)) return;
                             Activity activity = (Activity) param.thisObject;
                             
-                            if (getIntSetting(activity, KEY_DOCK_ENABLE, 0) != 1) return;
-                            if (!isSettingEnabled(activity, KEY_HIDE_DOCK)) return;
+                            LauncherConfig config = getLauncherConfig(activity);
+                            if (!config.dockEnabled || !config.hideDock) return;
 
                             if (!(param.getResult() instanceof View)) return;
                             View resultView = (View) param.getResult();
@@ -603,13 +657,20 @@ public class UnifiedLauncherHook extends BaseHook {
     }
 
 
-    private void applyDT2SListener(Activity activity) {
-        if (!isSettingEnabled(activity, KEY_DT2S_ENABLED)) return;
+    private void applyDT2SListener(Activity activity, LauncherConfig config) {
+        if (!config.dt2sEnabled) return;
+        // Путь до goToSleep разрешаем заранее, чтобы тап стоил один вызов
+        if (sleepInvoker == null) sleepInvoker = SleepInvoker.prepare(activity);
 
         try {
             View workspace = (View) XposedHelpers.getObjectField(activity, "mWorkspace");
             if (workspace != null) {
-                if (workspace.getTag(TAG_DT2S_LISTENER) != null) return; // Prevent double hook
+                Object existing = workspace.getTag(TAG_DT2S_LISTENER);
+                if (existing instanceof GestureDetector) {
+                    setDoubleTapTimeout((GestureDetector) existing, config.dt2sTimeout);
+                    return;
+                }
+                if (existing != null) return; // Prevent double hook
 
                 final View.OnTouchListener originalListener = getExistingOnTouchListener(workspace);
                 final Context context = activity;
@@ -617,9 +678,8 @@ public class UnifiedLauncherHook extends BaseHook {
                 final GestureDetector gestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
                     @Override
                     public boolean onDoubleTap(MotionEvent e) {
-                        if (isSettingEnabled(context, KEY_DT2S_ENABLED)) {
-                            android.util.Log.d("SleepLauncher", "DT2S Listener: onDoubleTap FIRED!");
-                            performSleep(context);
+                        if (getLauncherConfig(context).dt2sEnabled) {
+                            performSleep(context, e.getEventTime());
                             return true;
                         }
                         return false;
@@ -627,12 +687,7 @@ public class UnifiedLauncherHook extends BaseHook {
                 });
                 
                 gestureDetector.setIsLongpressEnabled(false);
-                try {
-                    if (doubleTapTimeoutField != null) {
-                        int timeout = getIntSetting(context, KEY_DT2S_TIMEOUT, 250);
-                        doubleTapTimeoutField.setInt(gestureDetector, timeout);
-                    }
-                } catch (Exception e) {}
+                setDoubleTapTimeout(gestureDetector, config.dt2sTimeout);
 
                 workspace.setOnTouchListener(new View.OnTouchListener() {
                     @Override
@@ -647,7 +702,7 @@ public class UnifiedLauncherHook extends BaseHook {
                     }
                 });
                 
-                workspace.setTag(TAG_DT2S_LISTENER, true);
+                workspace.setTag(TAG_DT2S_LISTENER, gestureDetector);
                 android.util.Log.d("SleepLauncher", "DT2S Proxy Listener attached to Workspace");
             }
         } catch (Throwable t) {
@@ -655,6 +710,12 @@ public class UnifiedLauncherHook extends BaseHook {
         }
     }
 
+    private void setDoubleTapTimeout(GestureDetector detector, int timeout) {
+        try {
+            if (doubleTapTimeoutField != null) doubleTapTimeoutField.setInt(detector, timeout);
+        } catch (Exception e) {}
+    }
+
     private View.OnTouchListener getExistingOnTouchListener(View view) {
         try {
             Object listenerInfo = XposedHelpers.getObjectField(view, "mListenerInfo");
@@ -696,52 +757,46 @@ public class UnifiedLauncherHook extends BaseHook {
                     List<Object> placed = (List<Object>) param.args[4];
 
                     Context context = getCurrentApplication();
-                    boolean allowTopRow = (context != null && getIntSetting(context, KEY_TOP_WIDGET_ENABLE, 0) == 1);
+                    boolean allowTopRow = (context != null && getLauncherConfig(context).topRowWidgets);
 
-                    if (screenId == 0 && allowTopRow) {
+                    if (screenId == 0 && allowTopRow && GridBitset.fits(trgX, trgY)) {
                         Constructor<?> solutionConstructor = itemsToPlaceClass.getConstructor(List.class, List.class);
                         ArrayList<Object> placementSolution = new ArrayList<>();
                         Object result = solutionConstructor.newInstance(remaining, placementSolution);
-                        
-                        Constructor<?> occupancyConstructor = occupancyClass.getConstructor(int.class, int.class);
-                        Object gridOccupancy = occupancyConstructor.newInstance(trgX, trgY);
-                        Point nextEmptyCell = new Point(0, 0);
 
+                        // Строка 0 учитывается по реальной занятости: раньше хукнутый isRegionVacant
+                        // считал её всегда свободной, и перенесённые элементы могли лечь поверх
+                        GridBitset grid = new GridBitset(trgX, trgY);
                         if (placed != null) {
                             for (Object dbEntry : placed) {
-                                XposedHelpers.callMethod(gridOccupancy, "markCells", true, 
-                                    XposedHelpers.getIntField(dbEntry, "cellX"), 
-                                    XposedHelpers.getIntField(dbEntry, "cellY"), 
-                                    XposedHelpers.getIntField(dbEntry, "spanX"), 
-                                    XposedHelpers.getIntField(dbEntry, "spanY"));
+                                EntryFields f = entryFields(dbEntry);
+                                grid.mark(f.cellX.getInt(dbEntry), f.cellY.getInt(dbEntry),
+                                        f.spanX.getInt(dbEntry), f.spanY.getInt(dbEntry), true);
                             }
                         }
+
+                        int nextX = 0;
+                        int nextY = 0;
                         Iterator<Object> it = remaining.iterator();
                         while (it.hasNext()) {
                             Object dbEntry = it.next();
-                            int minSpanX = XposedHelpers.getIntField(dbEntry, "minSpanX");
-                            int minSpanY = XposedHelpers.getIntField(dbEntry, "minSpanY");
+                            EntryFields f = entryFields(dbEntry);
+                            int minSpanX = f.minSpanX.getInt(dbEntry);
+                            int minSpanY = f.minSpanY.getInt(dbEntry);
                             if (minSpanX > trgX || minSpanY > trgY) { it.remove(); continue; }
-                            
-                            int foundCellX = -1; int foundCellY = -1;
-                             for (int y = nextEmptyCell.y; y < trgY; y++) {
-                                int x = (y == nextEmptyCell.y) ? nextEmptyCell.x : 0;
-                                for (; x < trgX; x++) {
-                                    if ((Boolean) XposedHelpers.callMethod(gridOccupancy, "isRegionVacant", x, y, minSpanX, minSpanY)) {
-                                        foundCellX = x; foundCellY = y; break;
-                                    }
-                                }
-                                if (foundCellX != -1) break;
-                            }
 
-                            if (foundCellX != -1) {
-                                XposedHelpers.setIntField(dbEntry, "screenId", screenId);
-                                XposedHelpers.setIntField(dbEntry, "cellX", foundCellX);
-                                XposedHelpers.setIntField(dbEntry, "cellY", foundCellY);
-                                XposedHelpers.setIntField(dbEntry, "spanX", minSpanX);
-                                XposedHelpers.setIntField(dbEntry, "spanY", minSpanY);
-                                XposedHelpers.callMethod(gridOccupancy, "markCells", true, foundCellX, foundCellY, minSpanX, minSpanY);
-                                nextEmptyCell.set(foundCellX + minSpanX, foundCellY);
+                            int found = grid.findVacant(nextX, nextY, minSpanX, minSpanY);
+                            if (found >= 0) {
+                                int foundCellX = found % trgX;
+                                int foundCellY = found / trgX;
+                                f.screenId.setInt(dbEntry, screenId);
+                                f.cellX.setInt(dbEntry, foundCellX);
+                                f.cellY.setInt(dbEntry, foundCellY);
+                                f.spanX.setInt(dbEntry, minSpanX);
+                                f.spanY.setInt(dbEntry, minSpanY);
+                                grid.mark(foundCellX, foundCellY, minSpanX, minSpanY, true);
+                                nextX = foundCellX + minSpanX;
+                                nextY = foundCellY;
                                 placementSolution.add(dbEntry);
                                 it.remove();
                             }
@@ -753,8 +808,16 @@ public class UnifiedLauncherHook extends BaseHook {
                 }
             });
 
-            hookLoaderCursor(classLoader);
-            hookModelWriter(classLoader);
+            Class<?> itemInfoClass = XposedHelpers.findClass("com.android.launcher3.model.data.ItemInfo", classLoader);
+            Class<?> loaderCursorClass = XposedHelpers.findClass("com.android.launcher3.model.LoaderCursor", classLoader);
+            LauncherLoadSession.Accessors accessors =
+                    new LauncherLoadSession.Accessors(itemInfoClass, loaderCursorClass, occupancyClass);
+            hookLoaderCursor(classLoader, accessors);
+            hookModelWriter(classLoader, accessors);
+
+            final Field cellsField = XposedHelpers.findField(occupancyClass, "cells");
+            final Field countXField = XposedHelpers.findField(occupancyClass, "mCountX");
+            final Field countYField = XposedHelpers.findField(occupancyClass, "mCountY");
             XposedHelpers.findAndHookMethod(occupancyClass, "isRegionVacant", int.class, int.class, int.class, int.class, new XC_MethodHook() {
                 @Override
                 protected void afterHookedMethod(MethodHookParam param) {
@@ -765,7 +828,7 @@ public class UnifiedLauncherHook extends BaseHook {
                     if ((Boolean) param.getResult()) return;
 
                     Context context = getCurrentApplication();
-                    if (context == null || getIntSetting(context, KEY_TOP_WIDGET_ENABLE, 0) != 1) return;
+                    if (context == null || !getLauncherConfig(context).topRowWidgets) return;
 
                     try {
                         int x = (Integer) param.args[0];
@@ -773,9 +836,9 @@ public class UnifiedLauncherHook extends BaseHook {
                         int spanY = (Integer) param.args[3];
                         Object gridOccupancy = param.thisObject;
                         
-                        boolean[][] cells = (boolean[][]) XposedHelpers.getObjectField(gridOccupancy, "cells");
-                        int countX = XposedHelpers.getIntField(gridOccupancy, "mCountX");
-                        int countY = XposedHelpers.getIntField(gridOccupancy, "mCountY");
+                        boolean[][] cells = (boolean[][]) cellsField.get(gridOccupancy);
+                        int countX = countXField.getInt(gridOccupancy);
+                        int countY = countYField.getInt(gridOccupancy);
                         int endX = x + spanX - 1;
                         int endY = y + spanY - 1;
 
@@ -806,66 +869,119 @@ public class UnifiedLauncherHook extends BaseHook {
         }
     }
 
-    private void hookLoaderCursor(ClassLoader classLoader) {
+    // Поля DbEntry для solveGridPlacement, разрешаются один раз на класс
+    private static final class EntryFields {
+        final Class<?> owner;
+        final Field cellX;
+        final Field cellY;
+        final Field spanX;
+        final Field spanY;
+        final Field minSpanX;
+        final Field minSpanY;
+        final Field screenId;
+
+        EntryFields(Class<?> owner) {
+            this.owner = owner;
+            cellX = XposedHelpers.findField(owner, "cellX");
+            cellY = XposedHelpers.findField(owner, "cellY");
+            spanX = XposedHelpers.findField(owner, "spanX");
+            spanY = XposedHelpers.findField(owner, "spanY");
+            minSpanX = XposedHelpers.findField(owner, "minSpanX");
+            minSpanY = XposedHelpers.findField(owner, "minSpanY");
+            screenId = XposedHelpers.findField(owner, "screenId");
+        }
+    }
+
+    private EntryFields entryFields(Object entry) {
+        EntryFields fields = entryFields;
+        if (fields == null || fields.owner != entry.getClass()) {
+            fields = new EntryFields(entry.getClass());
+            entryFields = fields;
+        }
+        return fields;
+    }
+
+    private void hookLoaderCursor(ClassLoader classLoader, final LauncherLoadSession.Accessors accessors) {
         try {
             Class<?> loaderCursorClass = XposedHelpers.findClass("com.android.launcher3.model.LoaderCursor", classLoader);
             Class<?> itemInfoClass = XposedHelpers.findClass("com.android.launcher3.model.data.ItemInfo", classLoader);
             Class<?> intSparseArrayMapClass = XposedHelpers.findClass("com.android.launcher3.util.IntSparseArrayMap", classLoader);
             Class<?> loaderMemoryLoggerClass = XposedHelpers.findClass("com.android.launcher3.model.LoaderMemoryLogger", classLoader);
+            schemaVersion = launcherSchemaVersion(classLoader);
+            hookRestoreDbTask(classLoader);
+
+            try {
+                Class<?> loaderTaskClass = XposedHelpers.findClass("com.android.launcher3.model.LoaderTask", classLoader);
+                XposedHelpers.findAndHookMethod(loaderTaskClass, "run", new XC_MethodHook() {
+                    @Override
+                    protected void beforeHookedMethod(MethodHookParam param) {
+                        Context context = getCurrentApplication();
+                        boolean topRow = context != null && getLauncherConfig(context).topRowWidgets;
+                        if (!topRow) {
+                            loadSession = new LauncherLoadSession(accessors, false);
+                            // Режим выключили в другом процессе: позиции с диска больше не нужны
+                            if (context != null && (positionStore != null || WorkspacePositionStore.exists(context))) {
+                                getPositionStore(context).clear();
+                            }
+                            return;
+                        }
+
+                        int gridColumns = 0;
+                        int gridRows = 0;
+                        String dbFile = null;
+                        try {
+                            Object app = XposedHelpers.getObjectField(param.thisObject, "mApp");
+                            Object idp = XposedHelpers.callMethod(app, "getInvariantDeviceProfile");
+                            gridColumns = XposedHelpers.getIntField(idp, "numColumns");
+                            gridRows = XposedHelpers.getIntField(idp, "numRows");
+                            dbFile = (String) XposedHelpers.getObjectField(idp, "dbFile");
+                        } catch (Throwable t) { /* ignore */ }
+
+                        // Смена сетки, её базы или схемы лаунчера переписывает позиции мимо ModelWriter
+                        Map<Integer, WorkspacePositionStore.Position> saved = null;
+                        if (gridColumns > 0 && gridRows > 0) {
+                            WorkspacePositionStore store = getPositionStore(context);
+                            String signature = gridColumns + "x" + gridRows + "/" + dbFile + "/" + schemaVersion;
+                            // Одним запросом на всю загрузку, мы уже на потоке модели
+                            if (store.validate(signature)) saved = store.load(CONTAINER_DESKTOP);
+                        }
+                        loadSession = new LauncherLoadSession(accessors, true, saved, gridColumns, gridRows);
+                    }
+
+                    @Override
+                    protected void afterHookedMethod(MethodHookParam param) {
+                        loadSession = null;
+                    }
+                });
+            } catch (Throwable t) {
+                log("LoaderTask.run not found, load session is created per item");
+            }
 
             XposedHelpers.findAndHookMethod(loaderCursorClass, "checkAndAddItem",
                 itemInfoClass, intSparseArrayMapClass, loaderMemoryLoggerClass,
                 new XC_MethodHook() {
                     @Override
                     protected void beforeHookedMethod(MethodHookParam param) {
+                        long start = SEC_CHECK_AND_ADD.begin();
                         try {
-                            Object cursor = param.thisObject;
-                            Object item = param.args[0];
-                            Context context = (Context) XposedHelpers.getObjectField(cursor, "mContext");
-
-                            if (getIntSetting(context, KEY_TOP_WIDGET_ENABLE, 0) != 1) return;
-
-                            int container = XposedHelpers.getIntField(item, "container");
-                            if (container != -100) return; // Desktop
-
-                            int screenId = XposedHelpers.getIntField(item, "screenId");
-                            if (screenId != 0) return;
-
-                            int cellY = XposedHelpers.getIntField(item, "cellY");
-                            if (cellY != 0) return;
-
-                            Object mOccupied = XposedHelpers.getObjectField(cursor, "mOccupied");
-                            Object gridOccupancy = XposedHelpers.callMethod(mOccupied, "get", screenId);
-
-                            if (gridOccupancy != null) {
-                                int cellX = XposedHelpers.getIntField(item, "cellX");
-                                int spanX = XposedHelpers.getIntField(item, "spanX");
-                                int spanY = XposedHelpers.getIntField(item, "spanY");
-
-                                XposedHelpers.callMethod(gridOccupancy, "markCells", false, cellX, cellY, spanX, spanY);
-
-                                param.setObjectExtra("gridOccupancy", gridOccupancy);
-                                param.setObjectExtra("cellX", cellX);
-                                param.setObjectExtra("cellY", cellY);
-                                param.setObjectExtra("spanX", spanX);
-                                param.setObjectExtra("spanY", spanY);
+                            LauncherLoadSession session = loadSession;
+                            if (session == null) {
+                                // Загрузка мимо LoaderTask.run: снимок настроек только на этот вызов
+                                Context context = (Context) accessors.cursorContext.get(param.thisObject);
+                                session = new LauncherLoadSession(accessors,
+                                        context != null && getLauncherConfig(context).topRowWidgets);
+                                param.setObjectExtra(EXTRA_LOAD_SESSION, session);
                             }
+                            session.beforeAdd(param.thisObject, param.args[0]);
                         } catch (Throwable e) { }
+                        SEC_CHECK_AND_ADD.end(start);
                     }
 
                     @Override
                     protected void afterHookedMethod(MethodHookParam param) {
-                        try {
-                            Object gridOccupancy = param.getObjectExtra("gridOccupancy");
-                            if (gridOccupancy != null) {
-                                int cellX = (Integer) param.getObjectExtra("cellX");
-                                int cellY = (Integer) param.getObjectExtra("cellY");
-                                int spanX = (Integer) param.getObjectExtra("spanX");
-                                int spanY = (Integer) param.getObjectExtra("spanY");
-
-                                XposedHelpers.callMethod(gridOccupancy, "markCells", true, cellX, cellY, spanX, spanY);
-                            }
-                        } catch (Throwable e) { }
+                        LauncherLoadSession session = loadSession;
+                        if (session == null) session = (LauncherLoadSession) param.getObjectExtra(EXTRA_LOAD_SESSION);
+                        if (session != null) session.afterAdd();
                     }
                 }
             );
@@ -874,20 +990,82 @@ public class UnifiedLauncherHook extends BaseHook {
         }
     }
 
-    private void hookModelWriter(ClassLoader classLoader) {
+    private static int launcherSchemaVersion(ClassLoader classLoader) {
+        String[] owners = {"com.android.launcher3.model.DatabaseHelper", "com.android.launcher3.LauncherProvider"};
+        for (String owner : owners) {
+            Class<?> clazz = XposedHelpers.findClassIfExists(owner, classLoader);
+            if (clazz == null) continue;
+            try {
+                return XposedHelpers.getStaticIntField(clazz, "SCHEMA_VERSION");
+            } catch (Throwable t) { /* ignore */ }
+        }
+        return 0;
+    }
+
+    // Восстановление из бэкапа заменяет базу целиком, сохранённые позиции к ней не относятся
+    private void hookRestoreDbTask(ClassLoader classLoader) {
+        Class<?> restoreDbTaskClass = XposedHelpers.findClassIfExists("com.android.launcher3.provider.RestoreDbTask", classLoader);
+        if (restoreDbTaskClass == null) return;
+        try {
+            XposedBridge.hookAllMethods(restoreDbTaskClass, "performRestore", new XC_MethodHook() {
+                @Override
+                protected void afterHookedMethod(MethodHookParam param) {
+                    LauncherLoadSession session = loadSession;
+                    if (session != null) session.dropSavedPositions();
+                    Context context = getCurrentApplication();
+                    if (context != null) getPositionStore(context).clear();
+                }
+            });
+        } catch (Throwable t) {
+            log("RestoreDbTask.performRestore not hooked: " + t);
+        }
+    }
+
+    private void hookModelWriter(ClassLoader classLoader, final LauncherLoadSession.Accessors accessors) {
         try {
              Class<?> modelWriterClass = XposedHelpers.findClass("com.android.launcher3.model.ModelWriter", classLoader);
              Class<?> itemInfoClass = XposedHelpers.findClass("com.android.launcher3.model.data.ItemInfo", classLoader);
+             final Field writerContextField = XposedHelpers.findField(modelWriterClass, "mContext");
              
-             XposedHelpers.findAndHookMethod(modelWriterClass, "addItemToDatabase", itemInfoClass, int.class, int.class, int.class, int.class, new XC_MethodHook() {
-                 @Override protected void afterHookedMethod(MethodHookParam param) { 
-                     saveWorkspaceItem((Context) XposedHelpers.getObjectField(param.thisObject, "mContext"), param.args[0]); 
+             XC_MethodHook saveHook = new XC_MethodHook() {
+                 @Override protected void afterHookedMethod(MethodHookParam param) throws Throwable {
+                     saveWorkspaceItem((Context) writerContextField.get(param.thisObject), param.args[0], accessors);
+                 }
+             };
+             XposedHelpers.findAndHookMethod(modelWriterClass, "addItemToDatabase", itemInfoClass, int.class, int.class, int.class, int.class, saveHook);
+             XposedHelpers.findAndHookMethod(modelWriterClass, "modifyItemInDatabase", itemInfoClass, int.class, int.class, int.class, int.class, int.class, int.class, saveHook);
+
+             // Перетаскивание идёт через move*: без них в хранилище остаётся старая клетка
+             XC_MethodHook moveHook = new XC_MethodHook() {
+                 @Override protected void afterHookedMethod(MethodHookParam param) throws Throwable {
+                     if (param.args.length == 0) return;
+                     Context context = (Context) writerContextField.get(param.thisObject);
+                     if (param.args[0] instanceof Collection) {
+                         for (Object item : (Collection<?>) param.args[0]) {
+                             saveWorkspaceItem(context, item, accessors);
+                         }
+                     } else {
+                         saveWorkspaceItem(context, param.args[0], accessors);
+                     }
+                 }
+             };
+             XposedBridge.hookAllMethods(modelWriterClass, "moveItemInDatabase", moveHook);
+             XposedBridge.hookAllMethods(modelWriterClass, "moveItemsInDatabase", moveHook);
+             XposedBridge.hookAllMethods(modelWriterClass, "addOrMoveItemInDatabase", moveHook);
+
+             XposedBridge.hookAllMethods(modelWriterClass, "deleteItemFromDatabase", new XC_MethodHook() {
+                 @Override protected void afterHookedMethod(MethodHookParam param) throws Throwable {
+                     if (param.args.length == 0) return;
+                     forgetWorkspaceItem((Context) writerContextField.get(param.thisObject), param.args[0], accessors);
                  }
              });
-             
-             XposedHelpers.findAndHookMethod(modelWriterClass, "modifyItemInDatabase", itemInfoClass, int.class, int.class, int.class, int.class, int.class, int.class, new XC_MethodHook() {
-                 @Override protected void afterHookedMethod(MethodHookParam param) {
-                     saveWorkspaceItem((Context) XposedHelpers.getObjectField(param.thisObject, "mContext"), param.args[0]);
+             XposedBridge.hookAllMethods(modelWriterClass, "deleteItemsFromDatabase", new XC_MethodHook() {
+                 @Override protected void afterHookedMethod(MethodHookParam param) throws Throwable {
+                     if (param.args.length == 0 || !(param.args[0] instanceof Collection)) return;
+                     Context context = (Context) writerContextField.get(param.thisObject);
+                     for (Object item : (Collection<?>) param.args[0]) {
+                         forgetWorkspaceItem(context, item, accessors);
+                     }
                  }
              });
         } catch (Throwable e) {}
@@ -897,11 +1075,10 @@ public class UnifiedLauncherHook extends BaseHook {
     // HELPER LOGIC IMPLEMENTATIONS
     // =========================================================================
 
-    private void applyHomepagePadding(Activity activity) {
-        if (getIntSetting(activity, KEY_DOCK_ENABLE, 0) != 1) return;
+    private void applyHomepagePadding(Activity activity, LauncherConfig config) {
+        if (!config.dockEnabled) return;
         
-        int paddingSetting = getIntSetting(activity, KEY_PADDING_HOMEPAGE, SETTINGS_DEFAULT_PADDING);
-        if (lastAppliedPaddingHash == paddingSetting) return;
+        int paddingSetting = config.paddingHomepage;
 
         try {
             Object deviceProfile = XposedHelpers.getObjectField(activity, "mDeviceProfile");
@@ -918,7 +1095,9 @@ public class UnifiedLauncherHook extends BaseHook {
             if (paddingObj != null) {
                 int desiredBottomPx;
                 if (paddingSetting == SETTINGS_DEFAULT_PADDING) {
-                    desiredBottomPx = (lastAppliedPaddingHash == 0) ? paddingObj.bottom : toPx(activity, LAUNCHER_ORIGINAL_BOTTOM_DP);
+                    // Возвращаем исходный отступ, только если до этого ставили свой
+                    boolean wasCustom = lastAppliedPadding != 0 && lastAppliedPadding != SETTINGS_DEFAULT_PADDING;
+                    desiredBottomPx = wasCustom ? toPx(activity, LAUNCHER_ORIGINAL_BOTTOM_DP) : paddingObj.bottom;
                 } else {
                     desiredBottomPx = toPx(activity, paddingSetting + 20);
                 }
@@ -928,47 +1107,79 @@ public class UnifiedLauncherHook extends BaseHook {
                     triggerNativeUpdate(workspace, deviceProfile);
                     if (hotseat != null) triggerNativeUpdate(hotseat, deviceProfile);
                 }
-                lastAppliedPaddingHash = paddingSetting;
+                lastAppliedPadding = paddingSetting;
             }
         } catch (Throwable e) { /* ignore */ }
     }
 
-    private void applyDockSettings(Activity activity) {
-        if (getIntSetting(activity, KEY_DOCK_ENABLE, 0) != 1) return;
-
-        boolean hideSearch = isSettingEnabled(activity, KEY_HIDE_SEARCH);
-        boolean hideDock = isSettingEnabled(activity, KEY_HIDE_DOCK);
-        int paddingDock = getIntSetting(activity, KEY_PADDING_DOCK, 0);
-        int paddingSearch = getIntSetting(activity, KEY_PADDING_SEARCH, 0);
-
-        String hashString = hideSearch + "|" + hideDock + "|" + paddingDock + "|" + paddingSearch;
-        int currentHash = hashString.hashCode();
-        if (lastAppliedDockHash == currentHash) return;
-
+    private void applyDockSettings(Activity activity, LauncherConfig config) {
         try {
+            Object deviceProfile = XposedHelpers.getObjectField(activity, "mDeviceProfile");
+            boolean profileChanged = deviceProfile != null && applyDockToProfile(deviceProfile, activity);
+            if (deviceProfile != null) applyDockToOtherProfiles(deviceProfile, activity);
+
             ViewGroup hotseat = (ViewGroup) XposedHelpers.getObjectField(activity, "mHotseat");
             if (hotseat != null) {
                 View qsbView = findQsbView(hotseat, activity);
                 View dockIconsView = findHotseatCellLayout(hotseat);
 
-                if (qsbView != null) {
-                    float tY = (paddingSearch != 0) ? -toPx(activity, paddingSearch) : 0f;
-                    enforceViewProperties(qsbView, hideSearch ? View.GONE : View.VISIBLE, tY, hideSearch);
-                }
-                if (dockIconsView != null) {
-                    float tY = (paddingDock != 0) ? -toPx(activity, paddingDock) : 0f;
-                    enforceViewProperties(dockIconsView, hideDock ? View.GONE : View.VISIBLE, tY, hideDock);
+                if (qsbView != null) setHiddenByDock(qsbView, config.dockEnabled && config.hideSearch);
+                if (dockIconsView != null) setHiddenByDock(dockIconsView, config.dockEnabled && config.hideDock);
+                if (profileChanged) {
+                    triggerNativeUpdate(hotseat, deviceProfile);
+                    hotseat.requestLayout();
                 }
             }
-            lastAppliedDockHash = currentHash;
         } catch (Throwable e) { /* ignore */ }
     }
 
+    /** @return true when the profile fields were changed */
+    private boolean applyDockToProfile(Object deviceProfile, Context context) {
+        DockProfileOverrides overrides = dockOverrides;
+        if (overrides == null || !overrides.handles(deviceProfile)) return false;
+        LauncherConfig config = getLauncherConfig(context);
+        try {
+            boolean changed = overrides.apply(deviceProfile, config.dockEnabled, config.hideSearch, config.hideDock,
+                    toPx(context, config.paddingDock), toPx(context, config.paddingSearch));
+            if (changed) {
+                // workspacePadding считается из hotseatBarSizePx при сборке профиля
+                try { XposedHelpers.callMethod(deviceProfile, "updateWorkspacePadding"); } catch (Throwable t) { /* ignore */ }
+            }
+            return changed;
+        } catch (Throwable e) {
+            logError("Failed to apply dock overrides to DeviceProfile", e);
+            return false;
+        }
+    }
+
+    // Профили других ориентаций собраны заранее: без этого они держат старые значения до пересборки
+    private void applyDockToOtherProfiles(Object deviceProfile, Context context) {
+        try {
+            Object idp = XposedHelpers.getObjectField(deviceProfile, "inv");
+            Object profiles = XposedHelpers.getObjectField(idp, "supportedProfiles");
+            if (!(profiles instanceof Collection)) return;
+            for (Object profile : (Collection<?>) profiles) {
+                if (profile != deviceProfile) applyDockToProfile(profile, context);
+            }
+        } catch (Throwable e) { /* ignore */ }
+    }
+
+    private void setHiddenByDock(View view, boolean hide) {
+        if (hide) {
+            if (view.getVisibility() != View.GONE) view.setVisibility(View.GONE);
+            view.setTag(TAG_HIDDEN_BY_DOCK, Boolean.TRUE);
+        } else if (view.getTag(TAG_HIDDEN_BY_DOCK) != null) {
+            view.setTag(TAG_HIDDEN_BY_DOCK, null);
+            view.setVisibility(View.VISIBLE);
+        }
+    }
+
     private void applyDotsOffset(View workspace, Context context) {
-        if (getIntSetting(context, KEY_DOCK_ENABLE, 0) != 1) return;
+        LauncherConfig config = getLauncherConfig(context);
+        if (!config.dockEnabled) return;
 
-        int paddingDots = getIntSetting(context, KEY_PADDING_DOTS, DEFAULT_PADDING_DOTS);
-        int paddingDotsX = getIntSetting(context, KEY_PADDING_DOTS_X, 0);
+        int paddingDots = config.paddingDots;
+        int paddingDotsX = config.paddingDotsX;
         
         int diffDp = paddingDots - DEFAULT_PADDING_DOTS;
         int diffPx = toPx(context, diffDp);
@@ -990,40 +1201,93 @@ public class UnifiedLauncherHook extends BaseHook {
 
     private void handleWorkspaceView(TextView view, Object itemInfo) {
         try {
-            int mDisplay = XposedHelpers.getIntField(view, "mDisplay");
-            if (mDisplay != DISPLAY_WORKSPACE && mDisplay != DISPLAY_FOLDER) return;
+            if (viewClassifier.hasForeignDisplay(view)) return;
             
             if (itemInfo != null) {
                 int container = XposedHelpers.getIntField(itemInfo, "container");
                 if (container == CONTAINER_HOTSEAT || container == CONTAINER_HOTSEAT_PREDICTION || container == -104) return;
             }
-            applyWorkspaceIconSize(view, view.getContext());
             applyWorkspaceTextMode(view, view.getContext());
         } catch (Exception e) { }
     }
 
-    private void applyWorkspaceIconSize(final View view, Context context) {
-        int sizePercent = getIntSetting(context, KEY_HOME_ICON_SIZE, 100);
-        if (sizePercent <= 0) return;
-        
-        view.setScaleX(1f);
-        view.setScaleY(1f);
+    private void applyHotseatIconSize(TextView view, Context context) {
+        try {
+            Object deviceProfile = deviceProfileOf(view);
+            int iconSize = hotseatIconSize(deviceProfile, context);
+            if (XposedHelpers.getIntField(view, "mIconSize") != iconSize) {
+                XposedHelpers.setIntField(view, "mIconSize", iconSize);
+            }
+        } catch (Throwable e) { /* ignore */ }
+    }
 
-        if (view.getWidth() > 0) {
-            updatePivot(view);
-        }
+    /**
+     * Scales a FolderIcon in the dock to the hotseat icon size. Its preview is
+     * sized from the profile's (workspace) folder dimensions, so the view scale
+     * is the ratio of the two icon sizes.
+     *
+     * @param bounceScale reorder bounce scale the launcher has just applied, 1 otherwise
+     */
+    private void applyHotseatFolderScale(View folderIcon, float bounceScale) {
+        Context context = folderIcon.getContext();
+        if (context == null) return;
+        try {
+            Object info = XposedHelpers.getObjectField(folderIcon, "mInfo");
+            float scale = 1f;
+            if (isHotseatItem(folderIcon, info)) {
+                Object deviceProfile = deviceProfileOf(folderIcon);
+                int profileIconSize = XposedHelpers.getIntField(deviceProfile, "iconSizePx");
+                if (profileIconSize > 0) scale = hotseatIconSize(deviceProfile, context) / (float) profileIconSize;
+            }
+            // Папку могли перетащить из дока на стол: снимаем только наш масштаб
+            if (scale == 1f && folderIcon.getTag(TAG_HOTSEAT_FOLDER_SCALED) == null) return;
+            folderIcon.setTag(TAG_HOTSEAT_FOLDER_SCALED, (scale != 1f) ? Boolean.TRUE : null);
+            folderIcon.setScaleX(bounceScale * scale);
+            folderIcon.setScaleY(bounceScale * scale);
+        } catch (Throwable e) { /* ignore */ }
+    }
 
-        if (!layoutListeners.containsKey(view)) {
-            View.OnLayoutChangeListener listener = new View.OnLayoutChangeListener() {
-                @Override
-                public void onLayoutChange(View v, int l, int t, int r, int b, int ol, int ot, int or, int ob) {
-                    updatePivot(v);
-                }
-            };
-            view.addOnLayoutChangeListener(listener);
-            layoutListeners.put(view, listener);
+    private void updateHotseatFolderLayout(View folderIcon) {
+        try {
+            float bounceScale = 1f;
+            try { bounceScale = XposedHelpers.getFloatField(folderIcon, "mScaleForReorderBounce"); } catch (Throwable t) { /* ignore */ }
+            applyHotseatFolderScale(folderIcon, bounceScale);
+            if (folderIcon.getTag(TAG_HOTSEAT_FOLDER_SCALED) == null) {
+                if (folderIcon.isPivotSet()) folderIcon.resetPivot();
+                return;
+            }
+            // Масштабируем вокруг центра превью, а не всей ячейки с подписью
+            Object deviceProfile = deviceProfileOf(folderIcon);
+            int folderIconSize = XposedHelpers.getIntField(deviceProfile, "folderIconSizePx");
+            int offsetY = XposedHelpers.getIntField(deviceProfile, "folderIconOffsetYPx");
+            folderIcon.setPivotX(folderIcon.getWidth() / 2f);
+            folderIcon.setPivotY(folderIcon.getPaddingTop() + offsetY + folderIconSize / 2f);
+        } catch (Throwable e) { /* ignore */ }
+    }
+
+    private static Object deviceProfileOf(View view) {
+        Object activityContext = XposedHelpers.getObjectField(view, "mActivity");
+        return XposedHelpers.callMethod(activityContext, "getDeviceProfile");
+    }
+
+    // Док не должен наследовать размер рабочего стола из DeviceProfile
+    private int hotseatIconSize(Object deviceProfile, Context context) {
+        Object baseObj = XposedHelpers.getAdditionalInstanceField(deviceProfile, EXTRA_BASE_ICON_SIZE);
+        int baseIconSize = (baseObj instanceof Integer) ? (Integer) baseObj : XposedHelpers.getIntField(deviceProfile, "iconSizePx");
+        int sizePercent = getIntSetting(context, KEY_HOTSEAT_ICON_SIZE, 100);
+        return (sizePercent > 0 && sizePercent != 100)
+                ? Math.max(1, Math.round(baseIconSize * sizePercent / 100f))
+                : baseIconSize;
+    }
+
+    private boolean isHotseatItem(View view, Object itemInfo) {
+        if (itemInfo != null) {
+            try {
+                int container = XposedHelpers.getIntField(itemInfo, "container");
+                return container == CONTAINER_HOTSEAT || container == CONTAINER_HOTSEAT_PREDICTION;
+            } catch (Throwable e) { /* fall through */ }
         }
-        view.post(new Runnable() { @Override public void run() { updatePivot(view); } });
+        return isHotseatView(view);
     }
 
     private void applyWorkspaceTextMode(TextView view, Context context) {
@@ -1042,84 +1306,53 @@ public class UnifiedLauncherHook extends BaseHook {
         }
     }
 
-    private void updatePivot(View view) {
-        try {
-            if (view.getWidth() <= 0) return;
-            if (view.getClass().getName().contains("BubbleTextView")) {
-                Rect iconBounds = new Rect();
-                XposedHelpers.callMethod(view, "getIconBounds", iconBounds);
-                if (!iconBounds.isEmpty()) {
-                    view.setPivotX(view.getWidth() / 2f);
-                    view.setPivotY(iconBounds.centerY());
-                }
-            } else if (view.getClass().getName().contains("FolderIcon")) {
-                view.setPivotX(view.getWidth() / 2f);
-                Rect previewBounds = new Rect();
-                XposedHelpers.callMethod(view, "getPreviewBounds", previewBounds);
-                if (!previewBounds.isEmpty()) view.setPivotY(previewBounds.centerY());
-            }
-        } catch (Throwable e) {}
+    private void performSleep(Context context, long tapTime) {
+        SleepInvoker invoker = sleepInvoker;
+        if (invoker == null) {
+            invoker = SleepInvoker.prepare(context);
+            sleepInvoker = invoker;
+        }
+        invoker.sleep(tapTime);
     }
 
-    private void performSleep(Context context) {
-        android.util.Log.d("SleepLauncher", "performSleep called.");
-
-        try {
-            Class<?> smClass = XposedHelpers.findClass("android.os.ServiceManager", null);
-            Object binder = XposedHelpers.callStaticMethod(smClass, "getService", Context.POWER_SERVICE);
-            
-            if (binder != null) {
-                Class<?> iPmClass = XposedHelpers.findClass("android.os.IPowerManager$Stub", null);
-                Object iPm = XposedHelpers.callStaticMethod(iPmClass, "asInterface", binder);
-                XposedHelpers.callMethod(iPm, "goToSleep", SystemClock.uptimeMillis(), 0, 0);
-                return; 
-            }
-        } catch (Throwable t) { 
-             android.util.Log.e("SleepLauncher", "IPowerManager failed", t);
-        }
 
+    private void saveWorkspaceItem(Context context, Object item, LauncherLoadSession.Accessors accessors) {
+        if (context == null || item == null || !getLauncherConfig(context).topRowWidgets) return;
         try {
-            PowerManager pm = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
-            if (pm != null) {
-                XposedHelpers.callMethod(pm, "goToSleep", SystemClock.uptimeMillis());
+            int id = accessors.id.getInt(item);
+            int container = accessors.container.getInt(item);
+            if (container != CONTAINER_DESKTOP) {
+                // Перенесли в папку или док: сохранённая позиция на столе больше не нужна
+                getPositionStore(context).remove(id);
                 return;
             }
-        } catch (Throwable t) { 
-             android.util.Log.e("SleepLauncher", "PowerManager failed", t);
-        }
-
-        try {
-            Intent intent = new Intent("org.pixel.customparts.ACTION_SLEEP");
-            intent.setComponent(new ComponentName("org.pixel.customparts", "org.pixel.customparts.services.SleepReceiver"));
-            intent.addFlags(Intent.FLAG_RECEIVER_FOREGROUND | 32);
-            context.sendBroadcast(intent);
-        } catch (Throwable e) {
-            logError("Sleep failed", e);
-        }
+            getPositionStore(context).put(id, new WorkspacePositionStore.Position(container,
+                    accessors.screenId.getInt(item), accessors.cellX.getInt(item), accessors.cellY.getInt(item),
+                    accessors.spanX.getInt(item), accessors.spanY.getInt(item)));
+        } catch (Throwable e) { /* ignore */ }
     }
 
-
-    private void hookModelWriterAndLoader(ClassLoader classLoader) {
+    private void forgetWorkspaceItem(Context context, Object item, LauncherLoadSession.Accessors accessors) {
+        if (context == null || !accessors.id.getDeclaringClass().isInstance(item)) return;
+        if (!getLauncherConfig(context).topRowWidgets) return;
         try {
-             Class<?> modelWriterClass = XposedHelpers.findClass("com.android.launcher3.model.ModelWriter", classLoader);
-             Class<?> itemInfoClass = XposedHelpers.findClass("com.android.launcher3.model.data.ItemInfo", classLoader);
-             
-             XposedHelpers.findAndHookMethod(modelWriterClass, "addItemToDatabase", itemInfoClass, int.class, int.class, int.class, int.class, new XC_MethodHook() {
-                 @Override protected void afterHookedMethod(MethodHookParam param) { saveWorkspaceItem((Context) XposedHelpers.getObjectField(param.thisObject, "mContext"), param.args[0]); }
-             });
-        } catch (Throwable e) {}
+            getPositionStore(context).remove(accessors.id.getInt(item));
+        } catch (Throwable e) { /* ignore */ }
     }
-    
-    private void saveWorkspaceItem(Context context, Object item) {
-        try {
-             if (getIntSetting(context, KEY_TOP_WIDGET_ENABLE, 0) != 1) return;
-        } catch(Throwable e) {}
+
+    private WorkspacePositionStore getPositionStore(Context context) {
+        WorkspacePositionStore store = positionStore;
+        if (store != null) return store;
+        synchronized (this) {
+            if (positionStore == null) positionStore = WorkspacePositionStore.create(context);
+            return positionStore;
+        }
     }
 
     private boolean isDotsOffsetEnabled(Context context) {
-        if (getIntSetting(context, KEY_DOCK_ENABLE, 0) != 1) return false;
-        return getIntSetting(context, KEY_PADDING_DOTS, DEFAULT_PADDING_DOTS) != DEFAULT_PADDING_DOTS || 
-               getIntSetting(context, KEY_PADDING_DOTS_X, 0) != 0;
+        LauncherConfig config = getLauncherConfig(context);
+        if (!config.dockEnabled) return false;
+        return config.paddingDots != DEFAULT_PADDING_DOTS || config.paddingDotsX != 0;
     }
 
     private void forceUpdateDots(Activity activity) {
@@ -1135,34 +1368,6 @@ public class UnifiedLauncherHook extends BaseHook {
         } catch (Exception e) {}
     }
 
-    private void enforceViewProperties(final View view, final int visibility, final float translationY, final boolean forceHeightZero) {
-        applyViewProps(view, visibility, translationY, forceHeightZero);
-        
-        Object oldListenerObj = view.getTag(TAG_VIEW_LISTENER);
-        if (oldListenerObj instanceof View.OnLayoutChangeListener) {
-            view.removeOnLayoutChangeListener((View.OnLayoutChangeListener) oldListenerObj);
-        }
-        
-        View.OnLayoutChangeListener newListener = new View.OnLayoutChangeListener() {
-            @Override public void onLayoutChange(View v, int l, int t, int r, int b, int ol, int ot, int or, int ob) {
-                applyViewProps(v, visibility, translationY, forceHeightZero);
-            }
-        };
-        view.addOnLayoutChangeListener(newListener);
-        view.setTag(TAG_VIEW_LISTENER, newListener);
-    }
-
-    private void applyViewProps(View view, int visibility, float translationY, boolean forceHeightZero) {
-        if (view.getVisibility() != visibility) view.setVisibility(visibility);
-        if (view.getTranslationY() != translationY) view.setTranslationY(translationY);
-
-        ViewGroup.LayoutParams params = view.getLayoutParams();
-        if (params != null) {
-            if (forceHeightZero && params.height != 0) { params.height = 0; view.setLayoutParams(params); }
-            else if (visibility == View.VISIBLE && params.height == 0) { params.height = ViewGroup.LayoutParams.WRAP_CONTENT; view.setLayoutParams(params); }
-        }
-    }
-
     private void triggerNativeUpdate(View view, Object deviceProfile) {
         try {
             Method method = XposedHelpers.findMethodExact(view.getClass(), "onDeviceProfileChanged", deviceProfile.getClass());
@@ -1170,57 +1375,9 @@ public class UnifiedLauncherHook extends BaseHook {
         } catch (Throwable e) {}
     }
 
-    private boolean isWorkspaceView(View view) {
-        try {
-            if (view instanceof TextView && view.getClass().getName().contains("BubbleTextView")) {
-                int mDisplay = XposedHelpers.getIntField(view, "mDisplay");
-                if (mDisplay != DISPLAY_WORKSPACE && mDisplay != DISPLAY_FOLDER) {
-                    return false;
-                }
-            }
-        } catch (Throwable e) {
-        }
-
-        if (view.getParent() instanceof View) {
-            View curr = (View) view.getParent();
-            while (curr != null) {
-                String name = curr.getClass().getName();
-                
-                if (name.contains("Hotseat")) return false;
-                
-                if (name.contains("AllApps") || name.contains("AlphabeticalAppsList") || name.contains("RecyclerView")) {
-                    return false;
-                }
-                
-                if (name.contains("SearchResult") || name.contains("SearchContainer")) {
-                    return false;
-                }
-
-                if (name.contains("Workspace") || name.contains("Folder")) return true;
-                
-                if (curr.getParent() instanceof View) curr = (View) curr.getParent();
-                else break;
-            }
-        }
-        
-        Object tag = view.getTag();
-        if (tag == null) return false;
-        try {
-            int container = XposedHelpers.getIntField(tag, "container");
-            return container != CONTAINER_HOTSEAT && container != CONTAINER_HOTSEAT_PREDICTION && container != -104;
-        } catch (Throwable e) { 
-            return false; 
-        }
-    }
-
     private boolean isHotseatView(View view) {
         if (view.getParent() instanceof View) {
-            View curr = (View) view.getParent();
-            while (curr != null) {
-                if (curr.getClass().getName().contains("Hotseat")) return true;
-                if (curr.getParent() instanceof View) curr = (View) curr.getParent(); else break;
-            }
-            return false;
+            return viewClassifier.kindOf(view) == LauncherViewClassifier.KIND_HOTSEAT;
         }
         Object tag = view.getTag();
         if (tag == null) return false;
@@ -1230,21 +1387,6 @@ public class UnifiedLauncherHook extends BaseHook {
         } catch (Throwable e) { return false; }
     }
 
-    private TextView resolveBubbleTextView(View view) {
-        if (view instanceof TextView && view.getClass().getName().contains("BubbleTextView")) return (TextView) view;
-        if (view.getClass().getName().contains("BubbleTextHolder")) {
-            try { return (TextView) XposedHelpers.callMethod(view, "getBubbleText"); } catch (Throwable e) { return null; }
-        }
-        if (view instanceof ViewGroup) {
-            ViewGroup vg = (ViewGroup) view;
-            for (int i = 0; i < vg.getChildCount(); i++) {
-                View child = vg.getChildAt(i);
-                if (child instanceof TextView && child.getClass().getName().contains("BubbleTextView")) return (TextView) child;
-            }
-        }
-        return null;
-    }
-    
     private View findQsbView(ViewGroup hotseat, Context context) {
         try {
             Object qsbObj = XposedHelpers.getObjectField(hotseat, "mQsb");
@@ -1259,6 +1401,12 @@ public class UnifiedLauncherHook extends BaseHook {
                 if (v != null) return v;
             }
         }
+        if (qsbContainerClass != null) {
+            for (int i = 0; i < hotseat.getChildCount(); i++) {
+                View child = hotseat.getChildAt(i);
+                if (qsbContainerClass.isInstance(child)) return child;
+            }
+        }
         return null;
     }
 
@@ -1273,7 +1421,8 @@ public class UnifiedLauncherHook extends BaseHook {
 
         for (int i = 0; i < hotseat.getChildCount(); i++) {
             View child = hotseat.getChildAt(i);
-            if (child instanceof ViewGroup && child.getClass().getName().contains("CellLayout")) return child;
+            if (cellLayoutClass != null ? cellLayoutClass.isInstance(child)
+                    : (child instanceof ViewGroup && child.getClass().getName().contains("CellLayout"))) return child;
         }
         
         for (int i = 0; i < hotseat.getChildCount(); i++) {
@@ -0,0 +1,393 @@
+package org.pixel.customparts.hooks;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.pixel.customparts.core.HookTelemetry;
+
+/**
+ * Write-behind store of workspace item positions (container, screen, cell, span by item id).
+ * Writes are collected in memory, debounced and flushed in one transaction on a
+ * background thread; the loader reads everything back with one query.
+ * Positions are only valid for the grid and launcher schema they were recorded on:
+ * {@link #validate} drops them when that signature changes.
+ * Storage and logging sit behind {@link Backend}, so the batching logic runs without a device.
+ */
+final class WorkspacePositionStore {
+
+    private static final String TAG = "PixelPartsPositions";
+
+    static final long DEBOUNCE_MS = 300L;
+    // Непрерывный поток записей всё равно сбрасывается не реже этого
+    static final long MAX_DELAY_MS = 2000L;
+
+    private static final HookTelemetry.Section SEC_FLUSH = HookTelemetry.section("Launcher.positionFlush");
+    private static final HookTelemetry.Counter CNT_WRITES = HookTelemetry.counter("Launcher.positionWrites");
+
+    static final class Position {
+        final int container;
+        final int screenId;
+        final int cellX;
+        final int cellY;
+        final int spanX;
+        final int spanY;
+
+        Position(int container, int screenId, int cellX, int cellY, int spanX, int spanY) {
+            this.container = container;
+            this.screenId = screenId;
+            this.cellX = cellX;
+            this.cellY = cellY;
+            this.spanX = spanX;
+            this.spanY = spanY;
+        }
+
+    }
+
+    interface Backend {
+        /** All stored positions for {@code container}. */
+        Map<Integer, Position> load(int container);
+
+        /** Applies one batch atomically; a null value deletes the item. */
+        void write(Map<Integer, Position> batch);
+
+        /** Signature the stored positions were recorded under, null when there is none. */
+        String signature();
+
+        /** Drops every position and records {@code signature}; null removes the storage itself. */
+        void reset(String signature);
+
+        void logError(String message, Throwable t);
+    }
+
+    interface Clock {
+        long uptimeMillis();
+    }
+
+    private final Backend backend;
+    private final ScheduledExecutorService executor;
+    private final Clock clock;
+    private final Object lock = new Object();
+    // Держится на всё время записи в backend, чтобы reset не обогнал уже взятый батч
+    private final Object ioLock = new Object();
+    private LinkedHashMap<Integer, Position> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> scheduled;
+    private long firstPendingAt;
+    // clear() уже сбросил pending, но хранилище ещё не очищено
+    private boolean clearRequested;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private final Runnable clearTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (ioLock) {
+                clearIfRequested();
+            }
+        }
+    };
+
+    WorkspacePositionStore(Backend backend, ScheduledExecutorService executor, Clock clock) {
+        this.backend = backend;
+        this.executor = executor;
+        this.clock = clock;
+    }
+
+    /** True when an earlier process left positions on disk. */
+    static boolean exists(Context context) {
+        return context.getDatabasePath(SqliteBackend.DB_NAME).exists();
+    }
+
+    static WorkspacePositionStore create(Context context) {
+        Context appContext = context.getApplicationContext();
+        SqliteBackend backend = new SqliteBackend((appContext != null) ? appContext : context);
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, TAG);
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        return new WorkspacePositionStore(backend, executor, new Clock() {
+            @Override
+            public long uptimeMillis() {
+                return SystemClock.uptimeMillis();
+            }
+        });
+    }
+
+    void put(int itemId, Position position) {
+        enqueue(itemId, position);
+    }
+
+    void remove(int itemId) {
+        enqueue(itemId, null);
+    }
+
+    /**
+     * Drops all positions, pending ones included, when they were recorded under
+     * another signature (grid size, grid database, launcher schema). Call off the main thread.
+     *
+     * @return false when the stored positions can't be trusted and must not be used
+     */
+    boolean validate(String signature) {
+        synchronized (ioLock) {
+            boolean cleared;
+            synchronized (lock) {
+                cleared = clearRequested;
+                clearRequested = false;
+            }
+            try {
+                if (!cleared && signature.equals(backend.signature())) return true;
+                dropPending();
+                backend.reset(signature);
+                return true;
+            } catch (Throwable t) {
+                backend.logError("Failed to reset positions", t);
+                dropPending();
+                return false;
+            }
+        }
+    }
+
+    /** Forgets everything, pending writes immediately and the storage on the background thread. */
+    void clear() {
+        synchronized (lock) {
+            clearRequested = true;
+        }
+        dropPending();
+        try {
+            executor.execute(clearTask);
+        } catch (Throwable t) {
+            backend.logError("Failed to schedule clear", t);
+        }
+    }
+
+    /** Stored positions with not yet flushed changes applied on top. Call off the main thread. */
+    Map<Integer, Position> load(int container) {
+        Map<Integer, Position> result;
+        synchronized (ioLock) {
+            clearIfRequested();
+            try {
+                result = backend.load(container);
+            } catch (Throwable t) {
+                backend.logError("Failed to load positions", t);
+                result = new HashMap<>();
+            }
+        }
+        synchronized (lock) {
+            for (Map.Entry<Integer, Position> entry : pending.entrySet()) {
+                Position position = entry.getValue();
+                if (position == null || position.container != container) {
+                    result.remove(entry.getKey());
+                } else {
+                    result.put(entry.getKey(), position);
+                }
+            }
+        }
+        return result;
+    }
+
+    void flush() {
+        synchronized (ioLock) {
+            // Записи после clear() не должны попасть под запоздавшую очистку
+            clearIfRequested();
+            LinkedHashMap<Integer, Position> batch;
+            synchronized (lock) {
+                if (scheduled != null) {
+                    scheduled.cancel(false);
+                    scheduled = null;
+                }
+                if (pending.isEmpty()) return;
+                batch = pending;
+                pending = new LinkedHashMap<>();
+            }
+            long start = SEC_FLUSH.begin();
+            try {
+                backend.write(batch);
+                CNT_WRITES.add(batch.size());
+            } catch (Throwable t) {
+                backend.logError("Failed to write " + batch.size() + " positions", t);
+            } finally {
+                SEC_FLUSH.end(start);
+            }
+        }
+    }
+
+    // Вызывается под ioLock
+    private void clearIfRequested() {
+        synchronized (lock) {
+            if (!clearRequested) return;
+            clearRequested = false;
+        }
+        try {
+            backend.reset(null);
+        } catch (Throwable t) {
+            backend.logError("Failed to clear positions", t);
+        }
+    }
+
+    private void dropPending() {
+        synchronized (lock) {
+            if (scheduled != null) {
+                scheduled.cancel(false);
+                scheduled = null;
+            }
+            pending = new LinkedHashMap<>();
+        }
+    }
+
+    private void enqueue(int itemId, Position position) {
+        synchronized (lock) {
+            long now = clock.uptimeMillis();
+            if (pending.isEmpty()) firstPendingAt = now;
+            pending.remove(itemId);
+            pending.put(itemId, position);
+
+            if (scheduled != null) scheduled.cancel(false);
+            long delay = Math.min(DEBOUNCE_MS, Math.max(0L, firstPendingAt + MAX_DELAY_MS - now));
+            try {
+                scheduled = executor.schedule(flushTask, delay, TimeUnit.MILLISECONDS);
+            } catch (Throwable t) {
+                scheduled = null;
+                backend.logError("Failed to schedule flush", t);
+            }
+        }
+    }
+
+    static final class SqliteBackend extends SQLiteOpenHelper implements Backend {
+
+        static final String DB_NAME = "pixelparts_positions.db";
+        private static final int DB_VERSION = 2;
+        private static final String TABLE = "positions";
+        private static final String TABLE_META = "meta";
+        private static final String META_SIGNATURE = "signature";
+
+        private final Context context;
+
+        SqliteBackend(Context context) {
+            super(context, DB_NAME, null, DB_VERSION);
+            this.context = context;
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE + " ("
+                    + "item_id INTEGER PRIMARY KEY, "
+                    + "container INTEGER NOT NULL, "
+                    + "screen INTEGER NOT NULL, "
+                    + "cell_x INTEGER NOT NULL, "
+                    + "cell_y INTEGER NOT NULL, "
+                    + "span_x INTEGER NOT NULL, "
+                    + "span_y INTEGER NOT NULL)");
+            db.execSQL("CREATE INDEX " + TABLE + "_container ON " + TABLE + " (container)");
+            db.execSQL("CREATE TABLE " + TABLE_META + " (key TEXT PRIMARY KEY, value TEXT)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // Версия 1 не знала сигнатуры сетки: её позициям доверять нельзя
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_META);
+            onCreate(db);
+        }
+
+        @Override
+        public String signature() {
+            try (Cursor cursor = getReadableDatabase().rawQuery(
+                    "SELECT value FROM " + TABLE_META + " WHERE key = ?", new String[]{META_SIGNATURE})) {
+                return cursor.moveToFirst() ? cursor.getString(0) : null;
+            }
+        }
+
+        @Override
+        public void reset(String signature) {
+            if (signature == null) {
+                close();
+                context.deleteDatabase(DB_NAME);
+                return;
+            }
+            SQLiteDatabase db = getWritableDatabase();
+            db.beginTransaction();
+            try {
+                db.execSQL("DELETE FROM " + TABLE);
+                db.execSQL("INSERT OR REPLACE INTO " + TABLE_META + " (key, value) VALUES (?, ?)",
+                        new Object[]{META_SIGNATURE, signature});
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+
+        @Override
+        public void logError(String message, Throwable t) {
+            Log.w(TAG, message, t);
+        }
+
+        @Override
+        public Map<Integer, Position> load(int container) {
+            Map<Integer, Position> result = new HashMap<>();
+            try (Cursor cursor = getReadableDatabase().rawQuery(
+                    "SELECT item_id, screen, cell_x, cell_y, span_x, span_y FROM " + TABLE + " WHERE container = ?",
+                    new String[]{String.valueOf(container)})) {
+                while (cursor.moveToNext()) {
+                    result.put(cursor.getInt(0), new Position(container,
+                            cursor.getInt(1), cursor.getInt(2), cursor.getInt(3), cursor.getInt(4), cursor.getInt(5)));
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public void write(Map<Integer, Position> batch) {
+            SQLiteDatabase db = getWritableDatabase();
+            SQLiteStatement upsert = db.compileStatement("INSERT OR REPLACE INTO " + TABLE
+                    + " (item_id, container, screen, cell_x, cell_y, span_x, span_y) VALUES (?, ?, ?, ?, ?, ?, ?)");
+            SQLiteStatement delete = db.compileStatement("DELETE FROM " + TABLE + " WHERE item_id = ?");
+            db.beginTransaction();
+            try {
+                for (Map.Entry<Integer, Position> entry : batch.entrySet()) {
+                    Position p = entry.getValue();
+                    if (p == null) {
+                        delete.bindLong(1, entry.getKey());
+                        delete.executeUpdateDelete();
+                        continue;
+                    }
+                    upsert.bindLong(1, entry.getKey());
+                    upsert.bindLong(2, p.container);
+                    upsert.bindLong(3, p.screenId);
+                    upsert.bindLong(4, p.cellX);
+                    upsert.bindLong(5, p.cellY);
+                    upsert.bindLong(6, p.spanX);
+                    upsert.bindLong(7, p.spanY);
+                    upsert.executeInsert();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                upsert.close();
+                delete.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.pixel.customparts.hooks.recents;
+
+/**
+ * Frame-budget policy for the carousel blur. While a gesture or the carousel
+ * animation runs it looks at the last {@link #WINDOW} frame intervals; when
+ * too many of them miss the display's frame budget the blur is first drawn
+ * with a coarser radius step (fewer distinct effects, cheaper re-records) and,
+ * if frames keep missing, switched off. Quality only goes down during one
+ * gesture, so it cannot flicker between levels, and comes back to full once
+ * the gesture has settled.
+ * Pure Java, fed with frame timestamps by the caller. Main thread only.
+ */
+final class BlurGovernor {
+
+    static final int LEVEL_FULL = 0;
+    static final int LEVEL_COARSE = 1;
+    static final int LEVEL_OFF = 2;
+
+    static final int WINDOW = 8;
+    // Сколько кадров окна из WINDOW должно опоздать, чтобы понизить качество
+    static final int JANK_FRAMES_TO_DEGRADE = 3;
+    // Кадр опоздал, если он длиннее бюджета в полтора раза
+    static final float JANK_FACTOR = 1.5f;
+    // Промежуток больше этого - пауза в отрисовке, а не медленный кадр
+    static final long MAX_INTERVAL_NANOS = 250_000_000L;
+
+    private static final int FULL_STEP = 4;
+    private static final int COARSE_STEP = 12;
+
+    private final long[] intervals = new long[WINDOW];
+    private int count;
+    private int head;
+    private long lastFrameNanos;
+    private long jankThresholdNanos;
+    private int level = LEVEL_FULL;
+
+    BlurGovernor() {
+        setRefreshRate(60f);
+    }
+
+    /** Sets the frame budget from the display refresh rate; non-positive rates are ignored. */
+    void setRefreshRate(float refreshRate) {
+        if (refreshRate <= 0f) return;
+        jankThresholdNanos = (long) (1_000_000_000L / refreshRate * JANK_FACTOR);
+    }
+
+    /**
+     * Feeds one frame.
+     *
+     * @param frameTimeNanos vsync time of the frame
+     * @param active         a gesture or the carousel animation is running
+     * @return true when the level changed and effects have to be re-applied
+     */
+    boolean onFrame(long frameTimeNanos, boolean active) {
+        if (!active) {
+            lastFrameNanos = 0;
+            count = 0;
+            return setLevel(LEVEL_FULL);
+        }
+
+        long previous = lastFrameNanos;
+        lastFrameNanos = frameTimeNanos;
+        if (previous == 0) return false;
+        long interval = frameTimeNanos - previous;
+        if (interval <= 0) return false;
+        if (interval > MAX_INTERVAL_NANOS) {
+            count = 0;
+            return false;
+        }
+
+        intervals[head] = interval;
+        head = (head + 1) % WINDOW;
+        if (count < WINDOW) count++;
+        if (count < WINDOW || level == LEVEL_OFF) return false;
+
+        int janky = 0;
+        for (int i = 0; i < WINDOW; i++) {
+            if (intervals[i] > jankThresholdNanos) janky++;
+        }
+        if (janky < JANK_FRAMES_TO_DEGRADE) return false;
+
+        // Новый уровень оцениваем по свежему окну
+        count = 0;
+        return setLevel(level + 1);
+    }
+
+    /** Drops the frame history and returns to full quality, e.g. when Recents is closed. */
+    void reset() {
+        lastFrameNanos = 0;
+        count = 0;
+        head = 0;
+        level = LEVEL_FULL;
+    }
+
+    int level() {
+        return level;
+    }
+
+    /**
+     * Quantizes a blur radius for the current level.
+     *
+     * @return the radius rounded down to the level's step, 0 when blur is off
+     */
+    int quantizeRadius(float raw) {
+        if (level == LEVEL_OFF || raw < 2f) return 0;
+        int step = (level == LEVEL_COARSE) ? COARSE_STEP : FULL_STEP;
+        int radius = ((int) (raw / step)) * step;
+        // Грубый шаг не должен выключать слабый blur целиком
+        return (radius == 0 && level == LEVEL_COARSE) ? FULL_STEP * ((int) (raw / FULL_STEP)) : radius;
+    }
+
+    private boolean setLevel(int newLevel) {
+        if (newLevel == level) return false;
+        level = newLevel;
+        return true;
+    }
+}
@@ -0,0 +1,311 @@
+package org.pixel.customparts.hooks.recents;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Picture;
+import android.graphics.Rect;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.ColorDrawable;
+import android.os.Build;
+import android.view.View;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.pixel.customparts.core.HookTelemetry;
+
+/**
+ * Snapshot blur mode for one task: a downscaled, box-blurred copy of the task
+ * thumbnail is made once and drawn in the thumbnail's ViewOverlay, with a tint
+ * layer above it. While swiping only the two layers' alpha changes, so there is
+ * no RenderEffect and no per-frame GPU blur pass per task.
+ * The copy is made on a background thread; until {@link #isReady()} the caller
+ * keeps the RenderEffect mode for the task, and after {@link #hasFailed()} it
+ * stays there. A HARDWARE thumbnail is scaled down on the GPU first, so only
+ * the small copy is read back.
+ * Main thread only, except for the snapshot job.
+ */
+final class BlurOverlay {
+
+    private static final String TAG = "PixelPartsBlurSnapshot";
+
+    private static final int MIN_DOWNSCALE = 4;
+    private static final int MAX_DOWNSCALE = 32;
+    private static final int BOX_RADIUS = 2;
+
+    private static final HookTelemetry.Counter CNT_CREATE = HookTelemetry.counter("Recents.snapshotCreate");
+    private static final HookTelemetry.Counter CNT_ALPHA_UPDATE = HookTelemetry.counter("Recents.snapshotAlphaUpdate");
+    private static final HookTelemetry.Section SEC_SNAPSHOT = HookTelemetry.section("Recents.snapshotBuild");
+
+    // Путь полей до Bitmap превью для каждого класса thumbnail view; пустой массив - не нашли
+    private static final Map<Class<?>, Field[]> SOURCE_FIELDS = new HashMap<>();
+
+    private static final Paint FILTER_PAINT = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, TAG);
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    final int settingsVersion;
+    private final View host;
+    private final int tintColor;
+    private final int sourceId;
+    private final int sourceGeneration;
+    private BitmapDrawable blur;
+    private ColorDrawable tint;
+    private boolean hostClipToOutline;
+    private boolean failed;
+    private boolean detached;
+    private boolean shown;
+    private int blurAlpha;
+    private int tintAlpha;
+
+    private BlurOverlay(View host, Bitmap source, int tintColor, int settingsVersion) {
+        this.host = host;
+        this.tintColor = tintColor;
+        this.sourceId = System.identityHashCode(source);
+        this.sourceGeneration = source.getGenerationId();
+        this.settingsVersion = settingsVersion;
+    }
+
+    /**
+     * Starts the snapshot of the thumbnail's current bitmap; the layers are attached
+     * once it is ready.
+     *
+     * @param maxBlur blur radius from the settings, picks the downscale factor
+     * @return the pending overlay, or null when there is no usable thumbnail bitmap
+     */
+    static BlurOverlay create(View thumbnail, int maxBlur, int tintColor, int settingsVersion) {
+        if (thumbnail.getWidth() <= 0 || thumbnail.getHeight() <= 0) return null;
+        final Bitmap source = findSource(thumbnail);
+        if (source == null || source.isRecycled()) return null;
+
+        final BlurOverlay overlay = new BlurOverlay(thumbnail, source, tintColor, settingsVersion);
+        final int downscale = Math.max(MIN_DOWNSCALE, Math.min(MAX_DOWNSCALE, maxBlur / 4));
+        try {
+            EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long start = SEC_SNAPSHOT.begin();
+                    Bitmap blurred = null;
+                    try {
+                        blurred = downscaleAndBlur(source, downscale);
+                    } catch (Throwable t) { /* ignore */ }
+                    SEC_SNAPSHOT.end(start);
+                    final Bitmap result = blurred;
+                    overlay.host.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            overlay.attach(result);
+                        }
+                    });
+                }
+            });
+        } catch (Throwable t) {
+            return null;
+        }
+        return overlay;
+    }
+
+    private void attach(Bitmap blurred) {
+        if (detached) {
+            if (blurred != null) blurred.recycle();
+            return;
+        }
+        if (blurred == null) {
+            failed = true;
+            return;
+        }
+        int width = host.getWidth();
+        int height = host.getHeight();
+        blur = new BitmapDrawable(host.getResources(), blurred);
+        blur.setFilterBitmap(true);
+        blur.setBounds(0, 0, width, height);
+        blur.setAlpha(0);
+        tint = new ColorDrawable(tintColor | 0xFF000000);
+        tint.setBounds(0, 0, width, height);
+        tint.setAlpha(0);
+
+        // Слои рисуются поверх превью и обрезаются его контуром; исходное значение вернём в detach
+        hostClipToOutline = host.getClipToOutline();
+        host.setClipToOutline(true);
+        host.getOverlay().add(blur);
+        host.getOverlay().add(tint);
+        CNT_CREATE.inc();
+        // Следующий pre-draw переключит задачу со RenderEffect на снимок
+        host.invalidate();
+    }
+
+    /** True once the snapshot layers are attached. */
+    boolean isReady() {
+        return blur != null;
+    }
+
+    /** True when the snapshot could not be made; the task stays in the RenderEffect mode. */
+    boolean hasFailed() {
+        return failed;
+    }
+
+    /** @return true only on the first call after the overlay became ready */
+    boolean markShown() {
+        if (shown || blur == null) return false;
+        shown = true;
+        return true;
+    }
+
+    /** True when the thumbnail now shows another bitmap than the one the overlay was made from. */
+    boolean isStale() {
+        Bitmap source = findSource(host);
+        return source == null || System.identityHashCode(source) != sourceId
+                || source.getGenerationId() != sourceGeneration;
+    }
+
+    void update(int blurAlpha, int tintAlpha) {
+        if (blur == null) return;
+        int width = host.getWidth();
+        int height = host.getHeight();
+        if (blur.getBounds().width() != width || blur.getBounds().height() != height) {
+            blur.setBounds(0, 0, width, height);
+            tint.setBounds(0, 0, width, height);
+        }
+        if (blurAlpha == this.blurAlpha && tintAlpha == this.tintAlpha) return;
+        this.blurAlpha = blurAlpha;
+        this.tintAlpha = tintAlpha;
+        blur.setAlpha(blurAlpha);
+        tint.setAlpha(tintAlpha);
+        host.invalidate();
+        CNT_ALPHA_UPDATE.inc();
+    }
+
+    void detach() {
+        detached = true;
+        if (blur == null) return;
+        host.getOverlay().remove(blur);
+        host.getOverlay().remove(tint);
+        host.setClipToOutline(hostClipToOutline);
+        blur = null;
+        tint = null;
+    }
+
+    private static Bitmap findSource(View thumbnail) {
+        Field[] path = SOURCE_FIELDS.get(thumbnail.getClass());
+        if (path == null) {
+            path = resolveSourcePath(thumbnail.getClass());
+            SOURCE_FIELDS.put(thumbnail.getClass(), path);
+        }
+        if (path.length == 0) return null;
+        try {
+            Object value = thumbnail;
+            for (Field field : path) {
+                value = field.get(value);
+                if (value == null) return null;
+            }
+            return (Bitmap) value;
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    // Bitmap прямо в view или ThumbnailData.thumbnail, как в TaskThumbnailView
+    private static Field[] resolveSourcePath(Class<?> viewClass) {
+        for (Class<?> c = viewClass; c != null && c != View.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (field.getType() == Bitmap.class) {
+                    field.setAccessible(true);
+                    return new Field[]{field};
+                }
+                if (field.getType().getSimpleName().equals("ThumbnailData")) {
+                    try {
+                        Field thumbnail = field.getType().getDeclaredField("thumbnail");
+                        if (thumbnail.getType() != Bitmap.class) continue;
+                        field.setAccessible(true);
+                        thumbnail.setAccessible(true);
+                        return new Field[]{field, thumbnail};
+                    } catch (NoSuchFieldException e) { /* ignore */ }
+                }
+            }
+        }
+        return new Field[0];
+    }
+
+    private static Bitmap downscaleAndBlur(Bitmap source, int downscale) {
+        int width = Math.max(1, source.getWidth() / downscale);
+        int height = Math.max(1, source.getHeight() / downscale);
+        Bitmap small = scaleDown(source, width, height);
+        if (small == null) return null;
+
+        int[] pixels = new int[width * height];
+        small.getPixels(pixels, 0, width, 0, 0, width, height);
+        if (small != source) small.recycle();
+        int[] scratch = new int[pixels.length];
+        boxBlur(pixels, scratch, width, height, BOX_RADIUS, true);
+        boxBlur(scratch, pixels, width, height, BOX_RADIUS, false);
+        return Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    // Software-копия размером width x height; HARDWARE читаем обратно уже уменьшенным
+    private static Bitmap scaleDown(Bitmap source, int width, int height) {
+        if (Build.VERSION.SDK_INT < 26 || source.getConfig() != Bitmap.Config.HARDWARE) {
+            return Bitmap.createScaledBitmap(source, width, height, true);
+        }
+        if (Build.VERSION.SDK_INT >= 28) {
+            // Масштабирует RenderThread, на CPU приходит только маленький буфер
+            Picture picture = new Picture();
+            Canvas canvas = picture.beginRecording(width, height);
+            canvas.drawBitmap(source, null, new Rect(0, 0, width, height), FILTER_PAINT);
+            picture.endRecording();
+            Bitmap scaled = Bitmap.createBitmap(picture, width, height, Bitmap.Config.HARDWARE);
+            Bitmap software = scaled.copy(Bitmap.Config.ARGB_8888, false);
+            scaled.recycle();
+            return software;
+        }
+        Bitmap software = source.copy(Bitmap.Config.ARGB_8888, false);
+        if (software == null) return null;
+        Bitmap small = Bitmap.createScaledBitmap(software, width, height, true);
+        if (small != software) software.recycle();
+        return small;
+    }
+
+    // Один проход box blur по строкам или столбцам, края повторяются
+    private static void boxBlur(int[] in, int[] out, int width, int height, int radius, boolean horizontal) {
+        int lines = horizontal ? height : width;
+        int length = horizontal ? width : height;
+        int step = horizontal ? 1 : width;
+        int window = radius * 2 + 1;
+        for (int line = 0; line < lines; line++) {
+            int base = horizontal ? line * width : line;
+            int a = 0, r = 0, g = 0, b = 0;
+            for (int i = -radius; i <= radius; i++) {
+                int p = in[base + clamp(i, length) * step];
+                a += p >>> 24;
+                r += (p >> 16) & 0xFF;
+                g += (p >> 8) & 0xFF;
+                b += p & 0xFF;
+            }
+            for (int i = 0; i < length; i++) {
+                out[base + i * step] = ((a / window) << 24) | ((r / window) << 16) | ((g / window) << 8) | (b / window);
+                int add = in[base + clamp(i + radius + 1, length) * step];
+                int sub = in[base + clamp(i - radius, length) * step];
+                a += (add >>> 24) - (sub >>> 24);
+                r += ((add >> 16) & 0xFF) - ((sub >> 16) & 0xFF);
+                g += ((add >> 8) & 0xFF) - ((sub >> 8) & 0xFF);
+                b += (add & 0xFF) - (sub & 0xFF);
+            }
+        }
+    }
+
+    private static int clamp(int index, int length) {
+        return (index < 0) ? 0 : (index >= length ? length - 1 : index);
+    }
+}
@@ -0,0 +1,74 @@
+package org.pixel.customparts.hooks.recents;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+
+import org.pixel.customparts.core.HookTelemetry;
+
+/**
+ * Launcher resources the clear-all button needs, resolved by name once per
+ * configuration. {@code getIdentifier} is a string lookup through the whole
+ * resource table; the overview actions view is inflated again on every
+ * Recents activity start, but the ids only change with the configuration
+ * (locale, ui mode, density, theme/overlay change).
+ * Main thread only.
+ */
+final class ClearAllResources {
+
+    private static final HookTelemetry.Counter CNT_LOOKUP = HookTelemetry.counter("Recents.clearAllIdLookup");
+    private static final HookTelemetry.Counter CNT_RESOLVE = HookTelemetry.counter("Recents.clearAllResolve");
+
+    private static ClearAllResources cached;
+
+    final int containerId;
+    final int screenshotId;
+    final int selectId;
+    final String clearAllText;
+    final int buttonSpacing;
+
+    private final Resources resources;
+    private final int configHash;
+
+    private ClearAllResources(Context context, Resources res, int configHash) {
+        String pkg = context.getPackageName();
+        this.resources = res;
+        this.configHash = configHash;
+        this.containerId = lookup(res, "action_buttons", "id", pkg);
+        this.screenshotId = lookup(res, "action_screenshot", "id", pkg);
+        this.selectId = lookup(res, "action_select", "id", pkg);
+
+        int textId = lookup(res, "recents_clear_all", "string", pkg);
+        if (textId == 0) textId = lookup(res, "clear_all", "string", "android");
+        this.clearAllText = (textId != 0) ? res.getString(textId) : "Clear All";
+
+        int spacingId = lookup(res, "overview_actions_button_spacing", "dimen", pkg);
+        this.buttonSpacing = (spacingId != 0) ? res.getDimensionPixelSize(spacingId) : 24;
+        CNT_RESOLVE.inc();
+    }
+
+    /** Resources for {@code context}, resolved again only when its Resources or configuration changed. */
+    static ClearAllResources get(Context context) {
+        Resources res = context.getResources();
+        // hashCode конфигурации включает локаль, uiMode, плотность и assetsSeq (смена темы/оверлеев)
+        int configHash = configHash(res.getConfiguration());
+        ClearAllResources current = cached;
+        if (current != null && current.resources == res && current.configHash == configHash) {
+            return current;
+        }
+        current = new ClearAllResources(context, res, configHash);
+        cached = current;
+        return current;
+    }
+
+    private static int configHash(Configuration config) {
+        return (config != null) ? config.hashCode() : 0;
+    }
+
+    @SuppressLint("DiscouragedApi")
+    private static int lookup(Resources res, String name, String type, String pkg) {
+        CNT_LOOKUP.inc();
+        return res.getIdentifier(name, type, pkg);
+    }
+}
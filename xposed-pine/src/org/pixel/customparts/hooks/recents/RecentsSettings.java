@@ -0,0 +1,97 @@
+package org.pixel.customparts.hooks.recents;
+
+/**
+ * Immutable snapshot of the Recents settings. The hook swaps the whole object
+ * when a setting changes, so the pre-draw pass reads one volatile reference and
+ * sees a consistent set of values; {@link #version} grows with every swap.
+ */
+final class RecentsSettings {
+
+    final int version;
+    final boolean enabled;
+
+    // Carousel
+    final int spacingOffset;
+    final float scaleMin;
+    final float alphaMin;
+    final int maxBlur;
+    final boolean blurOverflow;
+    // Один размытый снимок на задачу вместо RenderEffect
+    final boolean blurSnapshot;
+    final int tintColor;
+    final float maxTintIntensity;
+    final float iconOffsetX;
+    final float iconOffsetY;
+    final boolean hasIconOffset;
+
+    // Misc
+    final boolean commonScaleEnabled;
+    final int commonScalePercent;
+    final boolean disableLiveTile;
+    // Множитель размера задачи для calculate*TaskSize; 1 - не масштабировать
+    final float taskSizeScale;
+
+    // Clear All
+    final boolean clearAllEnabled;
+    final int clearAllMode;
+    final float clearAllMargin;
+
+    RecentsSettings(int version, boolean enabled,
+                    int spacingOffset, float scaleMin, float alphaMin,
+                    int maxBlur, boolean blurOverflow, boolean blurSnapshot, int tintColor, float maxTintIntensity,
+                    float iconOffsetX, float iconOffsetY,
+                    boolean commonScaleEnabled, int commonScalePercent, boolean disableLiveTile,
+                    boolean clearAllEnabled, int clearAllMode, float clearAllMargin) {
+        this.version = version;
+        this.enabled = enabled;
+        this.spacingOffset = spacingOffset;
+        this.scaleMin = scaleMin;
+        this.alphaMin = alphaMin;
+        this.maxBlur = maxBlur;
+        this.blurOverflow = blurOverflow;
+        this.blurSnapshot = blurSnapshot;
+        this.tintColor = tintColor;
+        this.maxTintIntensity = maxTintIntensity;
+        this.iconOffsetX = iconOffsetX;
+        this.iconOffsetY = iconOffsetY;
+        this.hasIconOffset = (Math.abs(iconOffsetX) > 0.1f || Math.abs(iconOffsetY) > 0.1f);
+        this.commonScaleEnabled = commonScaleEnabled;
+        this.commonScalePercent = commonScalePercent;
+        this.disableLiveTile = disableLiveTile;
+        this.taskSizeScale = (enabled && commonScaleEnabled && commonScalePercent != 100)
+                ? TaskGeometry.scaleForPercent(commonScalePercent) : 1f;
+        this.clearAllEnabled = clearAllEnabled;
+        this.clearAllMode = clearAllMode;
+        this.clearAllMargin = clearAllMargin;
+    }
+
+    /**
+     * True when the carousel only changes each task's own alpha/scale/translation:
+     * no blur, tint or icon offset that would redraw the task's content every frame.
+     */
+    boolean transformOnly() {
+        return maxBlur <= 0 && maxTintIntensity <= 0f && !hasIconOffset;
+    }
+
+    /** True when every value except {@link #version} is the same. */
+    boolean sameValues(RecentsSettings other) {
+        return other != null
+                && enabled == other.enabled
+                && spacingOffset == other.spacingOffset
+                && scaleMin == other.scaleMin
+                && alphaMin == other.alphaMin
+                && maxBlur == other.maxBlur
+                && blurOverflow == other.blurOverflow
+                && blurSnapshot == other.blurSnapshot
+                && tintColor == other.tintColor
+                && maxTintIntensity == other.maxTintIntensity
+                && iconOffsetX == other.iconOffsetX
+                && iconOffsetY == other.iconOffsetY
+                && commonScaleEnabled == other.commonScaleEnabled
+                && commonScalePercent == other.commonScalePercent
+                && disableLiveTile == other.disableLiveTile
+                && clearAllEnabled == other.clearAllEnabled
+                && clearAllMode == other.clearAllMode
+                && clearAllMargin == other.clearAllMargin;
+    }
+}
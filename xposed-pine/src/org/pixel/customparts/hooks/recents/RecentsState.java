@@ -13,20 +13,9 @@ public class RecentsState {
     public static final int TAG_PENDING_END_TARGET = 0x7F0B0003;
     public static final int TAG_ICON_ORIG_DELEGATE = 0x7F0B0004;
 
-    // Теги для хранения системных значений (до модификации)
-    public static final int TAG_SYS_TRANS_X = 0x7F0B0010;
-    public static final int TAG_SYS_STABLE_ALPHA = 0x7F0B0011;
-    public static final int TAG_SYS_NON_GRID_SCALE = 0x7F0B0012;
-
-    // Теги для кеширования вычисленных значений (для оптимизации)
-    public static final int TAG_CACHE_LAST_RADIUS = 0x7F0B0020;
-    public static final int TAG_CACHE_LAST_TINT_ALPHA = 0x7F0B0021;
-    public static final int TAG_CACHE_THUMBNAIL_VIEW = 0x7F0B0022;
-
-    // Теги для хранения примененных оффсетов (чтобы не накладывать дважды)
-    public static final int TAG_OFFSET_TRANS = 0x7F0B0030;
-    public static final int TAG_OFFSET_SCALE = 0x7F0B0031;
-    public static final int TAG_OFFSET_ALPHA = 0x7F0B0032;
+    // Состояние карусели: таблица на RecentsView и слот в ней на каждом дочернем view
+    public static final int TAG_EFFECT_TABLE = 0x7F0B0005;
+    public static final int TAG_EFFECT_SLOT = 0x7F0B0006;
 
     // ThreadLocal для предотвращения рекурсии (когда хук вызывает метод, который тоже хукнут)
     public static final ThreadLocal<Boolean> applyingEffects = new ThreadLocal<Boolean>() {
@@ -1,22 +1,24 @@
 package org.pixel.customparts.hooks.recents;
 
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
 import android.animation.ValueAnimator;
-import android.annotation.SuppressLint;
 import android.content.Context;
-import android.content.res.Resources;
 import android.graphics.Color;
-import android.graphics.PorterDuff;
-import android.graphics.PorterDuffColorFilter;
 import android.graphics.Rect;
 import android.graphics.RenderEffect;
-import android.graphics.Shader;
+import android.net.Uri;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.SystemClock;
 import android.view.ContextThemeWrapper;
+import android.view.Display;
 import android.view.Gravity;
 import android.view.TouchDelegate;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewParent;
 import android.view.ViewTreeObserver;
 import android.view.animation.DecelerateInterpolator;
 import android.widget.Button;
@@ -33,37 +35,11 @@ import de.robv.android.xposed.XC_MethodHook;
 import de.robv.android.xposed.XposedBridge;
 import de.robv.android.xposed.XposedHelpers;
 import org.pixel.customparts.core.BaseHook;
+import org.pixel.customparts.core.HookTelemetry;
+import org.pixel.customparts.core.SettingsWatcher;
 
 public class RecentsUnifiedHook extends BaseHook {
 
-    // --- STATIC SETTINGS ---
-    private static class Settings {
-        static boolean loaded = false;
-        static boolean enabled = false;
-        
-        // Carousel
-        static int spacingOffset = 0;
-        static float scaleMin = 1.0f;
-        static float alphaMin = 1.0f;
-        static int maxBlur = 0;
-        static boolean blurOverflow = false;
-        static int tintColor = Color.BLACK;
-        static float maxTintIntensity = 0f;
-        static float iconOffsetX = 0f;
-        static float iconOffsetY = 0f;
-        static boolean hasIconOffset = false;
-        
-        // Misc
-        static boolean commonScaleEnabled = false;
-        static int commonScalePercent = 100;
-        static boolean disableLiveTile = false;
-
-        // Clear All
-        static boolean clearAllEnabled = false;
-        static int clearAllMode = 0;
-        static float clearAllMargin = 3.0f;
-    }
-
     // --- KEYS ---
     private static final String KEY_ENABLE = "launcher_recents_modify_enable";
     private static final String KEY_SPACING = "launcher_recents_carousel_spacing";
@@ -71,6 +47,7 @@ public class RecentsUnifiedHook extends BaseHook {
     private static final String KEY_ALPHA = "launcher_recents_carousel_alpha";
     private static final String KEY_BLUR_RADIUS = "launcher_recents_carousel_blur_radius";
     private static final String KEY_BLUR_OVERFLOW = "launcher_recents_carousel_blur_overflow";
+    private static final String KEY_BLUR_SNAPSHOT = "launcher_recents_carousel_blur_snapshot";
     private static final String KEY_TINT_COLOR = "launcher_recents_carousel_tint_color";
     private static final String KEY_TINT_INTENSITY = "launcher_recents_carousel_tint_intensity";
     private static final String KEY_ICON_OFFSET_X = "launcher_recents_carousel_icon_offset_x";
@@ -84,6 +61,14 @@ public class RecentsUnifiedHook extends BaseHook {
     private static final String KEY_CLEAR_ALL_MODE = "launcher_replace_on_clear";
     private static final String KEY_CLEAR_ALL_MARGIN = "launcher_clear_all_bottom_margin";
 
+    private static final String[] SETTINGS_KEYS = {
+            KEY_ENABLE, KEY_SPACING, KEY_CAROUSEL_SCALE, KEY_ALPHA, KEY_BLUR_RADIUS, KEY_BLUR_OVERFLOW,
+            KEY_BLUR_SNAPSHOT,
+            KEY_TINT_COLOR, KEY_TINT_INTENSITY, KEY_ICON_OFFSET_X, KEY_ICON_OFFSET_Y, KEY_DISABLE_LIVETILE,
+            KEY_COMMON_SCALE_ENABLE, KEY_COMMON_SCALE_PERCENT,
+            KEY_CLEAR_ALL_ENABLED, KEY_CLEAR_ALL_MODE, KEY_CLEAR_ALL_MARGIN
+    };
+
     // --- CONSTANTS ---
     private static final String CLASS_OVERVIEW_ACTIONS = "com.android.quickstep.views.OverviewActionsView";
     private static final String TAG_CLEAR_ALL_BTN = "custom_clear_all_btn";
@@ -92,17 +77,56 @@ public class RecentsUnifiedHook extends BaseHook {
     private static final int CLEAR_MODE_REPLACE_SCREENSHOT = 1;
     private static final int CLEAR_MODE_REPLACE_SELECT = 2;
 
-    // --- TAGS ---
-    private static final int TAG_CACHE_ICONS = "cache_icons_list".hashCode();
-    private static final int TAG_CACHE_LAST_RADIUS = "cache_last_radius".hashCode();
-    private static final int TAG_CACHE_LAST_TINT = "cache_last_tint".hashCode();
+    // Методы BaseContainerInterface, считающие размер задачи в Recents
+    private static final String[] TASK_SIZE_METHODS = {
+            "calculateTaskSize", "calculateGridTaskSize", "calculateFocusTaskSize",
+            "calculateCarouselTaskSize", "calculateModalTaskSize"
+    };
+
+    private static final HookTelemetry.Counter CNT_TRANSLATION_COMPOSE = HookTelemetry.counter("Recents.translationCompose");
+    private static final HookTelemetry.Counter CNT_SETTINGS_RELOAD = HookTelemetry.counter("Recents.settingsReload");
+    private static final HookTelemetry.Counter CNT_SETTINGS_INVALIDATE = HookTelemetry.counter("Recents.settingsInvalidate");
+    private static final HookTelemetry.Section SEC_PRE_DRAW = HookTelemetry.section("Recents.preDraw");
+    private static final HookTelemetry.Counter CNT_PRE_DRAW_IDLE = HookTelemetry.counter("Recents.preDrawIdle");
+    private static final HookTelemetry.Counter CNT_CHILD_UPDATES = HookTelemetry.counter("Recents.childUpdates");
+    private static final HookTelemetry.Counter CNT_CHILD_PARKED = HookTelemetry.counter("Recents.childParked");
+    private static final HookTelemetry.Counter CNT_BLUR_LEVEL = HookTelemetry.counter("Recents.blurLevelChange");
+    private static final HookTelemetry.Counter CNT_ENTRY_ANIM_START = HookTelemetry.counter("Recents.entryAnimStart");
+    private static final HookTelemetry.Counter CNT_ENTRY_ANIM_SKIPPED = HookTelemetry.counter("Recents.entryAnimSkipped");
+    private static final HookTelemetry.Histogram HIST_ENTRY_INVALIDATES =
+            HookTelemetry.histogram("Recents.entryAnimInvalidates", "invalidates", 0, 4, 8, 12, 16, 24, 32);
+
+    // --- SETTINGS ---
+    // Заменяется целиком при изменении настроек; горячие пути читают ссылку один раз
+    private volatile RecentsSettings settings;
+    private SettingsWatcher settingsWatcher;
+    private int settingsVersion;
+    private boolean reloadPending;
+
+    // false - applyTranslationX не нашёлся, трансляцию лаунчера проверяем каждый кадр
+    private boolean translationComposed;
+
+    // Общие для всех TaskView эффекты blur/tint
+    private final RenderEffectCache effectCache = new RenderEffectCache();
+    // Глубина вложенных вызовов calculate*TaskSize: масштабирует только внешний
+    private final ThreadLocal<int[]> taskSizeDepth = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+    // Понижает качество blur, пока жест не укладывается в кадр
+    private final BlurGovernor blurGovernor = new BlurGovernor();
 
-    // --- REFLECTION (Only needed for render effect now) ---
-    private Method setRenderEffectMethod;
-    
     // Ссылка на RecentsView для кнопки очистки
     private static WeakReference<ViewGroup> recentsViewRef = null;
 
+    // Последняя добавленная кнопка очистки и найденный контейнер кнопок overview actions
+    private WeakReference<View> clearAllButtonRef;
+    private WeakReference<ViewGroup> actionsParentRef;
+    private WeakReference<ViewGroup> actionsContainerRef;
+    private final StateMirror clearAllMirror = new StateMirror();
+
     @Override
     public String getHookId() {
         return "RecentsUnifiedHook";
@@ -115,57 +139,126 @@ public class RecentsUnifiedHook extends BaseHook {
 
     @Override
     public boolean isEnabled(Context context) {
-        if (!Settings.loaded) loadSettings(context);
-        return Settings.enabled || Settings.clearAllEnabled;
+        RecentsSettings cfg = getSettings(context);
+        return cfg.enabled || cfg.clearAllEnabled;
     }
 
-    private void loadSettings(Context context) {
-        Settings.enabled = isSettingEnabled(context, KEY_ENABLE);
-        Settings.clearAllEnabled = isSettingEnabled(context, KEY_CLEAR_ALL_ENABLED);
-        
-        if (Settings.enabled) {
-            Settings.spacingOffset = getIntSetting(context, KEY_SPACING, 0);
-            Settings.scaleMin = getFloatSetting(context, KEY_CAROUSEL_SCALE, 1.0f);
-            Settings.alphaMin = getFloatSetting(context, KEY_ALPHA, 1.0f);
+    private RecentsSettings getSettings(Context context) {
+        RecentsSettings cfg = settings;
+        if (cfg != null) return cfg;
+        synchronized (this) {
+            if (settings == null) {
+                settings = loadSettings(context);
+                watchSettings(context);
+            }
+            return settings;
+        }
+    }
+
+    private RecentsSettings loadSettings(Context context) {
+        boolean enabled = isSettingEnabled(context, KEY_ENABLE);
+        boolean clearAllEnabled = isSettingEnabled(context, KEY_CLEAR_ALL_ENABLED);
+
+        int spacingOffset = 0;
+        float scaleMin = 1.0f;
+        float alphaMin = 1.0f;
+        int maxBlur = 0;
+        boolean blurOverflow = false;
+        boolean blurSnapshot = false;
+        int tintColor = Color.BLACK;
+        float maxTintIntensity = 0f;
+        float iconOffsetX = 0f;
+        float iconOffsetY = 0f;
+        boolean commonScaleEnabled = false;
+        int commonScalePercent = 100;
+        boolean disableLiveTile = false;
+        int clearAllMode = CLEAR_MODE_BOTTOM;
+        float clearAllMargin = 3.0f;
+
+        if (enabled) {
+            spacingOffset = getIntSetting(context, KEY_SPACING, 0);
+            scaleMin = getFloatSetting(context, KEY_CAROUSEL_SCALE, 1.0f);
+            alphaMin = getFloatSetting(context, KEY_ALPHA, 1.0f);
 
             if (Build.VERSION.SDK_INT >= 31) {
-                Settings.maxBlur = getIntSetting(context, KEY_BLUR_RADIUS, 0);
-                Settings.blurOverflow = isSettingEnabled(context, KEY_BLUR_OVERFLOW, false);
+                maxBlur = getIntSetting(context, KEY_BLUR_RADIUS, 0);
+                blurOverflow = isSettingEnabled(context, KEY_BLUR_OVERFLOW, false);
+                blurSnapshot = isSettingEnabled(context, KEY_BLUR_SNAPSHOT, false);
                 int tintInt = getIntSetting(context, KEY_TINT_INTENSITY, 0);
                 if (tintInt > 0) {
-                    Settings.tintColor = getIntSetting(context, KEY_TINT_COLOR, Color.BLACK);
-                    Settings.maxTintIntensity = tintInt / 100f;
-                } else {
-                    Settings.maxTintIntensity = 0f;
+                    tintColor = getIntSetting(context, KEY_TINT_COLOR, Color.BLACK);
+                    maxTintIntensity = tintInt / 100f;
                 }
             }
 
-            float ox = getIntSetting(context, KEY_ICON_OFFSET_X, 0);
-            float oy = getIntSetting(context, KEY_ICON_OFFSET_Y, 0);
-            Settings.iconOffsetX = ox;
-            Settings.iconOffsetY = oy;
-            Settings.hasIconOffset = (Math.abs(ox) > 0.1f || Math.abs(oy) > 0.1f);
+            iconOffsetX = getIntSetting(context, KEY_ICON_OFFSET_X, 0);
+            iconOffsetY = getIntSetting(context, KEY_ICON_OFFSET_Y, 0);
 
-            Settings.commonScaleEnabled = isSettingEnabled(context, KEY_COMMON_SCALE_ENABLE);
-            Settings.commonScalePercent = getIntSetting(context, KEY_COMMON_SCALE_PERCENT, 100);
-            Settings.disableLiveTile = isSettingEnabled(context, KEY_DISABLE_LIVETILE, false);
+            commonScaleEnabled = isSettingEnabled(context, KEY_COMMON_SCALE_ENABLE);
+            commonScalePercent = getIntSetting(context, KEY_COMMON_SCALE_PERCENT, 100);
+            disableLiveTile = isSettingEnabled(context, KEY_DISABLE_LIVETILE, false);
         }
 
-        if (Settings.clearAllEnabled) {
-            Settings.clearAllMode = getIntSetting(context, KEY_CLEAR_ALL_MODE, CLEAR_MODE_BOTTOM);
-            Settings.clearAllMargin = getFloatSetting(context, KEY_CLEAR_ALL_MARGIN, 3.0f);
+        if (clearAllEnabled) {
+            clearAllMode = getIntSetting(context, KEY_CLEAR_ALL_MODE, CLEAR_MODE_BOTTOM);
+            clearAllMargin = getFloatSetting(context, KEY_CLEAR_ALL_MARGIN, 3.0f);
         }
-        
-        Settings.loaded = true;
+
+        return new RecentsSettings(++settingsVersion, enabled,
+                spacingOffset, scaleMin, alphaMin,
+                maxBlur, blurOverflow, blurSnapshot, tintColor, maxTintIntensity,
+                iconOffsetX, iconOffsetY,
+                commonScaleEnabled, commonScalePercent, disableLiveTile,
+                clearAllEnabled, clearAllMode, clearAllMargin);
+    }
+
+    private void watchSettings(Context context) {
+        Context appContext = context.getApplicationContext();
+        final Context settingsContext = (appContext != null) ? appContext : context;
+        String[] keys = new String[SETTINGS_KEYS.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = resolveSettingKey(SETTINGS_KEYS[i]);
+        }
+        final Handler handler = new Handler(Looper.getMainLooper());
+        final Runnable reload = new Runnable() {
+            @Override
+            public void run() {
+                reloadPending = false;
+                reloadSettings(settingsContext);
+            }
+        };
+        settingsWatcher = SettingsWatcher.watch(settingsContext, keys, new SettingsWatcher.Listener() {
+            @Override
+            public void onSettingsChanged(Uri uri) {
+                // Несколько ключей, записанных подряд, перечитываются одним проходом
+                if (reloadPending) return;
+                reloadPending = true;
+                handler.post(reload);
+            }
+        });
+    }
+
+    private void reloadSettings(Context context) {
+        CNT_SETTINGS_RELOAD.inc();
+        RecentsSettings fresh = loadSettings(context);
+        if (fresh.sameValues(settings)) return;
+
+        // Снимаем эффекты, применённые со старыми значениями, и один раз перекладываем Recents
+        ViewGroup recents = (recentsViewRef != null) ? recentsViewRef.get() : null;
+        if (recents != null) {
+            TaskEffectTable table = effectTableOf(recents);
+            resetEffectsOnChildren(recents, table);
+            table.dropOverlays();
+        }
+        effectCache.clear();
+        settings = fresh;
+        CNT_SETTINGS_INVALIDATE.inc();
+        if (recents != null) recents.requestLayout();
     }
 
     @Override
     protected void onInit(ClassLoader classLoader) {
         try {
-            if (Build.VERSION.SDK_INT >= 31) {
-                setRenderEffectMethod = View.class.getMethod("setRenderEffect", RenderEffect.class);
-            }
-            
             Class<?> taskViewClass = XposedHelpers.findClass(RecentsState.CLASS_TASK_VIEW, classLoader);
             Class<?> recentsViewClass = XposedHelpers.findClass(RecentsState.CLASS_RECENTS_VIEW, classLoader);
             Class<?> overviewActionsClass = XposedHelpers.findClass(CLASS_OVERVIEW_ACTIONS, classLoader);
@@ -200,14 +293,20 @@ public class RecentsUnifiedHook extends BaseHook {
                 
                 recentsViewRef = new WeakReference<>(view);
 
-                if (!Settings.loaded) loadSettings(view.getContext());
+                getSettings(view.getContext());
 
                 if (view.getTag(RecentsState.TAG_HOOK_INSTALLED) != null) return;
 
+                final TaskEffectTable table = effectTableOf(view);
                 final ViewTreeObserver.OnPreDrawListener listener = new ViewTreeObserver.OnPreDrawListener() {
                     @Override
                     public boolean onPreDraw() {
-                        return handlePreDraw(view);
+                        long start = SEC_PRE_DRAW.begin();
+                        try {
+                            return handlePreDraw(view, table);
+                        } finally {
+                            SEC_PRE_DRAW.end(start);
+                        }
                     }
                 };
 
@@ -256,7 +355,8 @@ public class RecentsUnifiedHook extends BaseHook {
                 RecentsState.isGestureInProgress = false;
                 ViewGroup view = (ViewGroup) param.thisObject;
                 
-                if (Settings.enabled && Settings.disableLiveTile) {
+                RecentsSettings cfg = settings;
+                if (cfg != null && cfg.enabled && cfg.disableLiveTile) {
                     disableLiveTile(view);
                 }
 
@@ -265,6 +365,8 @@ public class RecentsUnifiedHook extends BaseHook {
                     RecentsState.isInRecentsMode = true;
                     RecentsState.enteringRecentsUntil = 0L;
                 }
+                // Вернуть полный blur, даже если следующий кадр не запланирован
+                if (blurGovernor.level() != BlurGovernor.LEVEL_FULL) view.invalidate();
             }
         });
 
@@ -293,6 +395,8 @@ public class RecentsUnifiedHook extends BaseHook {
                 @Override
                 protected void afterHookedMethod(MethodHookParam param) {
                     ViewGroup view = (ViewGroup) param.thisObject;
+                    Object table = view.getTag(RecentsState.TAG_EFFECT_TABLE);
+                    if (table instanceof TaskEffectTable) ((TaskEffectTable) table).invalidateInputs();
                     if (view.getVisibility() == View.VISIBLE && !RecentsState.isGestureInProgress 
                         && !RecentsState.isInRecentsMode && RecentsState.carouselIntensity < 0.5f
                         && view.getChildCount() > 0) {
@@ -308,22 +412,38 @@ public class RecentsUnifiedHook extends BaseHook {
     
     private void hookTaskViewInterceptors(Class<?> taskViewClass) {
         // ЧИТАЕМ системные значения, но НЕ ИСПОЛЬЗУЕМ invoke в onPreDraw
-        
-        XposedBridge.hookAllMethods(View.class, "setTranslationX", new XC_MethodHook() {
-            @Override
-            protected void beforeHookedMethod(MethodHookParam param) {
-                if (Boolean.TRUE.equals(RecentsState.applyingEffects.get())) return;
-                if (taskViewClass.isInstance(param.thisObject)) {
-                    ((View) param.thisObject).setTag(RecentsState.TAG_SYS_TRANS_X, param.args[0]);
+
+        // TaskView складывает все свои translation-свойства в applyTranslationX;
+        // после него добавляем смещение карусели. Остальные view лаунчера не трогаем.
+        boolean composed = false;
+        try {
+            composed = !XposedBridge.hookAllMethods(taskViewClass, "applyTranslationX", new XC_MethodHook() {
+                @Override
+                protected void afterHookedMethod(MethodHookParam param) {
+                    CNT_TRANSLATION_COMPOSE.inc();
+                    View view = (View) param.thisObject;
+                    TaskEffectTable.Slot slot = interceptorSlot(view);
+                    if (slot == null) return;
+                    float sysTrans = view.getTranslationX();
+                    slot.table.sysTransX[slot.index] = sysTrans;
+                    slot.table.markDirty(slot.index);
+                    float offset = slot.table.offsetTrans[slot.index];
+                    if (offset != 0f) view.setTranslationX(sysTrans + offset);
                 }
-            }
-        });
+            }).isEmpty();
+        } catch (Throwable t) {}
+        translationComposed = composed;
+        if (!composed) log("TaskView.applyTranslationX not found, translation is detected in pre-draw");
 
         XposedHelpers.findAndHookMethod(taskViewClass, "setStableAlpha", float.class, new XC_MethodHook() {
             @Override
             protected void beforeHookedMethod(MethodHookParam param) {
                 if (Boolean.TRUE.equals(RecentsState.applyingEffects.get())) return;
-                ((View) param.thisObject).setTag(RecentsState.TAG_SYS_STABLE_ALPHA, param.args[0]);
+                TaskEffectTable.Slot slot = interceptorSlot((View) param.thisObject);
+                if (slot != null) {
+                    slot.table.sysAlpha[slot.index] = (Float) param.args[0];
+                    slot.table.markDirty(slot.index);
+                }
             }
         });
 
@@ -331,54 +451,153 @@ public class RecentsUnifiedHook extends BaseHook {
             @Override
             protected void beforeHookedMethod(MethodHookParam param) {
                 if (Boolean.TRUE.equals(RecentsState.applyingEffects.get())) return;
-                ((View) param.thisObject).setTag(RecentsState.TAG_SYS_NON_GRID_SCALE, param.args[0]);
+                TaskEffectTable.Slot slot = interceptorSlot((View) param.thisObject);
+                if (slot != null) {
+                    slot.table.sysScale[slot.index] = (Float) param.args[0];
+                    slot.table.markDirty(slot.index);
+                }
             }
         });
+
+        // TaskView переиспользуется через пул: при возврате в пул слот освобождается,
+        // после bind к другой задаче кеш иконок и превью строится заново
+        try {
+            XposedBridge.hookAllMethods(taskViewClass, "onRecycle", new XC_MethodHook() {
+                @Override
+                protected void beforeHookedMethod(MethodHookParam param) {
+                    TaskEffectTable.Slot slot = TaskEffectTable.slotOf((View) param.thisObject);
+                    if (slot != null) slot.table.release((View) param.thisObject);
+                }
+            });
+            XposedBridge.hookAllMethods(taskViewClass, "bind", new XC_MethodHook() {
+                @Override
+                protected void afterHookedMethod(MethodHookParam param) {
+                    TaskEffectTable.Slot slot = TaskEffectTable.slotOf((View) param.thisObject);
+                    if (slot != null && slot.index >= 0) slot.table.invalidateContent(slot.index);
+                }
+            });
+        } catch (Throwable t) {}
+    }
+
+    private static TaskEffectTable effectTableOf(View recentsView) {
+        Object tag = recentsView.getTag(RecentsState.TAG_EFFECT_TABLE);
+        if (tag instanceof TaskEffectTable) return (TaskEffectTable) tag;
+        TaskEffectTable table = new TaskEffectTable();
+        recentsView.setTag(RecentsState.TAG_EFFECT_TABLE, table);
+        return table;
+    }
+
+    private static TaskEffectTable.Slot interceptorSlot(View taskView) {
+        TaskEffectTable.Slot slot = TaskEffectTable.slotOf(taskView);
+        if (slot == null) {
+            ViewParent parent = taskView.getParent();
+            if (!(parent instanceof View)) return null;
+            Object table = ((View) parent).getTag(RecentsState.TAG_EFFECT_TABLE);
+            if (!(table instanceof TaskEffectTable)) return null;
+            slot = ((TaskEffectTable) table).attach(taskView);
+        }
+        return (slot.index >= 0) ? slot : null;
     }
 
     // =========================================================================
     // SECTION 3: PRE-DRAW LOGIC
     // =========================================================================
 
-    private boolean handlePreDraw(ViewGroup recentsView) {
-        if (!Settings.enabled) return true;
+    private boolean handlePreDraw(ViewGroup recentsView, TaskEffectTable table) {
+        RecentsSettings cfg = settings;
+        if (cfg == null || !cfg.enabled) return true;
 
+        // Вне Recents сбрасываем эффекты один раз, дальше ничего не делаем
         if (!RecentsState.isInRecentsMode && !RecentsState.isAnimatingExit && !RecentsState.isGestureInProgress) {
-            resetEffectsOnChildren(recentsView);
+            if (table.effectsApplied) resetEffectsOnChildren(recentsView, table);
+            else CNT_PRE_DRAW_IDLE.inc();
             return true;
         }
 
         float intensity = RecentsState.carouselIntensity;
         if (intensity <= 0f) {
-            if (!RecentsState.isGestureInProgress) resetEffectsOnChildren(recentsView);
+            if (!RecentsState.isGestureInProgress && table.effectsApplied) resetEffectsOnChildren(recentsView, table);
             return true;
         }
 
-        int spacingVal = (int) (Settings.spacingOffset * intensity);
-        float scaleVal = 1.0f + ((Settings.scaleMin - 1.0f) * intensity);
-        float alphaVal = 1.0f - ((1.0f - Settings.alphaMin) * intensity);
-        float blurVal = Settings.maxBlur * intensity;
-        float tintVal = Settings.maxTintIntensity * intensity;
-        float offX = Settings.iconOffsetX * intensity;
-        float offY = Settings.iconOffsetY * intensity;
+        if (cfg.maxBlur > 0 && !cfg.blurSnapshot) {
+            ValueAnimator anim = RecentsState.carouselAnimator;
+            boolean active = RecentsState.isGestureInProgress || (anim != null && anim.isRunning());
+            if (blurGovernor.onFrame(System.nanoTime(), active)) {
+                table.invalidateInputs();
+                CNT_BLUR_LEVEL.inc();
+            }
+        }
 
-        int screenCenter = recentsView.getScrollX() + recentsView.getWidth() / 2;
         int childCount = recentsView.getChildCount();
+        boolean inputsChanged = table.updateInputs(recentsView.getScrollX(), recentsView.getWidth(),
+                childCount, intensity, cfg.version);
+        if (!inputsChanged && !table.anyDirty && translationComposed) {
+            CNT_PRE_DRAW_IDLE.inc();
+            return true;
+        }
+        table.anyDirty = false;
+        table.effectsApplied = true;
+
+        int spacingVal = (int) (cfg.spacingOffset * intensity);
+        float scaleVal = 1.0f + ((cfg.scaleMin - 1.0f) * intensity);
+        float alphaVal = 1.0f - ((1.0f - cfg.alphaMin) * intensity);
+        float blurVal = cfg.maxBlur * intensity;
+        float tintVal = cfg.maxTintIntensity * intensity;
+        float offX = cfg.iconOffsetX * intensity;
+        float offY = cfg.iconOffsetY * intensity;
+
+        int scrollX = recentsView.getScrollX();
+        int width = recentsView.getWidth();
+        int screenCenter = scrollX + width / 2;
+        float influenceDist = width * 0.55f;
+
+        // Окно, где эффекты видны: экран плюс зона влияния; дальше фактор всё равно 1,
+        // такие задачи один раз возвращаются в исходное состояние и не трогаются
+        float cullMargin = influenceDist + Math.abs(spacingVal);
+        float windowLeft = scrollX - cullMargin;
+        float windowRight = scrollX + width + cullMargin;
 
         RecentsState.applyingEffects.set(true);
         try {
             for (int i = 0; i < childCount; i++) {
                 View child = recentsView.getChildAt(i);
                 if (child == null) continue;
-                if (child.getClass().getSimpleName().contains("ClearAll")) continue;
+                int slot = table.attach(child).index;
+                if (slot < 0) continue;
 
                 // --- 1. SPACING ---
-                Object sysTransObj = child.getTag(RecentsState.TAG_SYS_TRANS_X);
-                float sysTrans = (sysTransObj instanceof Float) ? (Float) sysTransObj : child.getTranslationX();
-                if (sysTransObj == null) child.setTag(RecentsState.TAG_SYS_TRANS_X, sysTrans);
+                // Если трансляция не та, что мы выставили, её поменял лаунчер мимо applyTranslationX
+                float sysTrans = table.sysTransX[slot];
+                float currentTrans = child.getTranslationX();
+                if (Float.isNaN(sysTrans)) {
+                    sysTrans = currentTrans - table.offsetTrans[slot];
+                    table.sysTransX[slot] = sysTrans;
+                } else if (Math.abs(currentTrans - (sysTrans + table.offsetTrans[slot])) > 0.01f) {
+                    sysTrans = currentTrans;
+                    table.sysTransX[slot] = sysTrans;
+                    table.dirty[slot] = true;
+                }
+
+                if (child.getRight() + sysTrans < windowLeft || child.getLeft() + sysTrans > windowRight) {
+                    if (!table.parked[slot]) {
+                        parkChild(child, table, slot);
+                        table.parked[slot] = true;
+                        CNT_CHILD_PARKED.inc();
+                    }
+                    continue;
+                }
+                if (table.parked[slot]) {
+                    table.parked[slot] = false;
+                    table.dirty[slot] = true;
+                }
+
+                // Входы этого ребёнка не менялись - всё уже применено
+                if (!inputsChanged && !table.dirty[slot]) continue;
+                table.dirty[slot] = false;
+                CNT_CHILD_UPDATES.inc();
 
                 float childCenter = (child.getLeft() + child.getRight()) / 2f + sysTrans;
-                float influenceDist = recentsView.getWidth() * 0.55f;
                 float dist = Math.abs(screenCenter - childCenter);
                 float factor = (influenceDist <= 0 || dist > influenceDist) ? 1.0f : (dist / influenceDist);
 
@@ -389,11 +608,12 @@ public class RecentsUnifiedHook extends BaseHook {
                 }
                 
                 child.setTranslationX(sysTrans + spacingOffset);
-                child.setTag(RecentsState.TAG_OFFSET_TRANS, spacingOffset);
+                table.offsetTrans[slot] = spacingOffset;
 
                 // --- 2. SCALE ---
-                Object sysScaleObj = child.getTag(RecentsState.TAG_SYS_NON_GRID_SCALE);
-                float sysScale = (sysScaleObj instanceof Float) ? (Float) sysScaleObj : 1.0f;
+                float sysScale = table.sysScale[slot];
+                boolean hasSysScale = !Float.isNaN(sysScale);
+                if (!hasSysScale) sysScale = 1.0f;
                 
                 if (Math.abs(scaleVal - 1.0f) > 0.001f) {
                     float s = 1.0f - ((1.0f - scaleVal) * factor);
@@ -401,34 +621,37 @@ public class RecentsUnifiedHook extends BaseHook {
                     float target = sysScale * s;
                     child.setScaleX(target);
                     child.setScaleY(target);
-                } else if (sysScaleObj != null) {
+                } else if (hasSysScale) {
                     child.setScaleX(sysScale);
                     child.setScaleY(sysScale);
                 }
 
                 // --- 3. ALPHA ---
-                Object sysAlphaObj = child.getTag(RecentsState.TAG_SYS_STABLE_ALPHA);
-                float sysAlpha = (sysAlphaObj instanceof Float) ? (Float) sysAlphaObj : 1.0f;
+                float sysAlpha = table.sysAlpha[slot];
+                boolean hasSysAlpha = !Float.isNaN(sysAlpha);
+                if (!hasSysAlpha) sysAlpha = 1.0f;
 
                 if (Math.abs(alphaVal - 1.0f) > 0.001f) {
                     float a = Math.max(0f, 1.0f - ((1.0f - alphaVal) * factor));
                     // ИСПРАВЛЕНИЕ: Прямая установка свойства
                     child.setAlpha(sysAlpha * a);
-                } else if (sysAlphaObj != null) {
+                } else if (hasSysAlpha) {
                     child.setAlpha(sysAlpha);
                 }
 
                 // --- 4. RENDER EFFECTS ---
-                if (Build.VERSION.SDK_INT >= 31) {
-                    applyRenderEffects(child, factor, blurVal, Settings.blurOverflow, Settings.tintColor, tintVal);
+                if (cfg.blurSnapshot && applyBlurOverlay(child, table, slot, factor, intensity, cfg)) {
+                    // размытый снимок, RenderEffect не нужен
+                } else if (Build.VERSION.SDK_INT >= 31) {
+                    applyRenderEffects(child, table, slot, factor, blurVal, cfg.blurOverflow, cfg.tintColor, tintVal);
                 }
 
                 // --- 5. ICONS ---
                 if (child instanceof ViewGroup) {
-                    if (Settings.hasIconOffset) {
-                        applyIconOffset((ViewGroup) child, offX, offY);
+                    if (cfg.hasIconOffset) {
+                        applyIconOffset((ViewGroup) child, table, slot, offX, offY);
                     } else if (child.getTag(RecentsState.TAG_ICON_ORIG_DELEGATE) != null) {
-                        applyIconOffset((ViewGroup) child, 0, 0);
+                        applyIconOffset((ViewGroup) child, table, slot, 0, 0);
                     }
                 }
             }
@@ -438,12 +661,9 @@ public class RecentsUnifiedHook extends BaseHook {
         return true;
     }
 
-    private void applyRenderEffects(View child, float factor, float maxBlurRadius, boolean overflow, int tintColor, float maxTintIntensity) {
-        float blurRadius = 0f;
-        if (maxBlurRadius > 0) {
-            float raw = maxBlurRadius * factor;
-            blurRadius = (raw < 2f) ? 0f : (float) (Math.floor(raw / 4f) * 4f);
-        }
+    private void applyRenderEffects(View child, TaskEffectTable table, int slot, float factor,
+                                    float maxBlurRadius, boolean overflow, int tintColor, float maxTintIntensity) {
+        int blurRadius = (maxBlurRadius > 0) ? blurGovernor.quantizeRadius(maxBlurRadius * factor) : 0;
 
         int tintAlpha = 0;
         if (maxTintIntensity > 0) {
@@ -452,26 +672,13 @@ public class RecentsUnifiedHook extends BaseHook {
             if (tintAlpha < 5) tintAlpha = 0;
         }
 
-        Object lastRad = child.getTag(TAG_CACHE_LAST_RADIUS);
-        Object lastTint = child.getTag(TAG_CACHE_LAST_TINT);
-        float cachedR = (lastRad instanceof Float) ? (Float) lastRad : -1f;
-        int cachedA = (lastTint instanceof Integer) ? (Integer) lastTint : -1;
+        if (blurRadius == table.lastRadius[slot] && tintAlpha == table.lastTint[slot]) return;
 
-        if (Math.abs(blurRadius - cachedR) < 0.1f && tintAlpha == cachedA) return;
+        table.lastRadius[slot] = blurRadius;
+        table.lastTint[slot] = tintAlpha;
 
-        child.setTag(TAG_CACHE_LAST_RADIUS, blurRadius);
-        child.setTag(TAG_CACHE_LAST_TINT, tintAlpha);
-
-        RenderEffect effect = null;
-        if (blurRadius > 0) {
-            Shader.TileMode mode = overflow ? Shader.TileMode.DECAL : Shader.TileMode.CLAMP;
-            effect = RenderEffect.createBlurEffect(blurRadius, blurRadius, mode);
-        }
-        if (tintAlpha > 0) {
-            int color = (tintColor & 0x00FFFFFF) | (tintAlpha << 24);
-            RenderEffect tint = RenderEffect.createColorFilterEffect(new PorterDuffColorFilter(color, PorterDuff.Mode.SRC_ATOP));
-            effect = (effect == null) ? tint : RenderEffect.createChainEffect(tint, effect);
-        }
+        int color = (tintColor & 0x00FFFFFF) | (tintAlpha << 24);
+        RenderEffect effect = effectCache.get(blurRadius, color, overflow);
 
         try {
             if (overflow) {
@@ -481,12 +688,12 @@ public class RecentsUnifiedHook extends BaseHook {
                     ((ViewGroup)child).setClipToPadding(false);
                 }
                 callSetRenderEffect(child, effect);
-                View thumb = getCachedThumbnailView(child);
+                View thumb = getCachedThumbnailView(child, table, slot);
                 if (thumb != null) callSetRenderEffect(thumb, null);
             } else {
                 child.setClipToOutline(true);
                 callSetRenderEffect(child, null);
-                View thumb = getCachedThumbnailView(child);
+                View thumb = getCachedThumbnailView(child, table, slot);
                 if (thumb != null) {
                     callSetRenderEffect(thumb, effect);
                     thumb.setClipToOutline(true);
@@ -497,6 +704,55 @@ public class RecentsUnifiedHook extends BaseHook {
         } catch (Exception e) {}
     }
 
+    /** @return false when this task has no usable snapshot and needs the RenderEffect mode */
+    private boolean applyBlurOverlay(View child, TaskEffectTable table, int slot, float factor,
+                                     float intensity, RecentsSettings cfg) {
+        if (table.overlayFailed[slot]) return false;
+        View thumb = getCachedThumbnailView(child, table, slot);
+        if (thumb == null) {
+            table.overlayFailed[slot] = true;
+            return false;
+        }
+
+        BlurOverlay overlay = table.blurOverlays[slot];
+        if (overlay != null && (overlay.settingsVersion != cfg.version || overlay.isStale())) {
+            overlay.detach();
+            overlay = null;
+            table.blurOverlays[slot] = null;
+        }
+        if (overlay == null) {
+            // До первого layout снимок сделать нельзя, попробуем на следующем кадре
+            if (thumb.getWidth() <= 0) return false;
+            overlay = BlurOverlay.create(thumb, cfg.maxBlur, cfg.tintColor, cfg.version);
+            if (overlay == null) {
+                table.overlayFailed[slot] = true;
+                return false;
+            }
+            table.blurOverlays[slot] = overlay;
+        }
+        if (overlay.hasFailed()) {
+            overlay.detach();
+            table.blurOverlays[slot] = null;
+            table.overlayFailed[slot] = true;
+            return false;
+        }
+        // Снимок строится в фоне, до готовности задача остаётся на RenderEffect
+        if (!overlay.isReady()) return false;
+        if (overlay.markShown()) {
+            callSetRenderEffect(child, null);
+            callSetRenderEffect(thumb, null);
+            table.lastRadius[slot] = -1;
+            table.lastTint[slot] = -1;
+        }
+
+        float amount = intensity * factor;
+        int blurAlpha = (cfg.maxBlur > 0) ? Math.min(255, (int) (255 * amount)) : 0;
+        int tintAlpha = Math.min(255, (int) (255 * cfg.maxTintIntensity * amount));
+        if (tintAlpha < 5) tintAlpha = 0;
+        overlay.update(blurAlpha, tintAlpha);
+        return true;
+    }
+
     // =========================================================================
     // SECTION 4: CLEAR ALL BUTTON
     // =========================================================================
@@ -505,7 +761,7 @@ public class RecentsUnifiedHook extends BaseHook {
         XposedHelpers.findAndHookMethod(overviewActionsClass, "onFinishInflate", new XC_MethodHook() {
             @Override
             protected void afterHookedMethod(MethodHookParam param) {
-                if (!Settings.clearAllEnabled) return;
+                if (!settings.clearAllEnabled) return;
                 final ViewGroup view = (ViewGroup) param.thisObject;
                 final Context context = view.getContext();
                 
@@ -519,45 +775,32 @@ public class RecentsUnifiedHook extends BaseHook {
         });
     }
 
-    @SuppressLint("DiscouragedApi")
     private void updateClearAllButton(ViewGroup parent, Context context) {
         try {
-            Resources res = context.getResources();
-            String pkg = context.getPackageName();
-            
-            int containerId = res.getIdentifier("action_buttons", "id", pkg);
-            ViewGroup container = (containerId != 0) ? parent.findViewById(containerId) : null;
-            if (container == null) {
-                for(int i=0; i<parent.getChildCount(); i++) {
-                    if (parent.getChildAt(i) instanceof LinearLayout) {
-                        container = (ViewGroup) parent.getChildAt(i);
-                        break;
-                    }
-                }
-            }
+            ClearAllResources res = ClearAllResources.get(context);
+            ViewGroup container = findActionsContainer(parent, res);
             if (container == null) return;
 
-            View oldBtn = container.findViewWithTag(TAG_CLEAR_ALL_BTN);
-            if (oldBtn != null) container.removeView(oldBtn);
-            View oldParentBtn = parent.findViewWithTag(TAG_CLEAR_ALL_BTN);
-            if (oldParentBtn != null) parent.removeView(oldParentBtn);
+            View oldBtn = (clearAllButtonRef != null) ? clearAllButtonRef.get() : null;
+            if (oldBtn != null && oldBtn.getParent() instanceof ViewGroup) {
+                ((ViewGroup) oldBtn.getParent()).removeView(oldBtn);
+            }
+            clearAllButtonRef = null;
 
-            int screenshotId = res.getIdentifier("action_screenshot", "id", pkg);
-            int selectId = res.getIdentifier("action_select", "id", pkg);
-            Button screenshotBtn = (screenshotId != 0) ? (Button) container.findViewById(screenshotId) : null;
-            Button selectBtn = (selectId != 0) ? (Button) container.findViewById(selectId) : null;
+            Button screenshotBtn = (res.screenshotId != 0) ? (Button) container.findViewById(res.screenshotId) : null;
+            Button selectBtn = (res.selectId != 0) ? (Button) container.findViewById(res.selectId) : null;
 
-            switch (Settings.clearAllMode) {
+            switch (settings.clearAllMode) {
                 case CLEAR_MODE_REPLACE_SCREENSHOT:
-                    if (screenshotBtn != null) transformButton(context, screenshotBtn);
-                    else addButtonToContainer(context, container, selectBtn, 0);
+                    if (screenshotBtn != null) transformButton(res, screenshotBtn);
+                    else addButtonToContainer(context, res, container, selectBtn, 0);
                     break;
                 case CLEAR_MODE_REPLACE_SELECT:
-                    if (selectBtn != null) transformButton(context, selectBtn);
-                    else addButtonToContainer(context, container, screenshotBtn, -1);
+                    if (selectBtn != null) transformButton(res, selectBtn);
+                    else addButtonToContainer(context, res, container, screenshotBtn, -1);
                     break;
                 default: 
-                    addButtonToBottom(context, parent, container, selectBtn != null ? selectBtn : screenshotBtn);
+                    addButtonToBottom(context, res, parent, container, selectBtn != null ? selectBtn : screenshotBtn);
                     break;
             }
         } catch (Throwable e) {
@@ -565,8 +808,30 @@ public class RecentsUnifiedHook extends BaseHook {
         }
     }
 
-    private void transformButton(final Context context, Button btn) {
-        btn.setText(getClearAllText(context));
+    // Контейнер кнопок ищется один раз на каждый inflate overview actions
+    private ViewGroup findActionsContainer(ViewGroup parent, ClearAllResources res) {
+        ViewGroup cachedParent = (actionsParentRef != null) ? actionsParentRef.get() : null;
+        ViewGroup cachedContainer = (actionsContainerRef != null) ? actionsContainerRef.get() : null;
+        if (cachedParent == parent && cachedContainer != null && cachedContainer.getParent() == parent) {
+            return cachedContainer;
+        }
+
+        ViewGroup container = (res.containerId != 0) ? parent.findViewById(res.containerId) : null;
+        if (container == null) {
+            for(int i=0; i<parent.getChildCount(); i++) {
+                if (parent.getChildAt(i) instanceof LinearLayout) {
+                    container = (ViewGroup) parent.getChildAt(i);
+                    break;
+                }
+            }
+        }
+        actionsParentRef = new WeakReference<>(parent);
+        actionsContainerRef = (container != null) ? new WeakReference<>(container) : null;
+        return container;
+    }
+
+    private void transformButton(ClearAllResources res, Button btn) {
+        btn.setText(res.clearAllText);
         btn.setCompoundDrawablesWithIntrinsicBounds(null, null, null, null);
         btn.setTag(TAG_TRANSFORMED);
         btn.setOnClickListener(new View.OnClickListener() {
@@ -575,34 +840,34 @@ public class RecentsUnifiedHook extends BaseHook {
         });
     }
 
-    private void addButtonToContainer(Context ctx, ViewGroup container, Button styleSrc, int pos) {
-        Button btn = createButton(ctx, styleSrc);
+    private void addButtonToContainer(Context ctx, ClearAllResources res, ViewGroup container, Button styleSrc, int pos) {
+        Button btn = createButton(ctx, res, styleSrc);
         syncState(btn, container);
         int idx = (pos < 0) ? container.getChildCount() : 0;
         container.addView(btn, Math.min(idx, container.getChildCount()));
     }
 
-    private void addButtonToBottom(Context ctx, ViewGroup parent, ViewGroup container, Button styleSrc) {
-        Button btn = createButton(ctx, styleSrc);
+    private void addButtonToBottom(Context ctx, ClearAllResources res, ViewGroup parent, ViewGroup container, Button styleSrc) {
+        Button btn = createButton(ctx, res, styleSrc);
         syncState(btn, container);
         
         FrameLayout.LayoutParams lp = new FrameLayout.LayoutParams(
             ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT
         );
         lp.gravity = Gravity.BOTTOM | Gravity.CENTER_HORIZONTAL;
-        int spacing = getButtonSpacing(ctx);
-        lp.bottomMargin = (int) (spacing * Settings.clearAllMargin);
+        lp.bottomMargin = (int) (res.buttonSpacing * settings.clearAllMargin);
         
         btn.setLayoutParams(lp);
         btn.setPadding(btn.getPaddingLeft(), btn.getPaddingTop()+10, btn.getPaddingRight(), btn.getPaddingBottom()+10);
         parent.addView(btn);
     }
 
-    private Button createButton(final Context ctx, Button styleSrc) {
+    private Button createButton(final Context ctx, ClearAllResources res, Button styleSrc) {
         Context contextToUse = (styleSrc != null) ? styleSrc.getContext() : ctx;
         Button btn = new Button(contextToUse);
         btn.setTag(TAG_CLEAR_ALL_BTN);
-        btn.setText(getClearAllText(ctx));
+        btn.setText(res.clearAllText);
+        clearAllButtonRef = new WeakReference<View>(btn);
         
         if (styleSrc != null) {
             btn.setTextColor(styleSrc.getTextColors());
@@ -611,9 +876,8 @@ public class RecentsUnifiedHook extends BaseHook {
             btn.setTypeface(styleSrc.getTypeface());
             btn.setPadding(styleSrc.getPaddingLeft(), styleSrc.getPaddingTop(), styleSrc.getPaddingRight(), styleSrc.getPaddingBottom());
         } else {
-             int spacing = getButtonSpacing(ctx);
              LinearLayout.LayoutParams lp = new LinearLayout.LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
-             lp.setMarginStart(spacing);
+             lp.setMarginStart(res.buttonSpacing);
              btn.setLayoutParams(lp);
         }
         
@@ -647,63 +911,117 @@ public class RecentsUnifiedHook extends BaseHook {
     // SECTION 5: UTILS
     // =========================================================================
 
-    private void resetEffectsOnChildren(ViewGroup recentsView) {
+    private void resetEffectsOnChildren(ViewGroup recentsView, TaskEffectTable table) {
         RecentsState.applyingEffects.set(true);
         try {
             int count = recentsView.getChildCount();
             for (int i = 0; i < count; i++) {
                 View child = recentsView.getChildAt(i);
-                
-                Object sysTrans = child.getTag(RecentsState.TAG_SYS_TRANS_X);
-                if (sysTrans instanceof Float) child.setTranslationX((Float) sysTrans);
-                
-                Object sysScale = child.getTag(RecentsState.TAG_SYS_NON_GRID_SCALE);
-                if (sysScale instanceof Float) {
-                     child.setScaleX((Float) sysScale);
-                     child.setScaleY((Float) sysScale);
-                }
-                
-                Object sysAlpha = child.getTag(RecentsState.TAG_SYS_STABLE_ALPHA);
-                if (sysAlpha instanceof Float) child.setAlpha((Float) sysAlpha);
-                
-                child.setTag(RecentsState.TAG_OFFSET_TRANS, null);
-                
-                if (Build.VERSION.SDK_INT >= 31) {
-                    child.setTag(TAG_CACHE_LAST_RADIUS, null);
-                    child.setTag(TAG_CACHE_LAST_TINT, null);
-                    callSetRenderEffect(child, null);
-                    View thumb = getCachedThumbnailView(child);
-                    if (thumb != null) callSetRenderEffect(thumb, null);
-                }
-
-                if (child instanceof ViewGroup) {
-                    applyIconOffset((ViewGroup) child, 0, 0);
-                }
+                if (child == null) continue;
+                int slot = table.attach(child).index;
+                if (slot < 0) continue;
+                parkChild(child, table, slot);
+                table.parked[slot] = false;
             }
+            table.effectsApplied = false;
+            table.invalidateInputs();
         } finally {
             RecentsState.applyingEffects.set(false);
         }
     }
+
+    // Возвращает ребёнку значения лаунчера и снимает все наши эффекты
+    private void parkChild(View child, TaskEffectTable table, int slot) {
+        float sysTrans = table.sysTransX[slot];
+        if (!Float.isNaN(sysTrans)) child.setTranslationX(sysTrans);
+        
+        float sysScale = table.sysScale[slot];
+        if (!Float.isNaN(sysScale)) {
+             child.setScaleX(sysScale);
+             child.setScaleY(sysScale);
+        }
+        
+        float sysAlpha = table.sysAlpha[slot];
+        if (!Float.isNaN(sysAlpha)) child.setAlpha(sysAlpha);
+        
+        table.offsetTrans[slot] = 0f;
+
+        BlurOverlay overlay = table.blurOverlays[slot];
+        if (overlay != null) overlay.update(0, 0);
+        
+        if (Build.VERSION.SDK_INT >= 31) {
+            table.lastRadius[slot] = -1;
+            table.lastTint[slot] = -1;
+            callSetRenderEffect(child, null);
+            View thumb = getCachedThumbnailView(child, table, slot);
+            if (thumb != null) callSetRenderEffect(thumb, null);
+        }
+
+        if (child instanceof ViewGroup) {
+            applyIconOffset((ViewGroup) child, table, slot, 0, 0);
+        }
+    }
     
-    private void startEntryAnimation(final View view) {
-        if (RecentsState.carouselAnimator != null) RecentsState.carouselAnimator.cancel();
+    private void startEntryAnimation(final ViewGroup view) {
+        // Одна анимация на вход: повторный вызов из onLayout/жеста не перезапускает её с нуля
+        ValueAnimator running = RecentsState.carouselAnimator;
+        if (running != null && running.isRunning()) {
+            CNT_ENTRY_ANIM_SKIPPED.inc();
+            return;
+        }
         RecentsState.isInRecentsMode = true;
         RecentsState.enteringRecentsUntil = SystemClock.uptimeMillis() + 250L;
-        ValueAnimator anim = ValueAnimator.ofFloat(0f, 1f);
+        Display display = view.getDisplay();
+        if (display != null) blurGovernor.setRefreshRate(display.getRefreshRate());
+
+        // Пока меняются только alpha/scale, задачи рисуются из hardware-слоя. Blur, tint и
+        // сдвиг иконок меняют содержимое каждый кадр - слой перерисовывался бы постоянно
+        final TaskEffectTable table = effectTableOf(view);
+        if (getSettings(view.getContext()).transformOnly()) promoteVisibleTasks(view, table);
+
+        final int[] invalidates = new int[1];
+        final ValueAnimator anim = ValueAnimator.ofFloat(0f, 1f);
         anim.setDuration(250);
         anim.setInterpolator(new DecelerateInterpolator());
         anim.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
             @Override
             public void onAnimationUpdate(ValueAnimator animation) {
-                RecentsState.carouselIntensity = (Float) animation.getAnimatedValue();
+                float value = (Float) animation.getAnimatedValue();
+                if (value == RecentsState.carouselIntensity) return;
+                RecentsState.carouselIntensity = value;
                 view.invalidate();
+                invalidates[0]++;
+            }
+        });
+        anim.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                table.restoreLayers();
+                HIST_ENTRY_INVALIDATES.record(invalidates[0]);
+                if (RecentsState.carouselAnimator == anim) RecentsState.carouselAnimator = null;
             }
         });
-        anim.start();
         RecentsState.carouselAnimator = anim;
+        CNT_ENTRY_ANIM_START.inc();
+        anim.start();
+    }
+
+    private void promoteVisibleTasks(ViewGroup recentsView, TaskEffectTable table) {
+        int scrollX = recentsView.getScrollX();
+        int width = recentsView.getWidth();
+        int childCount = recentsView.getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            View child = recentsView.getChildAt(i);
+            if (child == null) continue;
+            float left = child.getLeft() + child.getTranslationX();
+            if (left + child.getWidth() < scrollX || left > scrollX + width) continue;
+            table.promoteLayer(table.attach(child));
+        }
     }
     
     private void resetState() {
+        effectCache.endSession();
+        blurGovernor.reset();
         if (RecentsState.carouselAnimator != null) {
             RecentsState.carouselAnimator.cancel();
             RecentsState.carouselAnimator = null;
@@ -732,44 +1050,65 @@ public class RecentsUnifiedHook extends BaseHook {
     private void hookCommonScale(ClassLoader classLoader) {
         try {
             Class<?> baseClass = XposedHelpers.findClass(RecentsState.CLASS_BASE_CONTAINER, classLoader);
-            Method targetMethod = null;
+            int hooked = 0;
             for (Method m : baseClass.getDeclaredMethods()) {
-                if (m.getName().equals("calculateTaskSize")) {
-                    for (Class<?> p : m.getParameterTypes()) {
-                        if (p == Rect.class) { targetMethod = m; break; }
-                    }
+                if (!isTaskSizeMethod(m.getName())) continue;
+                // Индекс Rect ищем один раз, а не перебором param.args на каждом вызове
+                Class<?>[] params = m.getParameterTypes();
+                int rectIndex = -1;
+                for (int i = 0; i < params.length; i++) {
+                    if (params[i] == Rect.class) { rectIndex = i; break; }
                 }
+                if (rectIndex < 0) continue;
+                XposedBridge.hookMethod(m, new TaskSizeHook(rectIndex));
+                hooked++;
             }
-            if (targetMethod != null) {
-                XposedBridge.hookMethod(targetMethod, new XC_MethodHook() {
-                    @Override
-                    protected void afterHookedMethod(MethodHookParam param) {
-                        if (!Settings.enabled || !Settings.commonScaleEnabled || Settings.commonScalePercent == 100) return;
-                        Rect rect = null;
-                        for (Object arg : param.args) {
-                            if (arg instanceof Rect) { rect = (Rect) arg; break; }
-                        }
-                        if (rect != null && !rect.isEmpty()) {
-                            float s = Settings.commonScalePercent / 100f;
-                            int cx = rect.centerX(), cy = rect.centerY();
-                            int w = (int)(rect.width() * s), h = (int)(rect.height() * s);
-                            rect.set(cx - w/2, cy - h/2, cx + w/2, cy + h/2);
-                        }
-                    }
-                });
-            }
+            if (hooked == 0) log("No task size methods found in " + RecentsState.CLASS_BASE_CONTAINER);
         } catch (Throwable t) {}
     }
 
-    @SuppressWarnings("unchecked")
-    private void applyIconOffset(ViewGroup taskView, float x, float y) {
-        Object cache = taskView.getTag(TAG_CACHE_ICONS);
-        List<View> icons;
-        if (cache instanceof List) icons = (List<View>) cache;
-        else {
-            icons = new ArrayList<>();
-            scanForIcons(taskView, icons);
-            taskView.setTag(TAG_CACHE_ICONS, icons);
+    private static boolean isTaskSizeMethod(String name) {
+        for (String target : TASK_SIZE_METHODS) {
+            if (target.equals(name)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Scales the task rectangle the method writes into. The size helpers call each
+     * other (carousel/grid size from the task size), so only the outermost call on
+     * the stack scales, and every query gets the same single scale.
+     */
+    private final class TaskSizeHook extends XC_MethodHook {
+        private final int rectIndex;
+
+        TaskSizeHook(int rectIndex) {
+            this.rectIndex = rectIndex;
+        }
+
+        @Override
+        protected void beforeHookedMethod(MethodHookParam param) {
+            taskSizeDepth.get()[0]++;
+        }
+
+        @Override
+        protected void afterHookedMethod(MethodHookParam param) {
+            int[] depth = taskSizeDepth.get();
+            if (--depth[0] > 0) return;
+            RecentsSettings cfg = settings;
+            if (cfg == null || cfg.taskSizeScale == 1f) return;
+            Rect rect = (Rect) param.args[rectIndex];
+            if (rect != null) TaskGeometry.scaleAroundCenter(rect, cfg.taskSizeScale);
+        }
+    }
+
+    private void applyIconOffset(ViewGroup taskView, TaskEffectTable table, int slot, float x, float y) {
+        View[] icons = table.icons[slot];
+        if (icons == null) {
+            List<View> found = new ArrayList<>();
+            scanForIcons(taskView, found);
+            icons = found.toArray(new View[0]);
+            table.icons[slot] = icons;
         }
         for (View icon : icons) {
             icon.setTranslationX(x);
@@ -781,7 +1120,7 @@ public class RecentsUnifiedHook extends BaseHook {
             taskView.setClipChildren(false);
             taskView.setClipToPadding(false);
             taskView.setClipToOutline(false);
-            View thumbnail = getCachedThumbnailView(taskView);
+            View thumbnail = getCachedThumbnailView(taskView, table, slot);
             if (thumbnail != null) {
                 thumbnail.setClipToOutline(true);
             }
@@ -818,17 +1157,16 @@ public class RecentsUnifiedHook extends BaseHook {
     }
 
     private void callSetRenderEffect(View v, RenderEffect e) {
-        if (setRenderEffectMethod != null) {
-            try { setRenderEffectMethod.invoke(v, e); } catch (Exception ex) {}
-        }
+        if (Build.VERSION.SDK_INT < 31) return;
+        try { v.setRenderEffect(e); } catch (Exception ex) {}
     }
 
-    private View getCachedThumbnailView(View root) {
-        Object cached = root.getTag(RecentsState.TAG_CACHE_THUMBNAIL_VIEW);
-        if (cached instanceof View) return (View) cached;
-        View found = findThumbnailView(root);
-        if (found != null) root.setTag(RecentsState.TAG_CACHE_THUMBNAIL_VIEW, found);
-        return found;
+    private View getCachedThumbnailView(View root, TaskEffectTable table, int slot) {
+        if (!table.thumbnailResolved[slot]) {
+            table.thumbnails[slot] = findThumbnailView(root);
+            table.thumbnailResolved[slot] = true;
+        }
+        return table.thumbnails[slot];
     }
 
     private View findThumbnailView(View root) {
@@ -852,41 +1190,64 @@ public class RecentsUnifiedHook extends BaseHook {
         return null;
     }
     
-    @SuppressLint("DiscouragedApi")
-    private String getClearAllText(Context ctx) {
-        Resources res = ctx.getResources();
-        int id = res.getIdentifier("recents_clear_all", "string", ctx.getPackageName());
-        if (id == 0) id = res.getIdentifier("clear_all", "string", "android");
-        return (id != 0) ? res.getString(id) : "Clear All";
-    }
-
-    @SuppressLint("DiscouragedApi")
-    private int getButtonSpacing(Context context) {
-        Resources res = context.getResources();
-        int spacingId = res.getIdentifier("overview_actions_button_spacing", "dimen", context.getPackageName());
-        return (spacingId != 0) ? res.getDimensionPixelSize(spacingId) : 24;
-    }
-    
-    private void syncState(final View target, final View source) {
+    private void syncState(View target, View source) {
         target.setAlpha(source.getAlpha());
         if (source.getVisibility() == View.VISIBLE) target.setVisibility(View.VISIBLE);
-        
-        final ViewTreeObserver.OnPreDrawListener l = new ViewTreeObserver.OnPreDrawListener() {
-            @Override
-            public boolean onPreDraw() {
-                if (Math.abs(target.getAlpha() - source.getAlpha()) > 0.01f) target.setAlpha(source.getAlpha());
-                if (source instanceof ViewGroup && source.getVisibility() != target.getVisibility()) 
-                    target.setVisibility(source.getVisibility());
-                return true;
+        clearAllMirror.bind(target, source);
+    }
+
+    /**
+     * Mirrors alpha/visibility of the actions container onto the clear-all button.
+     * There is only ever one button, so one listener is re-pointed instead of
+     * adding a new one per sync.
+     */
+    private static final class StateMirror implements ViewTreeObserver.OnPreDrawListener,
+            View.OnAttachStateChangeListener {
+        private View target;
+        private View source;
+        private ViewTreeObserver observer;
+
+        void bind(View newTarget, View newSource) {
+            if (target != newTarget) {
+                if (target != null) target.removeOnAttachStateChangeListener(this);
+                newTarget.addOnAttachStateChangeListener(this);
             }
-        };
-        source.getViewTreeObserver().addOnPreDrawListener(l);
-        target.addOnAttachStateChangeListener(new View.OnAttachStateChangeListener() {
-            @Override public void onViewAttachedToWindow(View v) {}
-            @Override public void onViewDetachedFromWindow(View v) {
-                if (source.getViewTreeObserver().isAlive()) source.getViewTreeObserver().removeOnPreDrawListener(l);
+            target = newTarget;
+            source = newSource;
+            ViewTreeObserver vto = newSource.getViewTreeObserver();
+            if (vto != observer) {
+                unregister();
+                vto.addOnPreDrawListener(this);
+                observer = vto;
             }
-        });
+        }
+
+        private void unregister() {
+            if (observer != null && observer.isAlive()) observer.removeOnPreDrawListener(this);
+            observer = null;
+        }
+
+        @Override
+        public boolean onPreDraw() {
+            View t = target, s = source;
+            if (t == null || s == null) return true;
+            if (Math.abs(t.getAlpha() - s.getAlpha()) > 0.01f) t.setAlpha(s.getAlpha());
+            if (s instanceof ViewGroup && s.getVisibility() != t.getVisibility())
+                t.setVisibility(s.getVisibility());
+            return true;
+        }
+
+        @Override public void onViewAttachedToWindow(View v) {
+            // Кнопку вернули в окно (пересоздание overview actions) - слушатель нужен снова
+            if (v == target && source != null && observer == null) {
+                observer = source.getViewTreeObserver();
+                observer.addOnPreDrawListener(this);
+            }
+        }
+
+        @Override public void onViewDetachedFromWindow(View v) {
+            if (v == target) unregister();
+        }
     }
 }
 
@@ -0,0 +1,93 @@
+package org.pixel.customparts.hooks.recents;
+
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
+import android.graphics.RenderEffect;
+import android.graphics.Shader;
+
+import org.pixel.customparts.core.HookTelemetry;
+
+/**
+ * Blur/tint effects for the Recents carousel, shared by all task views.
+ * Radius is already quantized by the caller, so a swipe only ever needs a
+ * handful of distinct (radius, tint, overflow) combinations; they are kept in a
+ * small LRU table with packed long keys, so a hit allocates nothing.
+ * Main thread only.
+ */
+final class RenderEffectCache {
+
+    private static final int CAPACITY = 32;
+
+    private static final HookTelemetry.Counter CNT_ALLOC = HookTelemetry.counter("Recents.effectAlloc");
+    private static final HookTelemetry.Counter CNT_HIT = HookTelemetry.counter("Recents.effectCacheHit");
+    private static final HookTelemetry.Histogram HIST_SESSION_ALLOC =
+            HookTelemetry.histogram("Recents.effectAllocPerSession", "effects", 0, 4, 8, 16, 32, 64, 128);
+
+    private final long[] keys = new long[CAPACITY];
+    private final RenderEffect[] effects = new RenderEffect[CAPACITY];
+    private final int[] lastUse = new int[CAPACITY];
+    private int size;
+    private int clock;
+    private int sessionAllocs;
+
+    /**
+     * @param radius    quantized blur radius, 0 for none
+     * @param tintColor ARGB tint, alpha 0 for none
+     * @return shared effect, or null when neither blur nor tint is set
+     */
+    RenderEffect get(int radius, int tintColor, boolean overflow) {
+        boolean hasTint = (tintColor >>> 24) != 0;
+        if (radius <= 0 && !hasTint) return null;
+        if (!hasTint) tintColor = 0;
+
+        long key = ((long) (radius & 0x7FFF) << 33) | ((overflow ? 1L : 0L) << 32) | (tintColor & 0xFFFFFFFFL);
+        int tick = ++clock;
+        int victim = 0;
+        for (int i = 0; i < size; i++) {
+            if (keys[i] == key) {
+                lastUse[i] = tick;
+                CNT_HIT.inc();
+                return effects[i];
+            }
+            if (lastUse[i] < lastUse[victim]) victim = i;
+        }
+
+        RenderEffect effect = create(radius, tintColor, hasTint, overflow);
+        int slot = (size < CAPACITY) ? size++ : victim;
+        keys[slot] = key;
+        effects[slot] = effect;
+        lastUse[slot] = tick;
+        sessionAllocs++;
+        CNT_ALLOC.inc();
+        return effect;
+    }
+
+    /** Records how many effects this Recents session had to create. */
+    void endSession() {
+        if (sessionAllocs == 0 && clock == 0) return;
+        HIST_SESSION_ALLOC.record(sessionAllocs);
+        sessionAllocs = 0;
+        clock = 0;
+        for (int i = 0; i < size; i++) lastUse[i] = 0;
+    }
+
+    void clear() {
+        for (int i = 0; i < size; i++) effects[i] = null;
+        size = 0;
+        clock = 0;
+    }
+
+    private static RenderEffect create(int radius, int tintColor, boolean hasTint, boolean overflow) {
+        RenderEffect effect = null;
+        if (radius > 0) {
+            Shader.TileMode mode = overflow ? Shader.TileMode.DECAL : Shader.TileMode.CLAMP;
+            effect = RenderEffect.createBlurEffect(radius, radius, mode);
+        }
+        if (hasTint) {
+            RenderEffect tint = RenderEffect.createColorFilterEffect(
+                    new PorterDuffColorFilter(tintColor, PorterDuff.Mode.SRC_ATOP));
+            effect = (effect == null) ? tint : RenderEffect.createChainEffect(tint, effect);
+        }
+        return effect;
+    }
+}
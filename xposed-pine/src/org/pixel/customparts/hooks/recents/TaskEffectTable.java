@@ -0,0 +1,246 @@
+package org.pixel.customparts.hooks.recents;
+
+import android.view.View;
+
+import java.util.Arrays;
+
+/**
+ * Carousel state of one RecentsView's children, kept in primitive arrays so the
+ * pre-draw pass neither boxes nor allocates per frame.
+ * A child gets a {@link Slot} (stored in its tag) the first time the pass or one of
+ * the TaskView interceptors sees it; that is also where it is classified, so the
+ * clear-all button is recognised once instead of by class name on every frame.
+ * Slots are released when the launcher recycles a TaskView into its pool.
+ * The table also remembers the inputs of the last pass (scroll, width, child
+ * count, intensity, settings version) and which children changed since, so an
+ * unchanged frame costs a handful of compares.
+ * Main thread only.
+ */
+final class TaskEffectTable {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Index of a child in the table; {@link #index} is -1 for children the pass skips. */
+    static final class Slot {
+        final TaskEffectTable table;
+        final int index;
+
+        Slot(TaskEffectTable table, int index) {
+            this.table = table;
+            this.index = index;
+        }
+    }
+
+    // Значения, выставленные самим лаунчером (NaN - ещё не видели)
+    float[] sysTransX;
+    float[] sysAlpha;
+    float[] sysScale;
+
+    // Что уже применено нами
+    float[] offsetTrans;
+    int[] lastRadius;
+    int[] lastTint;
+    boolean[] dirty;
+    // Задача вне видимого окна карусели, эффекты с неё сняты
+    boolean[] parked;
+
+    // Входы последнего прохода карусели
+    boolean anyDirty = true;
+    boolean effectsApplied;
+    private int lastScrollX;
+    private int lastWidth;
+    private int lastChildCount;
+    private int lastSettingsVersion = -1;
+    private float lastIntensity;
+
+    // Найденные в TaskView дочерние view
+    View[][] icons;
+    View[] thumbnails;
+    boolean[] thumbnailResolved;
+
+    // Режим blur-снимка: слой на превью или отметка, что снимок сделать нельзя
+    BlurOverlay[] blurOverlays;
+    boolean[] overlayFailed;
+
+    // Исходный layer type задачи, поднятой до hardware-слоя на время анимации входа; -1 - не поднята
+    private int[] savedLayerType;
+
+    private View[] owners;
+    private int[] freeSlots;
+    private int freeCount;
+    private int size;
+    private final Slot skipped = new Slot(this, -1);
+
+    TaskEffectTable() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    static Slot slotOf(View child) {
+        Object tag = child.getTag(RecentsState.TAG_EFFECT_SLOT);
+        return (tag instanceof Slot) ? (Slot) tag : null;
+    }
+
+    /** Slot of {@code child} in this table, assigned on first use. */
+    Slot attach(View child) {
+        Slot slot = slotOf(child);
+        if (slot != null && slot.table == this && (slot.index < 0 || owners[slot.index] == child)) {
+            return slot;
+        }
+
+        if (child.getClass().getSimpleName().contains("ClearAll")) {
+            child.setTag(RecentsState.TAG_EFFECT_SLOT, skipped);
+            return skipped;
+        }
+
+        int index;
+        if (freeCount > 0) {
+            index = freeSlots[--freeCount];
+        } else {
+            if (size == owners.length) allocate(size * 2);
+            index = size++;
+        }
+        owners[index] = child;
+        reset(index);
+        slot = new Slot(this, index);
+        child.setTag(RecentsState.TAG_EFFECT_SLOT, slot);
+        return slot;
+    }
+
+    /** Drops the child's state, e.g. when the TaskView goes back to the view pool. */
+    void release(View child) {
+        Slot slot = slotOf(child);
+        if (slot == null || slot.table != this) return;
+        child.setTag(RecentsState.TAG_EFFECT_SLOT, null);
+        int index = slot.index;
+        if (index < 0 || owners[index] != child) return;
+        restoreLayer(index);
+        owners[index] = null;
+        reset(index);
+        freeSlots[freeCount++] = index;
+    }
+
+    /** Forgets the cached child views and applied effect after the TaskView is bound to another task. */
+    void invalidateContent(int index) {
+        icons[index] = null;
+        thumbnails[index] = null;
+        thumbnailResolved[index] = false;
+        dropOverlay(index);
+        overlayFailed[index] = false;
+        lastRadius[index] = -1;
+        lastTint[index] = -1;
+        markDirty(index);
+    }
+
+    /** Removes every snapshot overlay, e.g. after the blur settings changed. */
+    void dropOverlays() {
+        for (int i = 0; i < size; i++) {
+            dropOverlay(i);
+            overlayFailed[i] = false;
+        }
+    }
+
+    private void dropOverlay(int index) {
+        if (blurOverlays[index] != null) {
+            blurOverlays[index].detach();
+            blurOverlays[index] = null;
+        }
+    }
+
+    /** Draws the child through a hardware layer until {@link #restoreLayers()}; no-op for skipped children. */
+    void promoteLayer(Slot slot) {
+        int index = slot.index;
+        if (index < 0 || savedLayerType[index] >= 0) return;
+        View child = owners[index];
+        int type = child.getLayerType();
+        if (type != View.LAYER_TYPE_NONE) return;
+        savedLayerType[index] = type;
+        child.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+    }
+
+    /** Gives every promoted child its own layer type back. */
+    void restoreLayers() {
+        for (int i = 0; i < size; i++) restoreLayer(i);
+    }
+
+    private void restoreLayer(int index) {
+        int type = savedLayerType[index];
+        if (type < 0) return;
+        savedLayerType[index] = -1;
+        if (owners[index] != null) owners[index].setLayerType(type, null);
+    }
+
+    /** The child's launcher values changed; it is processed on the next pass. */
+    void markDirty(int index) {
+        dirty[index] = true;
+        anyDirty = true;
+    }
+
+    /** Forces the next pass to process every child, e.g. after a layout. */
+    void invalidateInputs() {
+        lastSettingsVersion = -1;
+    }
+
+    /** @return true when any global input differs from the last pass; the new values are remembered */
+    boolean updateInputs(int scrollX, int width, int childCount, float intensity, int settingsVersion) {
+        if (scrollX == lastScrollX && width == lastWidth && childCount == lastChildCount
+                && intensity == lastIntensity && settingsVersion == lastSettingsVersion) {
+            return false;
+        }
+        lastScrollX = scrollX;
+        lastWidth = width;
+        lastChildCount = childCount;
+        lastIntensity = intensity;
+        lastSettingsVersion = settingsVersion;
+        return true;
+    }
+
+    private void reset(int index) {
+        sysTransX[index] = Float.NaN;
+        sysAlpha[index] = Float.NaN;
+        sysScale[index] = Float.NaN;
+        offsetTrans[index] = 0f;
+        parked[index] = false;
+        invalidateContent(index);
+    }
+
+    private void allocate(int capacity) {
+        if (owners == null) {
+            sysTransX = new float[capacity];
+            sysAlpha = new float[capacity];
+            sysScale = new float[capacity];
+            offsetTrans = new float[capacity];
+            lastRadius = new int[capacity];
+            lastTint = new int[capacity];
+            dirty = new boolean[capacity];
+            parked = new boolean[capacity];
+            icons = new View[capacity][];
+            thumbnails = new View[capacity];
+            thumbnailResolved = new boolean[capacity];
+            blurOverlays = new BlurOverlay[capacity];
+            overlayFailed = new boolean[capacity];
+            savedLayerType = new int[capacity];
+            Arrays.fill(savedLayerType, -1);
+            owners = new View[capacity];
+            freeSlots = new int[capacity];
+            return;
+        }
+        sysTransX = Arrays.copyOf(sysTransX, capacity);
+        sysAlpha = Arrays.copyOf(sysAlpha, capacity);
+        sysScale = Arrays.copyOf(sysScale, capacity);
+        offsetTrans = Arrays.copyOf(offsetTrans, capacity);
+        lastRadius = Arrays.copyOf(lastRadius, capacity);
+        lastTint = Arrays.copyOf(lastTint, capacity);
+        dirty = Arrays.copyOf(dirty, capacity);
+        parked = Arrays.copyOf(parked, capacity);
+        icons = Arrays.copyOf(icons, capacity);
+        thumbnails = Arrays.copyOf(thumbnails, capacity);
+        thumbnailResolved = Arrays.copyOf(thumbnailResolved, capacity);
+        blurOverlays = Arrays.copyOf(blurOverlays, capacity);
+        overlayFailed = Arrays.copyOf(overlayFailed, capacity);
+        int oldCapacity = savedLayerType.length;
+        savedLayerType = Arrays.copyOf(savedLayerType, capacity);
+        Arrays.fill(savedLayerType, oldCapacity, capacity, -1);
+        owners = Arrays.copyOf(owners, capacity);
+        freeSlots = Arrays.copyOf(freeSlots, capacity);
+    }
+}
@@ -0,0 +1,32 @@
+package org.pixel.customparts.hooks.recents;
+
+import android.graphics.Rect;
+
+/**
+ * Task rectangle maths for the common Recents scale, kept free of launcher
+ * state so the numbers can be checked on their own.
+ */
+final class TaskGeometry {
+
+    private TaskGeometry() {
+    }
+
+    /** Scale factor for a task size percentage; exactly 1 for 100 %. */
+    static float scaleForPercent(int percent) {
+        return (percent == 100) ? 1f : percent / 100f;
+    }
+
+    /**
+     * Scales {@code rect} around its center. The new size is rounded down to
+     * whole pixels and kept exactly, odd sizes included. Empty rects and a
+     * scale of 1 leave it untouched.
+     */
+    static void scaleAroundCenter(Rect rect, float scale) {
+        if (scale == 1f || rect.isEmpty()) return;
+        int width = (int) (rect.width() * scale);
+        int height = (int) (rect.height() * scale);
+        int left = rect.centerX() - width / 2;
+        int top = rect.centerY() - height / 2;
+        rect.set(left, top, left + width, top + height);
+    }
+}
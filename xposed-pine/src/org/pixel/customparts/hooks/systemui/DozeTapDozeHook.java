@@ -1,17 +1,34 @@
 package org.pixel.customparts.hooks.systemui;
 
 import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
 import de.robv.android.xposed.XC_MethodHook;
 import de.robv.android.xposed.XposedBridge;
 import de.robv.android.xposed.XposedHelpers;
 import org.pixel.customparts.core.BaseHook;
+import org.pixel.customparts.core.HookTelemetry;
+import org.pixel.customparts.core.SettingsWatcher;
 
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.Collection;
 
 public class DozeTapDozeHook extends BaseHook {
     
+    private static final String FIELD_TAP_SENSOR = "pixelPartsTapSensor";
+
+    private static final HookTelemetry.Counter CNT_TAP = HookTelemetry.counter("DozeTap.tap");
+    private static final HookTelemetry.Counter CNT_SENSOR_REREGISTER = HookTelemetry.counter("DozeTap.sensorReregister");
+
     private int dozeTapReason = 9; // Default fallback
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private volatile Context dozeContext;
+    private volatile Config config;
+    private SettingsWatcher configWatcher;
 
     @Override
     public String getHookId() {
@@ -32,6 +49,7 @@ public class DozeTapDozeHook extends BaseHook {
     protected void onInit(ClassLoader classLoader) {
         resolveTapReason(classLoader);
         hookDozeTriggers(classLoader);
+        DozeTapTracer.register();
     }
 
     private void resolveTapReason(ClassLoader classLoader) {
@@ -50,117 +68,241 @@ public class DozeTapDozeHook extends BaseHook {
                 classLoader
             );
 
-            XposedBridge.hookAllMethods(dozeTriggersClass, "onSensor", new XC_MethodHook() {
-                @Override
-                protected void beforeHookedMethod(MethodHookParam param) {
-                    try {
-                        // Ищем первый аргумент типа Int (pulseReason)
-                        int pulseReason = -1;
-                        for (Object arg : param.args) {
-                            if (arg instanceof Integer) {
-                                pulseReason = (Integer) arg;
-                                break;
-                            }
-                        }
+            hookDozeTriggersConstructor(dozeTriggersClass);
 
-                        if (pulseReason != dozeTapReason) return;
-
-                        Object dozeTriggers = param.thisObject;
-                        Context context = (Context) XposedHelpers.getObjectField(dozeTriggers, "mContext");
-                        if (context == null) return;
-                        
-                        if (!isSettingEnabled(context, DozeTapManager.KEY_HOOK)) return;
-
-                        // Ищем float аргументы (x, y)
-                        float screenX = -1f;
-                        float screenY = -1f;
-                        int floatCount = 0;
-                        
-                        for (Object arg : param.args) {
-                            if (arg instanceof Float) {
-                                if (floatCount == 0) screenX = (Float) arg;
-                                else if (floatCount == 1) screenY = (Float) arg;
-                                floatCount++;
-                            }
-                        }
+            int hooked = 0;
+            for (Method method : dozeTriggersClass.getDeclaredMethods()) {
+                if (!method.getName().equals("onSensor")) continue;
+                SensorHook hook = SensorHook.forSignature(this, method.getParameterTypes());
+                if (hook == null) {
+                    log("DozeTapDozeHook: Skipping onSensor" + Arrays.toString(method.getParameterTypes()));
+                    continue;
+                }
+                XposedBridge.hookMethod(method, hook);
+                hooked++;
+            }
+
+            if (hooked > 0) log("DozeTapDozeHook: Hook applied successfully");
+            else log("DozeTapDozeHook: No usable onSensor overload");
+        } catch (Throwable e) {
+            logError("DozeTapDozeHook: Failed to apply hook", e);
+        }
+    }
+
+    /**
+     * onSensor hook for one overload. The positions of the pulse reason and the
+     * x/y floats are taken from the signature when hooking: first int, first two floats.
+     */
+    private static final class SensorHook extends XC_MethodHook {
+        private final DozeTapDozeHook owner;
+        private final int reasonIndex;
+        private final int xIndex;
+        private final int yIndex;
+
+        private SensorHook(DozeTapDozeHook owner, int reasonIndex, int xIndex, int yIndex) {
+            this.owner = owner;
+            this.reasonIndex = reasonIndex;
+            this.xIndex = xIndex;
+            this.yIndex = yIndex;
+        }
 
-                        if (floatCount < 2) return;
-
-                        int timeout = getIntSetting(context, DozeTapManager.KEY_TIMEOUT, DozeTapManager.DEFAULT_TIMEOUT);
-                        
-                        boolean consumed = DozeTapManager.processTap(
-                            context,
-                            screenX,
-                            screenY,
-                            true,
-                            timeout,
-                            new Runnable() {
-                                @Override
-                                public void run() {
-                                    reregisterTapSensor(dozeTriggers);
-                                }
-                            }
-                        );
-
-                        if (consumed) {
-                            param.setResult(null); // Блокируем выполнение оригинального метода
+        static SensorHook forSignature(DozeTapDozeHook owner, Class<?>[] params) {
+            int reasonIndex = -1, xIndex = -1, yIndex = -1;
+            for (int i = 0; i < params.length; i++) {
+                Class<?> type = params[i];
+                if (reasonIndex < 0 && (type == int.class || type == Integer.class)) {
+                    reasonIndex = i;
+                } else if (type == float.class || type == Float.class) {
+                    if (xIndex < 0) xIndex = i;
+                    else if (yIndex < 0) yIndex = i;
+                }
+            }
+            if (reasonIndex < 0 || yIndex < 0) return null;
+            return new SensorHook(owner, reasonIndex, xIndex, yIndex);
+        }
+
+        @Override
+        protected void beforeHookedMethod(MethodHookParam param) {
+            long traceStart = 0L;
+            try {
+                Object reason = param.args[reasonIndex];
+                if (!(reason instanceof Integer) || (Integer) reason != owner.dozeTapReason) return;
+
+                traceStart = DozeTapTracer.TRACER.begin(DozeTapTracer.STEP_SENSOR);
+                final Object dozeTriggers = param.thisObject;
+                long configStart = DozeTapTracer.TRACER.begin(DozeTapTracer.STEP_SENSOR_CONFIG);
+                Context context = owner.contextOf(dozeTriggers);
+                Config cfg = (context != null) ? owner.getConfig(context) : null;
+                DozeTapTracer.TRACER.end(DozeTapTracer.STEP_SENSOR_CONFIG, configStart);
+                if (cfg == null || !cfg.enabled) return;
+
+                Object x = param.args[xIndex];
+                Object y = param.args[yIndex];
+                if (!(x instanceof Float) || !(y instanceof Float)) return;
+
+                boolean consumed = DozeTapManager.processTap(
+                    context,
+                    (Float) x,
+                    (Float) y,
+                    true,
+                    cfg.timeoutMs,
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            owner.checkTapSensorArmed(dozeTriggers);
                         }
-                    } catch (Throwable t) {
-                        logError("DozeTapDozeHook: Error in onSensor", t);
                     }
+                );
+
+                CNT_TAP.inc();
+                if (consumed) {
+                    param.setResult(null); // Блокируем выполнение оригинального метода
                 }
-            });
+            } catch (Throwable t) {
+                owner.logError("DozeTapDozeHook: Error in onSensor", t);
+            } finally {
+                DozeTapTracer.TRACER.end(DozeTapTracer.STEP_SENSOR, traceStart);
+            }
+        }
+    }
 
-            log("DozeTapDozeHook: Hook applied successfully");
-        } catch (Throwable e) {
-            logError("DozeTapDozeHook: Failed to apply hook", e);
+    /** Settings the sensor path needs, replaced as a whole when one of them changes. */
+    private static final class Config {
+        final boolean enabled;
+        final int timeoutMs;
+
+        Config(boolean enabled, int timeoutMs) {
+            this.enabled = enabled;
+            this.timeoutMs = timeoutMs;
+        }
+    }
+
+    // mContext у DozeTriggers не меняется, читаем рефлексией один раз
+    private Context contextOf(Object dozeTriggers) {
+        Context context = dozeContext;
+        if (context != null) return context;
+        context = (Context) XposedHelpers.getObjectField(dozeTriggers, "mContext");
+        dozeContext = context;
+        // В SystemUI телеметрию больше некому включить, если EdgeEffect там не создаётся
+        attachTelemetry(context);
+        return context;
+    }
+
+    private Config getConfig(Context context) {
+        Config cfg = config;
+        if (cfg != null) return cfg;
+        synchronized (this) {
+            if (config == null) {
+                config = loadConfig(context);
+                watchConfig(context);
+            }
+            return config;
         }
     }
 
-    private void reregisterTapSensor(Object dozeTriggers) {
+    private Config loadConfig(Context context) {
+        return new Config(
+            isSettingEnabled(context, DozeTapManager.KEY_HOOK),
+            getIntSetting(context, DozeTapManager.KEY_TIMEOUT, DozeTapManager.DEFAULT_TIMEOUT)
+        );
+    }
+
+    private void watchConfig(Context context) {
+        Context appContext = context.getApplicationContext();
+        final Context settingsContext = (appContext != null) ? appContext : context;
+        String[] keys = {
+            resolveSettingKey(DozeTapManager.KEY_HOOK),
+            resolveSettingKey(DozeTapManager.KEY_TIMEOUT)
+        };
+        configWatcher = SettingsWatcher.watch(settingsContext, keys, new SettingsWatcher.Listener() {
+            @Override
+            public void onSettingsChanged(Uri uri) {
+                config = loadConfig(settingsContext);
+            }
+        });
+    }
+
+    /**
+     * The tap trigger sensor of one DozeTriggers, with its reflective handles resolved once.
+     * After a trigger DozeSensors re-arms the sensor itself; {@link #ensureArmed()} only
+     * registers it again when that did not happen, without the unregister step.
+     */
+    private static final class TapSensor {
+        final Object sensor;
+        final Field requestedField;
+        final Field registeredField;
+        final Method updateListening;
+
+        TapSensor(Object sensor, Field requestedField, Field registeredField, Method updateListening) {
+            this.sensor = sensor;
+            this.requestedField = requestedField;
+            this.registeredField = registeredField;
+            this.updateListening = updateListening;
+        }
+
+        /** @return true when the sensor had to be registered again */
+        boolean ensureArmed() throws Exception {
+            // Сенсор выключен самим DozeSensors (экран включён и т.п.) - не трогаем
+            if (!requestedField.getBoolean(sensor) || registeredField.getBoolean(sensor)) return false;
+            updateListening.invoke(sensor);
+            return true;
+        }
+    }
+
+    private TapSensor resolveTapSensor(Object dozeTriggers) {
         try {
             Object dozeSensors = XposedHelpers.getObjectField(dozeTriggers, "mDozeSensors");
-            if (dozeSensors == null) return;
-            
+            if (dozeSensors == null) return null;
+
             Object triggerSensors = XposedHelpers.getObjectField(dozeSensors, "mTriggerSensors");
-            if (triggerSensors == null) return;
+            Iterable<?> sensors = null;
+            if (triggerSensors instanceof Object[]) sensors = Arrays.asList((Object[]) triggerSensors);
+            else if (triggerSensors instanceof Collection) sensors = (Collection<?>) triggerSensors;
+            if (sensors == null) return null;
 
-            if (triggerSensors instanceof Object[]) {
-                for (Object sensor : (Object[]) triggerSensors) {
-                    if (sensor != null) checkAndResetSensor(sensor);
-                }
-            } else if (triggerSensors instanceof Collection) {
-                for (Object sensor : (Collection<?>) triggerSensors) {
-                    if (sensor != null) checkAndResetSensor(sensor);
-                }
+            for (Object sensor : sensors) {
+                if (sensor == null || XposedHelpers.getIntField(sensor, "mPulseReason") != dozeTapReason) continue;
+                Field requested = XposedHelpers.findField(sensor.getClass(), "mRequested");
+                Field registered = XposedHelpers.findField(sensor.getClass(), "mRegistered");
+                Method update = XposedHelpers.findMethodExact(sensor.getClass(), "updateListening");
+                return new TapSensor(sensor, requested, registered, update);
             }
         } catch (Throwable t) {
-             logError("DozeTapDozeHook: reregisterTapSensor failed", t);
+            logError("DozeTapDozeHook: Failed to resolve tap sensor", t);
         }
+        return null;
     }
 
-    private void checkAndResetSensor(Object sensor) {
-        try {
-            int reason = XposedHelpers.getIntField(sensor, "mPulseReason");
-            if (reason == dozeTapReason) {
-                Method method = sensor.getClass().getDeclaredMethod("setListening", boolean.class);
-                method.setAccessible(true);
-                method.invoke(sensor, false);
-                method.invoke(sensor, true);
-                log("DozeTapDozeHook: Sensor re-registered OK");
+    private void hookDozeTriggersConstructor(Class<?> dozeTriggersClass) {
+        XposedBridge.hookAllConstructors(dozeTriggersClass, new XC_MethodHook() {
+            @Override
+            protected void afterHookedMethod(MethodHookParam param) {
+                TapSensor tapSensor = resolveTapSensor(param.thisObject);
+                if (tapSensor != null) {
+                    XposedHelpers.setAdditionalInstanceField(param.thisObject, FIELD_TAP_SENSOR, tapSensor);
+                } else {
+                    log("DozeTapDozeHook: Tap sensor not found in DozeTriggers");
+                }
             }
-        } catch (Throwable e) {
-            log("DozeTapDozeHook: checkAndResetSensor failed: " + e.getMessage());
-            try {
-                // Fallback method
-                XposedHelpers.setBooleanField(sensor, "mRequested", false);
-                XposedHelpers.callMethod(sensor, "updateListening");
-                XposedHelpers.setBooleanField(sensor, "mRequested", true);
-                XposedHelpers.callMethod(sensor, "updateListening");
-                log("DozeTapDozeHook: Sensor re-registered via fallback OK");
-            } catch (Throwable e2) {
-                log("DozeTapDozeHook: Fallback re-register also failed: " + e2.getMessage());
+        });
+    }
+
+    // Проверяем после onTrigger: к этому моменту DozeSensors обычно уже перерегистрировал сенсор сам
+    private void checkTapSensorArmed(final Object dozeTriggers) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                Object tapSensor = XposedHelpers.getAdditionalInstanceField(dozeTriggers, FIELD_TAP_SENSOR);
+                if (!(tapSensor instanceof TapSensor)) return;
+                long traceStart = DozeTapTracer.TRACER.begin(DozeTapTracer.STEP_SENSOR_REARM);
+                try {
+                    if (((TapSensor) tapSensor).ensureArmed()) CNT_SENSOR_REREGISTER.inc();
+                } catch (Throwable t) {
+                    logError("DozeTapDozeHook: Re-arming tap sensor failed", t);
+                } finally {
+                    DozeTapTracer.TRACER.end(DozeTapTracer.STEP_SENSOR_REARM, traceStart);
+                }
             }
-        }
+        });
     }
 }
\ No newline at end of file
@@ -1,34 +1,61 @@
 package org.pixel.customparts.hooks.systemui;
 
 import android.content.Context;
-import android.os.Handler;
-import android.os.Looper;
+import android.os.SystemClock;
 import android.view.ViewConfiguration;
 
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Double-tap detector for the doze tap sensor and the pulsing shade.
+ * The first tap is consumed and arms a window of {@code timeoutMs}; a second tap
+ * within the window and the double-tap slop is let through so the system wakes
+ * up. A tap too far away re-arms the window at its own position.
+ * The state is one immutable {@link State} swapped with compare-and-set, so the
+ * sensor callback and the shade's touch path can call in from any thread. The
+ * window is an absolute deadline on a monotonic clock that keeps running in
+ * suspend, there is no timer to cancel.
+ */
 public class DozeTapManager {
-    
+
     // Константы (Keys)
     public static final String KEY_HOOK = "doze_double_tap_hook";
     public static final String KEY_TIMEOUT = "doze_double_tap_timeout";
     public static final int DEFAULT_TIMEOUT = 400;
 
-    private static final Handler handler = new Handler(Looper.getMainLooper());
-    private static boolean doubleTapPending = false;
-    private static float lastTapX = -1f;
-    private static float lastTapY = -1f;
-    private static int doubleTapSlop = -1;
+    /** Monotonic time source; replaced in tests. */
+    interface Clock {
+        long nanoTime();
+    }
 
-    private static final Runnable timeoutRunnable = new Runnable() {
+    static final Clock ELAPSED_REALTIME = new Clock() {
         @Override
-        public void run() {
-            resetState();
+        public long nanoTime() {
+            return SystemClock.elapsedRealtimeNanos();
         }
     };
 
-    private static void resetState() {
-        doubleTapPending = false;
-        lastTapX = -1f;
-        lastTapY = -1f;
+    private static final DozeTapManager INSTANCE = new DozeTapManager(ELAPSED_REALTIME);
+
+    /** Armed window after the first tap; {@code null} in the reference means idle. */
+    static final class State {
+        final float x;
+        final float y;
+        final long deadlineNanos;
+
+        State(float x, float y, long deadlineNanos) {
+            this.x = x;
+            this.y = y;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+
+    private final Clock clock;
+    private final AtomicReference<State> state = new AtomicReference<>();
+    private static volatile int doubleTapSlop = -1;
+
+    DozeTapManager(Clock clock) {
+        this.clock = clock;
     }
 
     public static boolean processTap(
@@ -41,50 +68,45 @@ public class DozeTapManager {
     ) {
         if (!isEnabled) return false;
 
-        if (doubleTapSlop < 0) {
-            doubleTapSlop = ViewConfiguration.get(context).getScaledDoubleTapSlop();
+        int slop = doubleTapSlop;
+        if (slop < 0) {
+            slop = ViewConfiguration.get(context).getScaledDoubleTapSlop();
+            doubleTapSlop = slop;
         }
 
-        if (!doubleTapPending) {
-            doubleTapPending = true;
-            lastTapX = x;
-            lastTapY = y;
-
-            handler.removeCallbacks(timeoutRunnable);
-            handler.postDelayed(timeoutRunnable, timeoutMs);
+        long traceStart = DozeTapTracer.TRACER.begin(DozeTapTracer.STEP_DETECT);
+        boolean consumed = INSTANCE.onTap(x, y, timeoutMs, slop);
+        DozeTapTracer.TRACER.end(DozeTapTracer.STEP_DETECT, traceStart);
+        if (consumed && resetSensorAction != null) {
+            resetSensorAction.run();
+        }
+        return consumed;
+    }
 
-            if (resetSensorAction != null) {
-                resetSensorAction.run();
+    /**
+     * @return true when the tap is the first of a possible double tap and must be consumed,
+     *         false when it completes a double tap
+     */
+    boolean onTap(float x, float y, int timeoutMs, int slop) {
+        long now = clock.nanoTime();
+        long deadline = now + timeoutMs * 1_000_000L;
+        while (true) {
+            State current = state.get();
+            boolean armed = current != null && now < current.deadlineNanos;
+            if (armed && isClose(current, x, y, slop)) {
+                // Второй тап быстро и рядом -> двойной тап, событие не поглощаем,
+                // чтобы система обработала его как пробуждение
+                if (state.compareAndSet(current, null)) return false;
+            } else {
+                // Первый тап, окно истекло или тап далеко -> ждём второй тап отсюда
+                if (state.compareAndSet(current, new State(x, y, deadline))) return true;
             }
-            return true;
         }
+    }
 
-        float dx = Math.abs(x - lastTapX);
-        float dy = Math.abs(y - lastTapY);
-        
+    private static boolean isClose(State pending, float x, float y, int slop) {
         // Если координаты невалидны (например, -1), считаем что тапы рядом
-        boolean invalidCoords = (x <= 0 && lastTapX <= 0);
-        boolean isClose = invalidCoords || (dx < doubleTapSlop && dy < doubleTapSlop);
-
-        if (isClose) {
-            // Второй тап произошел быстро и рядом -> это двойной тап!
-            // Мы возвращаем false, чтобы НЕ поглощать событие, 
-            // позволяя системе обработать его как пробуждение.
-            resetState();
-            handler.removeCallbacks(timeoutRunnable);
-            return false;
-        } else {
-            // Тап далеко от предыдущего -> начинаем ожидание заново
-            lastTapX = x;
-            lastTapY = y;
-
-            handler.removeCallbacks(timeoutRunnable);
-            handler.postDelayed(timeoutRunnable, timeoutMs);
-
-            if (resetSensorAction != null) {
-                resetSensorAction.run();
-            }
-            return true;
-        }
+        if (x <= 0 && pending.x <= 0) return true;
+        return Math.abs(x - pending.x) < slop && Math.abs(y - pending.y) < slop;
     }
-}
\ No newline at end of file
+}
@@ -1,16 +1,21 @@
 package org.pixel.customparts.hooks.systemui;
 
 import android.content.Context;
+import android.net.Uri;
 import android.view.MotionEvent;
 import de.robv.android.xposed.XC_MethodHook;
 import de.robv.android.xposed.XposedBridge;
 import de.robv.android.xposed.XposedHelpers;
 import org.pixel.customparts.core.BaseHook;
+import org.pixel.customparts.core.SettingsWatcher;
 
 public class DozeTapShadeHook extends BaseHook {
 
     private boolean loggedHook = false;
     private int tapLogCount = 0;
+    private volatile Context appContext;
+    private volatile Config config;
+    private SettingsWatcher configWatcher;
 
     @Override
     public String getHookId() {
@@ -30,6 +35,7 @@ public class DozeTapShadeHook extends BaseHook {
     @Override
     protected void onInit(ClassLoader classLoader) {
         hookPulsingGestureListener(classLoader);
+        DozeTapTracer.register();
     }
 
     private void hookPulsingGestureListener(ClassLoader classLoader) {
@@ -39,9 +45,18 @@ public class DozeTapShadeHook extends BaseHook {
                 classLoader
             );
             
+            // Телеметрия SystemUI включается здесь, до первого тапа
+            XposedBridge.hookAllConstructors(listenerClass, new XC_MethodHook() {
+                @Override
+                protected void afterHookedMethod(MethodHookParam param) {
+                    appContextOf(param.thisObject);
+                }
+            });
+
             XposedBridge.hookAllMethods(listenerClass, "onSingleTapUp", new XC_MethodHook() {
                 @Override
                 protected void beforeHookedMethod(MethodHookParam param) {
+                    long traceStart = DozeTapTracer.TRACER.begin(DozeTapTracer.STEP_SHADE_TAP);
                     try {
                         if (!loggedHook) {
                             loggedHook = true;
@@ -53,9 +68,15 @@ public class DozeTapShadeHook extends BaseHook {
                             log("DozeTapShadeHook: onSingleTapUp invoked (#" + tapLogCount + ")");
                         }
 
-                        Object controller = XposedHelpers.getObjectField(param.thisObject, "statusBarStateController");
-                        Boolean isDozingObj = (Boolean) XposedHelpers.callMethod(controller, "isDozing");
-                        boolean isDozing = isDozingObj != null && isDozingObj;
+                        long dozingStart = DozeTapTracer.TRACER.begin(DozeTapTracer.STEP_SHADE_DOZING);
+                        boolean isDozing;
+                        try {
+                            Object controller = XposedHelpers.getObjectField(param.thisObject, "statusBarStateController");
+                            Boolean isDozingObj = (Boolean) XposedHelpers.callMethod(controller, "isDozing");
+                            isDozing = isDozingObj != null && isDozingObj;
+                        } finally {
+                            DozeTapTracer.TRACER.end(DozeTapTracer.STEP_SHADE_DOZING, dozingStart);
+                        }
 
                         if (tapLogCount <= 10) {
                             log("DozeTapShadeHook: isDozing=" + isDozing);
@@ -65,7 +86,13 @@ public class DozeTapShadeHook extends BaseHook {
                             return;
                         }
 
-                        Context context = resolveAppContext(param.thisObject.getClass().getClassLoader());
+                        long configStart = DozeTapTracer.TRACER.begin(DozeTapTracer.STEP_SHADE_CONFIG);
+                        Context context = appContextOf(param.thisObject);
+                        Config cfg = (context != null) ? getConfig(context) : null;
+                        boolean enabled = cfg != null && cfg.enabled;
+                        int timeout = enabled ? cfg.timeoutMs : DozeTapManager.DEFAULT_TIMEOUT;
+                        DozeTapTracer.TRACER.end(DozeTapTracer.STEP_SHADE_CONFIG, configStart);
+
                         if (context == null) {
                             if (tapLogCount <= 10) {
                                 log("DozeTapShadeHook: app context not available");
@@ -73,7 +100,6 @@ public class DozeTapShadeHook extends BaseHook {
                             return;
                         }
 
-                        boolean enabled = isSettingEnabled(context, DozeTapManager.KEY_HOOK);
                         if (tapLogCount <= 10) {
                             log("DozeTapShadeHook: enabled=" + enabled);
                         }
@@ -81,7 +107,6 @@ public class DozeTapShadeHook extends BaseHook {
                             return;
                         }
 
-                        int timeout = getIntSetting(context, DozeTapManager.KEY_TIMEOUT, DozeTapManager.DEFAULT_TIMEOUT);
                         boolean consumed = false;
 
                         if (param.args.length == 1 && param.args[0] instanceof MotionEvent) {
@@ -121,6 +146,8 @@ public class DozeTapShadeHook extends BaseHook {
 
                     } catch (Throwable t) {
                         log("DozeTapShadeHook: Error in PulsingGestureListener: " + t.getMessage());
+                    } finally {
+                        DozeTapTracer.TRACER.end(DozeTapTracer.STEP_SHADE_TAP, traceStart);
                     }
                 }
             });
@@ -131,6 +158,64 @@ public class DozeTapShadeHook extends BaseHook {
         }
     }
 
+    /** Settings the tap path needs, replaced as a whole when one of them changes. */
+    private static final class Config {
+        final boolean enabled;
+        final int timeoutMs;
+
+        Config(boolean enabled, int timeoutMs) {
+            this.enabled = enabled;
+            this.timeoutMs = timeoutMs;
+        }
+    }
+
+    // Контекст приложения SystemUI не меняется: ищем один раз и тогда же включаем телеметрию
+    private Context appContextOf(Object listener) {
+        Context context = appContext;
+        if (context != null) return context;
+        context = resolveAppContext(listener.getClass().getClassLoader());
+        if (context == null) return null;
+        synchronized (this) {
+            if (appContext == null) {
+                appContext = context;
+                attachTelemetry(context);
+            }
+            return appContext;
+        }
+    }
+
+    private Config getConfig(Context context) {
+        Config cfg = config;
+        if (cfg != null) return cfg;
+        synchronized (this) {
+            if (config == null) {
+                config = loadConfig(context);
+                watchConfig(context);
+            }
+            return config;
+        }
+    }
+
+    private Config loadConfig(Context context) {
+        return new Config(
+            isSettingEnabled(context, DozeTapManager.KEY_HOOK),
+            getIntSetting(context, DozeTapManager.KEY_TIMEOUT, DozeTapManager.DEFAULT_TIMEOUT)
+        );
+    }
+
+    private void watchConfig(final Context context) {
+        String[] keys = {
+            resolveSettingKey(DozeTapManager.KEY_HOOK),
+            resolveSettingKey(DozeTapManager.KEY_TIMEOUT)
+        };
+        configWatcher = SettingsWatcher.watch(context, keys, new SettingsWatcher.Listener() {
+            @Override
+            public void onSettingsChanged(Uri uri) {
+                config = loadConfig(context);
+            }
+        });
+    }
+
     private Context resolveAppContext(ClassLoader classLoader) {
         try {
             Class<?> activityThreadClass = XposedHelpers.findClass("android.app.ActivityThread", classLoader);
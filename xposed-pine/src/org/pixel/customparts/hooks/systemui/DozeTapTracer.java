@@ -0,0 +1,111 @@
+package org.pixel.customparts.hooks.systemui;
+
+import android.os.Trace;
+
+import java.util.Arrays;
+
+import org.pixel.customparts.core.HookTelemetry;
+
+/**
+ * Latency spans of the doze/pulsing double-tap path. Each step is stamped with
+ * a monotonic clock and kept in a fixed ring buffer of the last {@link #CAPACITY}
+ * spans; the telemetry dump reports p50/p95/max per step. While a system trace
+ * is being recorded every step is also a {@link Trace} section.
+ * Does nothing, not even a clock read, while telemetry is off.
+ */
+final class DozeTapTracer {
+
+    static final int STEP_SENSOR = 0;
+    static final int STEP_SENSOR_CONFIG = 1;
+    static final int STEP_DETECT = 2;
+    static final int STEP_SENSOR_REARM = 3;
+    static final int STEP_SHADE_TAP = 4;
+    static final int STEP_SHADE_DOZING = 5;
+    static final int STEP_SHADE_CONFIG = 6;
+
+    private static final String[] STEP_NAMES = {
+            "DozeTap.sensor",
+            "DozeTap.sensorConfig",
+            "DozeTap.detect",
+            "DozeTap.sensorRearm",
+            "DozeTap.shadeTap",
+            "DozeTap.shadeIsDozing",
+            "DozeTap.shadeConfig"
+    };
+
+    static final int CAPACITY = 256;
+
+    static final DozeTapTracer TRACER = new DozeTapTracer(DozeTapManager.ELAPSED_REALTIME);
+
+    private final DozeTapManager.Clock clock;
+    private final int[] steps = new int[CAPACITY];
+    private final long[] durations = new long[CAPACITY];
+    private int head;
+    private int count;
+
+    DozeTapTracer(DozeTapManager.Clock clock) {
+        this.clock = clock;
+    }
+
+    /** Adds the per-step latencies to the telemetry dump; repeated calls replace the provider. */
+    static void register() {
+        HookTelemetry.addProvider("DozeTap", new HookTelemetry.Provider() {
+            @Override
+            public void dump(StringBuilder out) {
+                TRACER.dump(out);
+            }
+        });
+    }
+
+    /**
+     * @return token for {@link #end(int, long)}: the start timestamp shifted left by one,
+     *         with the low bit set when a {@link Trace} section was opened; 0 when tracing is off
+     */
+    long begin(int step) {
+        if (!HookTelemetry.isEnabled()) return 0L;
+        long opened = 0L;
+        if (Trace.isEnabled()) {
+            Trace.beginSection(STEP_NAMES[step]);
+            opened = 1L;
+        }
+        long now = Math.max(1L, clock.nanoTime());
+        return (now << 1) | opened;
+    }
+
+    /** Must be called on the thread that called {@link #begin(int)}, in LIFO order. */
+    void end(int step, long token) {
+        if (token == 0L) return;
+        long elapsed = clock.nanoTime() - (token >>> 1);
+        // Закрываем только свою секцию: запись trace могла включиться или выключиться после begin
+        if ((token & 1L) != 0L) Trace.endSection();
+        synchronized (this) {
+            steps[head] = step;
+            durations[head] = elapsed;
+            head = (head + 1) % CAPACITY;
+            if (count < CAPACITY) count++;
+        }
+    }
+
+    synchronized void dump(StringBuilder out) {
+        out.append("\n[DozeTap] samples / p50 us / p95 us / max us\n");
+        long[] values = new long[count];
+        for (int step = 0; step < STEP_NAMES.length; step++) {
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                if (steps[i] == step) values[n++] = durations[i];
+            }
+            if (n == 0) continue;
+            Arrays.sort(values, 0, n);
+            out.append(STEP_NAMES[step]).append(": ").append(n)
+                    .append(" / ").append(percentile(values, n, 50) / 1000L)
+                    .append(" / ").append(percentile(values, n, 95) / 1000L)
+                    .append(" / ").append(values[n - 1] / 1000L).append('\n');
+        }
+    }
+
+    /** Nearest-rank percentile of the first {@code n} sorted values. */
+    static long percentile(long[] sorted, int n, int percent) {
+        int rank = (percent * n + 99) / 100;
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
@@ -11,7 +11,8 @@ public class PineEnvironment implements IHookEnvironment {
     private static final String TAG_PREFIX = "PineInject";
     private static final String SUFFIX = "_pine";
 
-    private String resolveKey(String key) {
+    @Override
+    public String resolveKey(String key) {
         // Логика: очищаем от старых суффиксов, если они есть, и добавляем _pine
         String baseKey = key.replace("_xposed", "").replace("_pine", "");
         return baseKey + SUFFIX;
@@ -20,7 +20,7 @@ class XposedEnvironment : IHookEnvironment {
 
 
 
-    private fun resolveKey(key: String): String {
+    override fun resolveKey(key: String): String {
         val baseKey = key.removeSuffix("_xposed").removeSuffix("_pine")
         return "$baseKey$SUFFIX"
     }
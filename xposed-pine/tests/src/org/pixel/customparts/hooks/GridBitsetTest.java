@@ -0,0 +1,128 @@
+package org.pixel.customparts.hooks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks {@link GridBitset} against a plain {@code boolean[][]} grid with the
+ * same clipping and the same reading-order search as {@code GridOccupancy}.
+ */
+public class GridBitsetTest {
+
+    private static final int[][] GRIDS = {{1, 1}, {4, 5}, {5, 5}, {6, 7}, {13, 3}, {63, 4}, {64, 3}};
+
+    @Test
+    public void fitsRejectsWideAndEmptyGrids() {
+        assertTrue(GridBitset.fits(5, 5));
+        assertTrue(GridBitset.fits(GridBitset.MAX_COLUMNS, 1));
+        assertFalse(GridBitset.fits(GridBitset.MAX_COLUMNS + 1, 1));
+        assertFalse(GridBitset.fits(0, 5));
+        assertFalse(GridBitset.fits(5, 0));
+    }
+
+    @Test
+    public void emptyGridStartsAtOrigin() {
+        GridBitset grid = new GridBitset(5, 5);
+        assertEquals(0, grid.findVacant(0, 0, 1, 1));
+        assertEquals(0, grid.findVacant(0, 0, 5, 5));
+        assertEquals(-1, grid.findVacant(0, 0, 6, 1));
+        assertEquals(-1, grid.findVacant(0, 0, 1, 6));
+        assertEquals(-1, grid.findVacant(0, 0, 0, 1));
+    }
+
+    @Test
+    public void fullWidthRowOn64Columns() {
+        GridBitset grid = new GridBitset(64, 3);
+        grid.mark(0, 0, 64, 1, true);
+        assertEquals(64, grid.findVacant(0, 0, 64, 1));
+        grid.mark(63, 1, 1, 1, true);
+        assertEquals(2 * 64, grid.findVacant(0, 0, 64, 1));
+        assertEquals(64 + 62, grid.findVacant(62, 1, 1, 1));
+    }
+
+    @Test
+    public void matchesBruteForceOnRandomLayouts() {
+        Random random = new Random(0x5EED);
+        for (int[] size : GRIDS) {
+            int countX = size[0];
+            int countY = size[1];
+            for (int layout = 0; layout < 200; layout++) {
+                GridBitset grid = new GridBitset(countX, countY);
+                boolean[][] cells = new boolean[countX][countY];
+
+                int marks = random.nextInt(countX * countY / 2 + 2);
+                for (int i = 0; i < marks; i++) {
+                    // Часть регионов выходит за края: проверяем клиппинг
+                    int x = random.nextInt(countX + 2) - 1;
+                    int y = random.nextInt(countY + 2) - 1;
+                    int spanX = 1 + random.nextInt(Math.min(countX, 4));
+                    int spanY = 1 + random.nextInt(Math.min(countY, 4));
+                    boolean value = random.nextInt(5) != 0;
+                    grid.mark(x, y, spanX, spanY, value);
+                    markCells(cells, x, y, spanX, spanY, value);
+                }
+
+                for (int query = 0; query < 30; query++) {
+                    int spanX = 1 + random.nextInt(Math.min(countX, 5));
+                    int spanY = 1 + random.nextInt(Math.min(countY, 5));
+                    int fromX = random.nextInt(countX);
+                    int fromY = random.nextInt(countY);
+                    String where = countX + "x" + countY + " layout " + layout + " span " + spanX + "x" + spanY
+                            + " from " + fromX + "," + fromY;
+                    assertEquals(where, findVacant(cells, fromX, fromY, spanX, spanY),
+                            grid.findVacant(fromX, fromY, spanX, spanY));
+
+                    int x = random.nextInt(countX + 2) - 1;
+                    int y = random.nextInt(countY + 2) - 1;
+                    boolean inside = x >= 0 && y >= 0 && x + spanX <= countX && y + spanY <= countY;
+                    assertEquals(where + " region " + x + "," + y, inside && isVacant(cells, x, y, spanX, spanY),
+                            grid.isVacant(x, y, spanX, spanY));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void clearingRestoresVacancy() {
+        GridBitset grid = new GridBitset(4, 4);
+        grid.mark(0, 0, 4, 4, true);
+        assertEquals(-1, grid.findVacant(0, 0, 1, 1));
+        grid.mark(2, 1, 2, 2, false);
+        assertEquals(4 + 2, grid.findVacant(0, 0, 2, 2));
+        assertEquals(-1, grid.findVacant(0, 0, 3, 1));
+    }
+
+    private static void markCells(boolean[][] cells, int x, int y, int spanX, int spanY, boolean value) {
+        for (int cx = x; cx < x + spanX; cx++) {
+            for (int cy = y; cy < y + spanY; cy++) {
+                if (cx >= 0 && cx < cells.length && cy >= 0 && cy < cells[0].length) cells[cx][cy] = value;
+            }
+        }
+    }
+
+    /** Cell-by-cell search in reading order, the way the launcher's own occupancy scans. */
+    private static int findVacant(boolean[][] cells, int fromX, int fromY, int spanX, int spanY) {
+        int countX = cells.length;
+        int countY = cells[0].length;
+        for (int y = fromY; y + spanY <= countY; y++) {
+            for (int x = (y == fromY) ? fromX : 0; x + spanX <= countX; x++) {
+                if (isVacant(cells, x, y, spanX, spanY)) return y * countX + x;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isVacant(boolean[][] cells, int x, int y, int spanX, int spanY) {
+        for (int cx = x; cx < x + spanX; cx++) {
+            for (int cy = y; cy < y + spanY; cy++) {
+                if (cells[cx][cy]) return false;
+            }
+        }
+        return true;
+    }
+}
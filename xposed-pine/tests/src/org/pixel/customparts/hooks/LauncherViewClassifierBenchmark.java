@@ -0,0 +1,202 @@
+package org.pixel.customparts.hooks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Activity;
+import android.content.Context;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares the old per-call parent walk with {@link LauncherViewClassifier} on
+ * synthetic launcher hierarchies. Timings go to logcat (tag PixelPartsBench);
+ * the asserts only check that both paths agree.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LauncherViewClassifierBenchmark {
+
+    private static final String TAG = "PixelPartsBench";
+    private static final int WARMUP = 2_000;
+    private static final int ROUNDS = 20_000;
+
+    // Имена классов повторяют лаунчер: классификатор сопоставляет их по подстроке
+    public static class DragLayer extends FrameLayout {
+        public DragLayer(Context c) { super(c); }
+    }
+    public static class Workspace extends FrameLayout {
+        public Workspace(Context c) { super(c); }
+    }
+    public static class CellLayout extends FrameLayout {
+        public CellLayout(Context c) { super(c); }
+    }
+    public static class ShortcutAndWidgetContainer extends FrameLayout {
+        public ShortcutAndWidgetContainer(Context c) { super(c); }
+    }
+    public static class Hotseat extends CellLayout {
+        public Hotseat(Context c) { super(c); }
+    }
+    public static class Folder extends FrameLayout {
+        public Folder(Context c) { super(c); }
+    }
+    public static class FolderPagedView extends FrameLayout {
+        public FolderPagedView(Context c) { super(c); }
+    }
+    public static class AllAppsContainerView extends FrameLayout {
+        public AllAppsContainerView(Context c) { super(c); }
+    }
+    public static class AllAppsRecyclerView extends FrameLayout {
+        public AllAppsRecyclerView(Context c) { super(c); }
+    }
+    public static class BubbleTextView extends TextView {
+        int mDisplay;
+        public BubbleTextView(Context c, int display) {
+            super(c);
+            mDisplay = display;
+        }
+    }
+
+    private static final class Icons {
+        final List<View> all = new ArrayList<>();
+        final List<View> hotseat = new ArrayList<>();
+        final List<View> allApps = new ArrayList<>();
+    }
+
+    @Test
+    public void detachedHierarchy() {
+        try (ActivityScenario<Activity> scenario = ActivityScenario.launch(Activity.class)) {
+            scenario.onActivity(activity -> {
+                Icons icons = new Icons();
+                buildLauncher(activity, icons);
+                measure("detached", icons);
+            });
+        }
+    }
+
+    @Test
+    public void attachedHierarchy() {
+        try (ActivityScenario<Activity> scenario = ActivityScenario.launch(Activity.class)) {
+            Icons icons = new Icons();
+            scenario.onActivity(activity -> activity.setContentView(buildLauncher(activity, icons)));
+            // Второй вызов идёт после traversal, когда иконки уже attached
+            scenario.onActivity(activity -> {
+                assertTrue(icons.all.get(0).isAttachedToWindow());
+                measure("attached", icons);
+            });
+        }
+    }
+
+    private static void measure(String label, Icons icons) {
+        LauncherViewClassifier classifier = new LauncherViewClassifier(BubbleTextView.class, Hotseat.class);
+        for (View icon : icons.all) {
+            boolean expected = icons.hotseat.contains(icon);
+            assertEquals(expected, walkIsHotseat(icon));
+            assertEquals(expected, classifier.kindOf(icon) == LauncherViewClassifier.KIND_HOTSEAT);
+            assertEquals(icons.allApps.contains(icon), classifier.hasForeignDisplay(icon));
+        }
+
+        int sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            for (View icon : icons.all) {
+                sink += walkIsHotseat(icon) ? 1 : 0;
+                sink += classifier.kindOf(icon);
+            }
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            for (View icon : icons.all) sink += walkIsHotseat(icon) ? 1 : 0;
+        }
+        long walkNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            for (View icon : icons.all) sink += classifier.kindOf(icon);
+        }
+        long cachedNanos = System.nanoTime() - start;
+
+        long calls = (long) ROUNDS * icons.all.size();
+        Log.i(TAG, String.format("%s: parent walk %.1f ns/call, classifier %.1f ns/call (%d icons, sink %d)",
+                label, walkNanos / (double) calls, cachedNanos / (double) calls, icons.all.size(), sink));
+    }
+
+    /** The check isHotseatView did before the classifier. */
+    private static boolean walkIsHotseat(View view) {
+        View curr = (View) view.getParent();
+        while (curr != null) {
+            if (curr.getClass().getName().contains("Hotseat")) return true;
+            if (curr.getParent() instanceof View) curr = (View) curr.getParent(); else break;
+        }
+        return false;
+    }
+
+    /** DragLayer with 3 workspace pages, a dock, an open folder and all-apps: 8-11 levels per icon. */
+    private static View buildLauncher(Context context, Icons icons) {
+        FrameLayout root = new FrameLayout(context);
+        DragLayer dragLayer = new DragLayer(context);
+        root.addView(wrap(context, dragLayer, 3));
+
+        Workspace workspace = new Workspace(context);
+        dragLayer.addView(workspace);
+        for (int page = 0; page < 3; page++) {
+            workspace.addView(cells(context, new CellLayout(context), 20, 0, icons.all));
+        }
+
+        List<View> dock = new ArrayList<>();
+        dragLayer.addView(cells(context, new Hotseat(context), 5, 0, dock));
+        icons.hotseat.addAll(dock);
+        icons.all.addAll(dock);
+
+        Folder folder = new Folder(context);
+        FolderPagedView folderPages = new FolderPagedView(context);
+        folder.addView(folderPages);
+        folderPages.addView(cells(context, new CellLayout(context), 9, 2, icons.all));
+        dragLayer.addView(folder);
+
+        AllAppsContainerView allApps = new AllAppsContainerView(context);
+        AllAppsRecyclerView list = new AllAppsRecyclerView(context);
+        allApps.addView(wrap(context, list, 2));
+        for (int i = 0; i < 30; i++) {
+            View icon = new BubbleTextView(context, 1);
+            list.addView(icon);
+            icons.allApps.add(icon);
+            icons.all.add(icon);
+        }
+        dragLayer.addView(allApps);
+        return root;
+    }
+
+    private static ViewGroup cells(Context context, ViewGroup cellLayout, int count, int display, List<View> out) {
+        ShortcutAndWidgetContainer container = new ShortcutAndWidgetContainer(context);
+        cellLayout.addView(container);
+        for (int i = 0; i < count; i++) {
+            View icon = new BubbleTextView(context, display);
+            container.addView(icon);
+            out.add(icon);
+        }
+        return cellLayout;
+    }
+
+    /** Puts {@code child} under {@code depth} anonymous layouts, like the insets and scrim wrappers. */
+    private static View wrap(Context context, View child, int depth) {
+        View top = child;
+        for (int i = 0; i < depth; i++) {
+            FrameLayout layer = new FrameLayout(context);
+            layer.addView(top);
+            top = layer;
+        }
+        return top;
+    }
+}
@@ -0,0 +1,377 @@
+package org.pixel.customparts.hooks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Batching, debounce and reset rules of {@link WorkspacePositionStore}, run
+ * against an in-memory backend and a manual clock.
+ */
+public class WorkspacePositionStoreTest {
+
+    private static final int DESKTOP = -100;
+
+    private FakeBackend backend;
+    private ManualScheduler scheduler;
+    private WorkspacePositionStore store;
+
+    @Before
+    public void setUp() {
+        backend = new FakeBackend();
+        scheduler = new ManualScheduler();
+        store = new WorkspacePositionStore(backend, scheduler, scheduler);
+    }
+
+    @Test
+    public void burstIsWrittenOnceAfterDebounce() {
+        store.put(1, position(0, 0));
+        scheduler.advanceTo(100);
+        store.put(2, position(1, 0));
+        scheduler.advanceTo(200);
+        store.put(1, position(2, 3));
+
+        scheduler.advanceTo(200 + WorkspacePositionStore.DEBOUNCE_MS - 1);
+        assertEquals(0, backend.writes.size());
+
+        scheduler.advanceTo(200 + WorkspacePositionStore.DEBOUNCE_MS);
+        assertEquals(1, backend.writes.size());
+        Map<Integer, WorkspacePositionStore.Position> batch = backend.writes.get(0);
+        // Повторная запись id 1 заменяет первую и уходит в конец батча
+        assertEquals(Arrays.asList(2, 1), new ArrayList<>(batch.keySet()));
+        assertEquals(2, batch.get(1).cellX);
+        assertEquals(3, batch.get(1).cellY);
+    }
+
+    @Test
+    public void continuousStreamIsFlushedByMaxDelay() {
+        long step = WorkspacePositionStore.DEBOUNCE_MS - 50;
+        long t = 0;
+        int id = 0;
+        while (t < WorkspacePositionStore.MAX_DELAY_MS) {
+            scheduler.advanceTo(t);
+            store.put(id++, position(id % 4, 1));
+            t += step;
+        }
+        scheduler.advanceTo(WorkspacePositionStore.MAX_DELAY_MS - 1);
+        assertEquals(0, backend.writes.size());
+
+        scheduler.advanceTo(WorkspacePositionStore.MAX_DELAY_MS);
+        assertEquals(1, backend.writes.size());
+        assertEquals(id, backend.writes.get(0).size());
+
+        // Следующая пачка снова отсчитывает debounce от своей первой записи
+        store.put(100, position(0, 2));
+        scheduler.advanceTo(WorkspacePositionStore.MAX_DELAY_MS + WorkspacePositionStore.DEBOUNCE_MS);
+        assertEquals(2, backend.writes.size());
+    }
+
+    @Test
+    public void removeIsWrittenAsNullAndReplacesPut() {
+        backend.stored.put(7, position(1, 1));
+        store.put(5, position(0, 1));
+        store.remove(5);
+        store.remove(7);
+        scheduler.advanceTo(WorkspacePositionStore.DEBOUNCE_MS);
+
+        Map<Integer, WorkspacePositionStore.Position> batch = backend.writes.get(0);
+        assertEquals(2, batch.size());
+        assertTrue(batch.containsKey(5));
+        assertNull(batch.get(5));
+        assertNull(batch.get(7));
+        assertTrue(backend.stored.isEmpty());
+    }
+
+    @Test
+    public void loadAppliesPendingChanges() {
+        backend.stored.put(1, position(0, 0));
+        backend.stored.put(2, position(1, 0));
+        store.put(2, position(3, 2));
+        store.put(3, position(2, 0));
+        store.put(4, new WorkspacePositionStore.Position(-101, 0, 0, 0, 1, 1));
+        store.remove(1);
+
+        Map<Integer, WorkspacePositionStore.Position> loaded = store.load(DESKTOP);
+        assertEquals(2, loaded.size());
+        assertEquals(3, loaded.get(2).cellX);
+        assertEquals(2, loaded.get(3).cellX);
+        assertEquals(0, backend.writes.size());
+    }
+
+    @Test
+    public void flushFailureIsReportedThroughBackend() {
+        backend.failWrites = true;
+        store.put(1, position(0, 0));
+        store.flush();
+        assertEquals(1, backend.errors.size());
+
+        backend.failWrites = false;
+        store.put(2, position(0, 1));
+        scheduler.advanceTo(WorkspacePositionStore.DEBOUNCE_MS);
+        assertEquals(1, backend.writes.size());
+        assertEquals(1, backend.writes.get(0).size());
+    }
+
+    @Test
+    public void validateKeepsPositionsForSameSignature() {
+        backend.signature = "5x5/launcher.db/32";
+        backend.stored.put(1, position(0, 0));
+
+        assertTrue(store.validate("5x5/launcher.db/32"));
+        assertEquals(0, backend.resets.size());
+        assertEquals(1, store.load(DESKTOP).size());
+    }
+
+    @Test
+    public void validateResetsOnNewSignature() {
+        backend.signature = "5x5/launcher.db/32";
+        backend.stored.put(1, position(0, 0));
+        store.put(2, position(1, 0));
+
+        assertTrue(store.validate("4x5/launcher_4_by_5.db/32"));
+        assertEquals(Arrays.asList("4x5/launcher_4_by_5.db/32"), backend.resets);
+        assertTrue(store.load(DESKTOP).isEmpty());
+
+        // Отменённый debounce ничего не пишет
+        scheduler.advanceTo(WorkspacePositionStore.MAX_DELAY_MS);
+        assertEquals(0, backend.writes.size());
+    }
+
+    @Test
+    public void validateFailureDisablesRestore() {
+        backend.signature = "old";
+        backend.failResets = true;
+        assertFalse(store.validate("new"));
+        assertEquals(1, backend.errors.size());
+    }
+
+    @Test
+    public void clearDropsPendingAndStorage() {
+        backend.signature = "5x5/launcher.db/32";
+        backend.stored.put(1, position(0, 0));
+        store.put(2, position(1, 0));
+
+        store.clear();
+        assertTrue(store.load(DESKTOP).isEmpty());
+        assertEquals(Arrays.asList((String) null), backend.resets);
+
+        // Уже поставленная задача очистки не трогает записи после неё
+        store.put(3, position(2, 0));
+        scheduler.advanceTo(WorkspacePositionStore.DEBOUNCE_MS);
+        assertEquals(1, backend.resets.size());
+        assertEquals(1, backend.writes.size());
+        assertTrue(backend.stored.containsKey(3));
+        assertFalse(backend.stored.containsKey(2));
+    }
+
+    @Test
+    public void clearForcesResetOnNextValidate() {
+        backend.signature = "5x5/launcher.db/32";
+        backend.stored.put(1, position(0, 0));
+
+        store.clear();
+        assertTrue(store.validate("5x5/launcher.db/32"));
+        assertTrue(backend.stored.isEmpty());
+        scheduler.advanceTo(0);
+        assertEquals(1, backend.resets.size());
+    }
+
+    private static WorkspacePositionStore.Position position(int cellX, int cellY) {
+        return new WorkspacePositionStore.Position(DESKTOP, 0, cellX, cellY, 1, 1);
+    }
+
+    private static final class FakeBackend implements WorkspacePositionStore.Backend {
+        final Map<Integer, WorkspacePositionStore.Position> stored = new HashMap<>();
+        final List<Map<Integer, WorkspacePositionStore.Position>> writes = new ArrayList<>();
+        final List<String> resets = new ArrayList<>();
+        final List<String> errors = new ArrayList<>();
+        String signature;
+        boolean failWrites;
+        boolean failResets;
+
+        @Override
+        public Map<Integer, WorkspacePositionStore.Position> load(int container) {
+            Map<Integer, WorkspacePositionStore.Position> result = new HashMap<>();
+            for (Map.Entry<Integer, WorkspacePositionStore.Position> entry : stored.entrySet()) {
+                if (entry.getValue().container == container) result.put(entry.getKey(), entry.getValue());
+            }
+            return result;
+        }
+
+        @Override
+        public void write(Map<Integer, WorkspacePositionStore.Position> batch) {
+            if (failWrites) throw new IllegalStateException("disk full");
+            writes.add(new LinkedHashMap<>(batch));
+            for (Map.Entry<Integer, WorkspacePositionStore.Position> entry : batch.entrySet()) {
+                if (entry.getValue() == null) stored.remove(entry.getKey());
+                else stored.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        @Override
+        public String signature() {
+            return signature;
+        }
+
+        @Override
+        public void reset(String signature) {
+            if (failResets) throw new IllegalStateException("read-only");
+            resets.add(signature);
+            stored.clear();
+            this.signature = signature;
+        }
+
+        @Override
+        public void logError(String message, Throwable t) {
+            errors.add(message);
+        }
+    }
+
+    /** Single-threaded scheduler that only runs tasks when the test moves its clock. */
+    private static final class ManualScheduler extends AbstractExecutorService
+            implements ScheduledExecutorService, WorkspacePositionStore.Clock {
+
+        private final PriorityQueue<Task> queue = new PriorityQueue<>();
+        private long now;
+        private long sequence;
+
+        @Override
+        public long uptimeMillis() {
+            return now;
+        }
+
+        void advanceTo(long time) {
+            while (!queue.isEmpty() && queue.peek().at <= time) {
+                Task task = queue.poll();
+                now = Math.max(now, task.at);
+                if (!task.cancelled) {
+                    task.done = true;
+                    task.runnable.run();
+                }
+            }
+            now = Math.max(now, time);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            Task task = new Task(command, now + unit.toMillis(delay), sequence++);
+            queue.add(task);
+            return task;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            schedule(command, 0, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+
+        private final class Task implements ScheduledFuture<Object> {
+            final Runnable runnable;
+            final long at;
+            final long order;
+            boolean cancelled;
+            boolean done;
+
+            Task(Runnable runnable, long at, long order) {
+                this.runnable = runnable;
+                this.at = at;
+                this.order = order;
+            }
+
+            @Override
+            public long getDelay(TimeUnit unit) {
+                return unit.convert(at - now, TimeUnit.MILLISECONDS);
+            }
+
+            @Override
+            public int compareTo(Delayed other) {
+                Task task = (Task) other;
+                if (at != task.at) return Long.compare(at, task.at);
+                return Long.compare(order, task.order);
+            }
+
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                if (done) return false;
+                cancelled = true;
+                return true;
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return cancelled;
+            }
+
+            @Override
+            public boolean isDone() {
+                return done || cancelled;
+            }
+
+            @Override
+            public Object get() {
+                return null;
+            }
+
+            @Override
+            public Object get(long timeout, TimeUnit unit) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package org.pixel.customparts.hooks.recents;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/** Level changes of {@link BlurGovernor} for synthetic frame timings, and radius quantization per level. */
+public class BlurGovernorTest {
+
+    private static final long SMOOTH = 16_000_000L;
+    private static final long JANKY = 40_000_000L;
+
+    private BlurGovernor governor;
+    private long now;
+    private int changes;
+
+    @Before
+    public void setUp() {
+        governor = new BlurGovernor();
+        now = 1_000_000_000L;
+        changes = 0;
+        // Первый кадр жеста только запоминает время
+        frame(0, true);
+    }
+
+    @Test
+    public void smoothGestureStaysFull() {
+        frames(SMOOTH, 50);
+        assertEquals(BlurGovernor.LEVEL_FULL, governor.level());
+        assertEquals(0, changes);
+    }
+
+    @Test
+    public void degradesAfterJankyFramesInWindow() {
+        frames(SMOOTH, BlurGovernor.WINDOW - BlurGovernor.JANK_FRAMES_TO_DEGRADE);
+        frames(JANKY, BlurGovernor.JANK_FRAMES_TO_DEGRADE - 1);
+        assertEquals(BlurGovernor.LEVEL_FULL, governor.level());
+
+        frames(JANKY, 1);
+        assertEquals(BlurGovernor.LEVEL_COARSE, governor.level());
+        assertEquals(1, changes);
+    }
+
+    @Test
+    public void fewerJankyFramesThanThresholdKeepFull() {
+        for (int i = 0; i < 10; i++) {
+            frames(JANKY, BlurGovernor.JANK_FRAMES_TO_DEGRADE - 1);
+            frames(SMOOTH, BlurGovernor.WINDOW);
+        }
+        assertEquals(BlurGovernor.LEVEL_FULL, governor.level());
+    }
+
+    @Test
+    public void persistentJankEndsWithBlurOff() {
+        frames(JANKY, BlurGovernor.WINDOW);
+        assertEquals(BlurGovernor.LEVEL_COARSE, governor.level());
+        // Следующий уровень оценивается по свежему окну
+        frames(JANKY, BlurGovernor.WINDOW - 1);
+        assertEquals(BlurGovernor.LEVEL_COARSE, governor.level());
+        frames(JANKY, 1);
+        assertEquals(BlurGovernor.LEVEL_OFF, governor.level());
+
+        frames(JANKY, 5 * BlurGovernor.WINDOW);
+        assertEquals(BlurGovernor.LEVEL_OFF, governor.level());
+        assertEquals(2, changes);
+    }
+
+    @Test
+    public void qualityDoesNotComeBackWithinGesture() {
+        frames(JANKY, BlurGovernor.WINDOW);
+        assertEquals(BlurGovernor.LEVEL_COARSE, governor.level());
+        int before = changes;
+
+        frames(SMOOTH, 20 * BlurGovernor.WINDOW);
+        assertEquals(BlurGovernor.LEVEL_COARSE, governor.level());
+        assertEquals(before, changes);
+    }
+
+    @Test
+    public void inactiveFrameRestoresFull() {
+        frames(JANKY, 2 * BlurGovernor.WINDOW);
+        assertEquals(BlurGovernor.LEVEL_OFF, governor.level());
+
+        assertTrue(frame(SMOOTH, false));
+        assertEquals(BlurGovernor.LEVEL_FULL, governor.level());
+        assertFalse(frame(SMOOTH, false));
+
+        // Новый жест начинает с пустого окна
+        frame(SMOOTH, true);
+        frames(JANKY, BlurGovernor.WINDOW - 1);
+        assertEquals(BlurGovernor.LEVEL_FULL, governor.level());
+    }
+
+    @Test
+    public void resetRestoresFullAndDropsHistory() {
+        frames(JANKY, BlurGovernor.WINDOW);
+        assertEquals(BlurGovernor.LEVEL_COARSE, governor.level());
+
+        governor.reset();
+        assertEquals(BlurGovernor.LEVEL_FULL, governor.level());
+        frame(SMOOTH, true);
+        frames(JANKY, BlurGovernor.WINDOW - 1);
+        assertEquals(BlurGovernor.LEVEL_FULL, governor.level());
+    }
+
+    @Test
+    public void renderingPauseIsNotJank() {
+        frames(JANKY, BlurGovernor.WINDOW - 1);
+        frames(BlurGovernor.MAX_INTERVAL_NANOS + 1, 1);
+        frames(JANKY, BlurGovernor.WINDOW - 1);
+        assertEquals(BlurGovernor.LEVEL_FULL, governor.level());
+    }
+
+    @Test
+    public void budgetFollowsRefreshRate() {
+        // 16 мс укладываются в 60 Гц, но опаздывают на 120 Гц
+        governor.setRefreshRate(120f);
+        frames(SMOOTH, BlurGovernor.WINDOW);
+        assertEquals(BlurGovernor.LEVEL_COARSE, governor.level());
+
+        governor.reset();
+        governor.setRefreshRate(0f);
+        frame(SMOOTH, true);
+        frames(SMOOTH, BlurGovernor.WINDOW);
+        assertEquals(BlurGovernor.LEVEL_COARSE, governor.level());
+    }
+
+    @Test
+    public void quantizeRadiusAtFull() {
+        assertEquals(0, governor.quantizeRadius(0f));
+        assertEquals(0, governor.quantizeRadius(1.9f));
+        assertEquals(0, governor.quantizeRadius(3.9f));
+        assertEquals(4, governor.quantizeRadius(4f));
+        assertEquals(20, governor.quantizeRadius(23.9f));
+        assertEquals(24, governor.quantizeRadius(24f));
+    }
+
+    @Test
+    public void quantizeRadiusAtCoarse() {
+        frames(JANKY, BlurGovernor.WINDOW);
+        assertEquals(BlurGovernor.LEVEL_COARSE, governor.level());
+
+        assertEquals(0, governor.quantizeRadius(1.9f));
+        // Ниже грубого шага остаётся мелкий, чтобы слабый blur не пропал
+        assertEquals(4, governor.quantizeRadius(5f));
+        assertEquals(8, governor.quantizeRadius(11.9f));
+        assertEquals(12, governor.quantizeRadius(12f));
+        assertEquals(24, governor.quantizeRadius(30f));
+    }
+
+    @Test
+    public void quantizeRadiusAtOff() {
+        frames(JANKY, 2 * BlurGovernor.WINDOW);
+        assertEquals(BlurGovernor.LEVEL_OFF, governor.level());
+
+        assertEquals(0, governor.quantizeRadius(4f));
+        assertEquals(0, governor.quantizeRadius(60f));
+    }
+
+    private boolean frame(long interval, boolean active) {
+        now += interval;
+        boolean changed = governor.onFrame(now, active);
+        if (changed) changes++;
+        return changed;
+    }
+
+    private void frames(long interval, int count) {
+        for (int i = 0; i < count; i++) frame(interval, true);
+    }
+}
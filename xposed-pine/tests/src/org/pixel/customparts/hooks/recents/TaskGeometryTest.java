@@ -0,0 +1,75 @@
+package org.pixel.customparts.hooks.recents;
+
+import static org.junit.Assert.assertEquals;
+
+import android.graphics.Rect;
+
+import org.junit.Test;
+
+/** Task rectangles scaled by {@link TaskGeometry} for the percentages the settings offer. */
+public class TaskGeometryTest {
+
+    // 1000 x 1800 с центром в (540, 1200)
+    private static final Rect PORTRAIT = new Rect(40, 300, 1040, 2100);
+
+    @Test
+    public void scaleForPercent() {
+        assertEquals(1f, TaskGeometry.scaleForPercent(100), 0f);
+        assertEquals(0.5f, TaskGeometry.scaleForPercent(50), 0f);
+        assertEquals(0.85f, TaskGeometry.scaleForPercent(85), 0f);
+        assertEquals(1.2f, TaskGeometry.scaleForPercent(120), 0f);
+    }
+
+    @Test
+    public void scalesAroundCenter() {
+        assertScaled(PORTRAIT, 50, new Rect(290, 750, 790, 1650));
+        assertScaled(PORTRAIT, 75, new Rect(165, 525, 915, 1875));
+        assertScaled(PORTRAIT, 85, new Rect(115, 435, 965, 1965));
+        assertScaled(PORTRAIT, 100, new Rect(40, 300, 1040, 2100));
+        assertScaled(PORTRAIT, 120, new Rect(-60, 120, 1140, 2280));
+        assertScaled(PORTRAIT, 150, new Rect(-210, -150, 1290, 2550));
+    }
+
+    @Test
+    public void keepsOddScaledSize() {
+        // 1300 * 0.87 = 1131: нечётная ширина не должна терять пиксель
+        Rect rect = scaled(new Rect(100, 0, 1400, 1000), 87);
+        assertEquals(1131, rect.width());
+        assertEquals(870, rect.height());
+        assertEquals(new Rect(185, 65, 1316, 935), rect);
+    }
+
+    @Test
+    public void roundsSizeDown() {
+        // 1081 x 2401 при 90 %: 972.9 x 2160.9
+        assertScaled(new Rect(0, 0, 1081, 2401), 90, new Rect(54, 120, 1026, 2280));
+    }
+
+    @Test
+    public void leavesEmptyRectAlone() {
+        assertScaled(new Rect(), 50, new Rect());
+        assertScaled(new Rect(10, 10, 10, 200), 50, new Rect(10, 10, 10, 200));
+    }
+
+    @Test
+    public void keepsCenterForEveryPercent() {
+        for (int percent = 50; percent <= 150; percent += 5) {
+            Rect rect = scaled(PORTRAIT, percent);
+            String where = percent + "%";
+            assertEquals(where, (int) (1000 * (percent / 100f)), rect.width());
+            assertEquals(where, (int) (1800 * (percent / 100f)), rect.height());
+            assertEquals(where, PORTRAIT.centerX(), rect.centerX(), 1);
+            assertEquals(where, PORTRAIT.centerY(), rect.centerY(), 1);
+        }
+    }
+
+    private static void assertScaled(Rect source, int percent, Rect expected) {
+        assertEquals(percent + "%", expected, scaled(source, percent));
+    }
+
+    private static Rect scaled(Rect source, int percent) {
+        Rect rect = new Rect(source);
+        TaskGeometry.scaleAroundCenter(rect, TaskGeometry.scaleForPercent(percent));
+        return rect;
+    }
+}
@@ -0,0 +1,112 @@
+package org.pixel.customparts.hooks.systemui;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/** Double-tap windows of {@link DozeTapManager} on a manual clock: timeout, slop and rapid taps. */
+public class DozeTapManagerTest {
+
+    private static final int TIMEOUT_MS = 400;
+    private static final int SLOP = 100;
+    private static final long MS = 1_000_000L;
+
+    private DozeTapManager manager;
+    private long now;
+
+    @Before
+    public void setUp() {
+        now = 5_000 * MS;
+        manager = new DozeTapManager(new DozeTapManager.Clock() {
+            @Override
+            public long nanoTime() {
+                return now;
+            }
+        });
+    }
+
+    @Test
+    public void secondTapInsideTimeoutIsDoubleTap() {
+        assertTrue(tap(500, 800));
+        now += (TIMEOUT_MS - 1) * MS;
+        assertFalse(tap(510, 790));
+    }
+
+    @Test
+    public void tapAtDeadlineRearms() {
+        assertTrue(tap(500, 800));
+        now += TIMEOUT_MS * MS;
+        assertTrue(tap(500, 800));
+
+        // Окно отсчитывается заново от второго тапа
+        now += (TIMEOUT_MS - 1) * MS;
+        assertFalse(tap(500, 800));
+    }
+
+    @Test
+    public void longTimeoutFromSettings() {
+        assertTrue(manager.onTap(500, 800, 2_000, SLOP));
+        now += 1_500 * MS;
+        assertFalse(manager.onTap(500, 800, 2_000, SLOP));
+    }
+
+    @Test
+    public void tapAtSlopIsNotClose() {
+        assertTrue(tap(500, 800));
+        now += 50 * MS;
+        assertTrue(tap(500 + SLOP, 800));
+        now += 50 * MS;
+        assertTrue(tap(500 + SLOP, 800 - SLOP));
+        now += 50 * MS;
+        assertFalse(tap(500 + SLOP + SLOP - 1, 800 - SLOP + SLOP - 1));
+    }
+
+    @Test
+    public void farTapRearmsAtItsPosition() {
+        assertTrue(tap(200, 300));
+        now += 100 * MS;
+        assertTrue(tap(900, 1600));
+        now += 100 * MS;
+        // Первая точка больше не ждёт второго тапа
+        assertTrue(tap(200, 300));
+        now += 100 * MS;
+        assertFalse(tap(205, 305));
+    }
+
+    @Test
+    public void rapidTripleTapStartsNewWindow() {
+        assertTrue(tap(500, 800));
+        now += 30 * MS;
+        assertFalse(tap(500, 800));
+        now += 30 * MS;
+        // Третий тап не продолжает уже сработавший двойной
+        assertTrue(tap(500, 800));
+        now += 30 * MS;
+        assertFalse(tap(500, 800));
+    }
+
+    @Test
+    public void tripleTapWithoutTimeAdvance() {
+        assertTrue(tap(500, 800));
+        assertFalse(tap(500, 800));
+        assertTrue(tap(500, 800));
+    }
+
+    @Test
+    public void invalidCoordinatesCountAsClose() {
+        // Датчик без координат присылает -1
+        assertTrue(tap(-1, -1));
+        now += 100 * MS;
+        assertFalse(tap(-1, -1));
+
+        assertTrue(tap(-1, -1));
+        now += 100 * MS;
+        assertTrue(tap(500, 800));
+    }
+
+    private boolean tap(float x, float y) {
+        return manager.onTap(x, y, TIMEOUT_MS, SLOP);
+    }
+}
@@ -0,0 +1,119 @@
+package org.pixel.customparts.hooks.systemui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/** Ring buffer and percentile math of {@link DozeTapTracer}, fed through {@code end} on a manual clock. */
+public class DozeTapTracerTest {
+
+    private DozeTapTracer tracer;
+    private long now;
+
+    @Before
+    public void setUp() {
+        now = 1_000_000_000L;
+        tracer = new DozeTapTracer(new DozeTapManager.Clock() {
+            @Override
+            public long nanoTime() {
+                return now;
+            }
+        });
+    }
+
+    @Test
+    public void percentileSingleValue() {
+        long[] sorted = {42};
+        assertEquals(42, DozeTapTracer.percentile(sorted, 1, 0));
+        assertEquals(42, DozeTapTracer.percentile(sorted, 1, 50));
+        assertEquals(42, DozeTapTracer.percentile(sorted, 1, 95));
+        assertEquals(42, DozeTapTracer.percentile(sorted, 1, 100));
+    }
+
+    @Test
+    public void percentileNearestRank() {
+        long[] sorted = new long[100];
+        for (int i = 0; i < sorted.length; i++) sorted[i] = i + 1;
+        assertEquals(1, DozeTapTracer.percentile(sorted, 100, 0));
+        assertEquals(1, DozeTapTracer.percentile(sorted, 100, 1));
+        assertEquals(50, DozeTapTracer.percentile(sorted, 100, 50));
+        assertEquals(95, DozeTapTracer.percentile(sorted, 100, 95));
+        assertEquals(100, DozeTapTracer.percentile(sorted, 100, 100));
+
+        // Ранг округляется вверх: 95 % от 3 значений -> третье
+        long[] three = {10, 20, 30};
+        assertEquals(20, DozeTapTracer.percentile(three, 3, 50));
+        assertEquals(30, DozeTapTracer.percentile(three, 3, 95));
+        assertEquals(10, DozeTapTracer.percentile(three, 3, 33));
+        assertEquals(20, DozeTapTracer.percentile(three, 3, 34));
+    }
+
+    @Test
+    public void percentileIgnoresTailPastCount() {
+        long[] sorted = {1, 2, 3, 4, 1000, 1000};
+        assertEquals(4, DozeTapTracer.percentile(sorted, 4, 95));
+        assertEquals(2, DozeTapTracer.percentile(sorted, 4, 50));
+    }
+
+    @Test
+    public void dumpSkipsStepsWithoutSamples() {
+        record(DozeTapTracer.STEP_DETECT, 10);
+        record(DozeTapTracer.STEP_DETECT, 30);
+        record(DozeTapTracer.STEP_DETECT, 20);
+
+        String dump = dump();
+        assertTrue(dump, dump.contains("DozeTap.detect: 3 / 20 / 30 / 30\n"));
+        assertFalse(dump, dump.contains("DozeTap.sensor:"));
+        assertFalse(dump, dump.contains("DozeTap.shadeTap:"));
+    }
+
+    @Test
+    public void ringBufferKeepsLastCapacitySpans() {
+        int total = DozeTapTracer.CAPACITY + 44;
+        for (int i = 1; i <= total; i++) record(DozeTapTracer.STEP_SHADE_TAP, i);
+
+        // Остались спаны 45..300 мкс
+        int first = total - DozeTapTracer.CAPACITY + 1;
+        String dump = dump();
+        assertTrue(dump, dump.contains("DozeTap.shadeTap: " + DozeTapTracer.CAPACITY
+                + " / " + (first + 127) + " / " + (first + 243) + " / " + total + "\n"));
+    }
+
+    @Test
+    public void wraparoundEvictsOldestStep() {
+        record(DozeTapTracer.STEP_SENSOR, 5_000);
+        for (int i = 0; i < DozeTapTracer.CAPACITY - 1; i++) record(DozeTapTracer.STEP_DETECT, 7);
+        String full = dump();
+        assertTrue(full, full.contains("DozeTap.sensor: 1 / 5000 / 5000 / 5000\n"));
+        assertTrue(full, full.contains("DozeTap.detect: " + (DozeTapTracer.CAPACITY - 1) + " / 7 / 7 / 7\n"));
+
+        // Следующий спан перезаписывает самый старый слот
+        record(DozeTapTracer.STEP_DETECT, 9);
+        String wrapped = dump();
+        assertFalse(wrapped, wrapped.contains("DozeTap.sensor:"));
+        assertTrue(wrapped, wrapped.contains("DozeTap.detect: " + DozeTapTracer.CAPACITY + " / 7 / 7 / 9\n"));
+    }
+
+    @Test
+    public void zeroTokenIsIgnored() {
+        now += 1_000_000L;
+        tracer.end(DozeTapTracer.STEP_DETECT, 0L);
+        assertFalse(dump().contains("DozeTap.detect:"));
+    }
+
+    /** Records one span the way {@code begin} stamps it, without opening a trace section. */
+    private void record(int step, long micros) {
+        long token = now << 1;
+        now += micros * 1000L;
+        tracer.end(step, token);
+    }
+
+    private String dump() {
+        StringBuilder out = new StringBuilder();
+        tracer.dump(out);
+        return out.toString();
+    }
+}